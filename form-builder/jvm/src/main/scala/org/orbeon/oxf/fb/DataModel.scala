@@ -29,7 +29,7 @@ object DataModel {
   def isAllowedBindingExpression(control: XFormsControl, expr: String): Boolean = {
 
     def evaluateBoundItem(namespaces: NamespaceMapping) =
-      Option(evalOne(control.bindingContext.contextItem, expr, namespaces, null, inScopeContainingDocument.getRequestStats.addXPathStat))
+      Option(evalOne(control.bindingContext.contextItem, expr, namespaces, null, inScopeContainingDocument.getRequestStats.getReporter))
 
     try {
       control.bind flatMap
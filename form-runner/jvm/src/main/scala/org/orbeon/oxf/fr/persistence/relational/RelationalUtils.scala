@@ -37,15 +37,20 @@ object RelationalUtils extends Logging {
     withConnection(getDataSourceNameFromHeaders)(thunk)
 
   def withConnection[T](datasourceName: String)(thunk: Connection ⇒ T): T =
-    useAndClose(getConnection(getDataSource(datasourceName))) { connection ⇒
+    withDataSourceConnection(getDataSource(datasourceName))(thunk)
+
+  // Can be used outside of a request, e.g. by worker threads, once the datasource has been looked up. As
+  // `IndentedLogger` is not thread-safe, worker threads pass their own logger.
+  def withDataSourceConnection[T](dataSource: DataSource, logger: IndentedLogger = Logger)(thunk: Connection ⇒ T): T =
+    useAndClose(getConnection(dataSource)) { connection ⇒
       try {
-        val result = withDebug("executing block with connection")(thunk(connection))
-        debug("about to commit")
+        val result = withDebug("executing block with connection")(thunk(connection))(logger)
+        debug("about to commit")(logger)
         connection.commit()
         result
       } catch {
         case NonFatal(t) ⇒
-          debug("about to rollback", List("throwable" → Exceptions.getRootThrowable(t).toString))
+          debug("about to rollback", List("throwable" → Exceptions.getRootThrowable(t).toString))(logger)
           connection.rollback()
           throw t
       }
@@ -69,11 +74,11 @@ object RelationalUtils extends Logging {
     valid.option(readInt)
   }
 
-  private def getDataSourceNameFromHeaders =
+  def getDataSourceNameFromHeaders =
     NetUtils.getExternalContext.getRequest.getFirstHeader("orbeon-datasource") getOrElse
       (throw new OXFException("Missing `orbeon-datasource` header"))
 
-  private def getDataSource(name: String) =
+  def getDataSource(name: String) =
     withDebug(s"getting datasource `$name`") {
       val jdbcContext: Context = InitialContext.doLookup("java:comp/env/jdbc")
       jdbcContext.lookup(name).asInstanceOf[DataSource]
@@ -13,7 +13,9 @@
  */
 package org.orbeon.oxf.fr.persistence.relational.index
 
-import java.sql.{Connection, PreparedStatement}
+import java.sql.{Connection, PreparedStatement, ResultSet}
+import java.util.concurrent.{Callable, ExecutionException, Executors}
+import javax.sql.DataSource
 
 import org.orbeon.oxf.fr.FormRunner
 import org.orbeon.oxf.fr.persistence.relational.Provider.MySQL
@@ -21,6 +23,7 @@ import org.orbeon.oxf.fr.persistence.relational.index.status.{Backend, StatusSto
 import org.orbeon.oxf.fr.persistence.relational.{Provider, RelationalUtils}
 import org.orbeon.oxf.util.CoreUtils._
 import org.orbeon.oxf.util.IOUtils._
+import org.orbeon.oxf.util.IndentedLogger
 import org.orbeon.oxf.xforms.XFormsConstants
 import org.orbeon.oxf.xml.{NamespaceMapping, XMLConstants}
 import org.orbeon.saxon.om.NodeInfo
@@ -28,6 +31,7 @@ import org.orbeon.scaxon
 import org.orbeon.scaxon.SimplePath._
 
 import scala.collection.JavaConverters._
+import scala.collection.mutable.ListBuffer
 
 trait Reindex extends FormDefinition {
 
@@ -35,6 +39,10 @@ trait Reindex extends FormDefinition {
   case object  AllData                                              extends WhatToReindex
   case class   DataForDocumentId(documentId: String)                extends WhatToReindex
   case class   DataForForm(app: String, form: String, version: Int) extends WhatToReindex
+  case class   DataForAllVersions(app: String, form: String)        extends WhatToReindex
+
+  // Number of documents for which rows are sent to the database in one JDBC batch
+  val DefaultBatchSize = 100
 
   // Reindexing is a 3 step process:
   //   1. Clean the index
@@ -45,246 +53,441 @@ trait Reindex extends FormDefinition {
   def reindex(
     provider      : Provider,
     connection    : Connection,
-    whatToReindex : WhatToReindex
-  ): Unit = {
-
+    whatToReindex : WhatToReindex,
+    batchSize     : Int = DefaultBatchSize
+  ): Unit =
     if (Index.ProvidersWithIndexSupport.contains(provider)) {
 
-      // If a document id was provided, produce WHERE clause, and set parameter
-      val (whereConditions, paramSetter) =
-        whatToReindex match {
-          case AllData ⇒ (
-            Nil,
-            (ps: PreparedStatement) ⇒ Unit
-          )
-          case DataForDocumentId(id) ⇒ (
-            List("document_id = ?"),
-            (ps: PreparedStatement) ⇒ ps.setString(1, id)
-          )
-          case DataForForm(app, form, version) ⇒ (
-            List(
-              "app = ?",
-              "form = ?",
-              "form_version = ?"
-            ),
-            (ps: PreparedStatement) ⇒ {
-              ps.setString(1, app)
-              ps.setString(2, form)
-              ps.setInt   (3, version)
-            }
-          )
+      val (whereConditions, paramSetter) = whereConditionsAndParamSetter(whatToReindex)
+
+      cleanIndex(connection, whatToReindex, whereConditions, paramSetter)
+
+      // Count how many documents we'll reindex, and tell progress code
+      Backend.setProviderDocumentTotal(countDocuments(connection, whereConditions, paramSetter))
+
+      // Keep track of the indexed controls along in the iteration, and thus avoid recomputing them
+      var prevIndexedControls: Option[((String, String), Seq[IndexedControl])] = None
+
+      def indexedControlsFor(app: String, form: String): Seq[IndexedControl] =
+        prevIndexedControls match {
+          case Some(((`app`, `form`), indexedControls)) ⇒
+            indexedControls
+          case _ ⇒
+            val indexedControls = readIndexedControls(app, form)
+            prevIndexedControls = Some((app, form) → indexedControls)
+            indexedControls
         }
 
-      // Clean index
-      locally {
-        val deleteWhereClause = whereConditions match {
-          case Nil ⇒ ""
-          case _   ⇒ "WHERE " + whereConditions.mkString(" AND ")
+      indexDocuments(provider, connection, whereConditions, paramSetter, indexedControlsFor, batchSize)
+    }
+
+  // Same as `reindex(AllData)`, but documents are partitioned by app/form, and partitions are indexed concurrently
+  // on `parallelism` threads, each with its own connection obtained from `dataSource`.
+  //
+  // Partitions don't include the form version, as a document can have rows for several versions, and only its latest
+  // row must be indexed. Each partition is cleaned in the same transaction as it is indexed, so if indexing a
+  // partition fails, the index still has the previous documents for that app/form.
+  //
+  // Form definitions are read on the calling thread before starting, as reading them requires the current request.
+  // Each worker logs with its own logger, as `IndentedLogger` is not thread-safe.
+  def reindexInParallel(
+    provider    : Provider,
+    dataSource  : DataSource,
+    parallelism : Int,
+    batchSize   : Int = DefaultBatchSize
+  ): Unit =
+    if (Index.ProvidersWithIndexSupport.contains(provider)) {
+
+      val partitions =
+        RelationalUtils.withDataSourceConnection(dataSource) { connection ⇒
+
+          val (whereConditions, paramSetter) = whereConditionsAndParamSetter(AllData)
+
+          cleanIndexForFormsWithoutData(connection)
+          Backend.setProviderDocumentTotal(countDocuments(connection, whereConditions, paramSetter))
+
+          partitionsWithIndexedControls(findForms(connection), readIndexedControls)
         }
-        val deleteFromValueIndexSql = "DELETE FROM orbeon_i_control_text " + (
-          whatToReindex match {
-            case AllData ⇒ ""
-            case _ ⇒
-              s"""|WHERE data_id IN (
-                  |   SELECT data_id
-                  |     FROM orbeon_i_current
-                  |   $deleteWhereClause
-                  | )
-                  |""".stripMargin
-          }
-        )
-        val deleteFromCurrentIndex =
-          s"""|DELETE FROM orbeon_i_current
-              |$deleteWhereClause
-              |""".stripMargin
 
-        Iterator(
-          deleteFromValueIndexSql,
-          deleteFromCurrentIndex
-        ).foreach { deleteSql ⇒
-          useAndClose(connection.prepareStatement(deleteSql)) { ps ⇒
-            paramSetter(ps)
-            ps.executeUpdate()
+      val executor = Executors.newFixedThreadPool(parallelism)
+      try {
+        val futures =
+          partitions map { case (dataForAllVersions, indexedControls) ⇒
+            executor.submit(new Callable[Unit] {
+              def call(): Unit =
+                if (StatusStore.getStatus != Stopping)
+                  RelationalUtils.withDataSourceConnection(dataSource, new IndentedLogger(RelationalUtils.Logger.getLogger)) { connection ⇒
+                    val (whereConditions, paramSetter) = whereConditionsAndParamSetter(dataForAllVersions)
+                    cleanIndex(connection, dataForAllVersions, whereConditions, paramSetter)
+                    indexDocuments(provider, connection, whereConditions, paramSetter, (_, _) ⇒ indexedControls, batchSize)
+                  }
+            })
           }
+
+        try
+          futures foreach (_.get)
+        catch {
+          case e: ExecutionException ⇒ throw e.getCause
         }
-      }
+      } finally
+        executor.shutdownNow()
+    }
 
-      val currentFromWhere =
-        s"""|    FROM
-            |      orbeon_form_data d,
-            |      (
-            |        SELECT
-            |          document_id,
-            |          draft,
-            |          max(last_modified_time) last_modified_time
-            |        FROM
-            |          orbeon_form_data
-            |        ${whereConditions.nonEmpty.string("WHERE")}
-            |          ${whereConditions.mkString(" AND ")}
-            |        GROUP BY
-            |          document_id,
-            |          draft
-            |      ) l
-            |   WHERE
-            |     d.document_id          = l.document_id        AND
-            |     d.last_modified_time   = l.last_modified_time AND
-            |     d.deleted              = 'N'
-            |""".stripMargin
+  // One partition per app/form, with the indexed controls of the form
+  private[index] def partitionsWithIndexedControls(
+    forms               : List[DataForAllVersions],
+    readIndexedControls : (String, String) ⇒ Seq[IndexedControl]
+  ): List[(DataForAllVersions, Seq[IndexedControl])] =
+    forms map { dataForAllVersions ⇒
+      dataForAllVersions → readIndexedControls(dataForAllVersions.app, dataForAllVersions.form)
+    }
 
-      // Count how many documents we'll reindex, and tell progress code
-      val countSql =
-        s"""|SELECT count(*)
-            |$currentFromWhere
-            |""".stripMargin
-      useAndClose(connection.prepareStatement(countSql)) { ps ⇒
-        paramSetter(ps)
-        useAndClose(ps.executeQuery()) { rs ⇒
-          rs.next()
-          val count = rs.getInt(1)
-          Backend.setProviderDocumentTotal(count)
+  // Documents are added to JDBC batches, which are executed every `batchSize` documents, and for the remaining
+  // documents when done
+  private[index] class Batches(batchSize: Int, execute: Int ⇒ Unit) {
+
+    private var documentsInBatch = 0
+
+    def documentAdded(): Unit = {
+      documentsInBatch += 1
+      if (documentsInBatch >= batchSize)
+        done()
+    }
+
+    def done(): Unit =
+      if (documentsInBatch > 0) {
+        execute(documentsInBatch)
+        documentsInBatch = 0
+      }
+  }
+
+  private def whereConditionsAndParamSetter(whatToReindex: WhatToReindex): (List[String], PreparedStatement ⇒ Unit) =
+    whatToReindex match {
+      case AllData ⇒ (
+        Nil,
+        (ps: PreparedStatement) ⇒ Unit
+      )
+      case DataForDocumentId(id) ⇒ (
+        List("document_id = ?"),
+        (ps: PreparedStatement) ⇒ ps.setString(1, id)
+      )
+      case DataForForm(app, form, version) ⇒ (
+        List(
+          "app = ?",
+          "form = ?",
+          "form_version = ?"
+        ),
+        (ps: PreparedStatement) ⇒ {
+          ps.setString(1, app)
+          ps.setString(2, form)
+          ps.setInt   (3, version)
         }
+      )
+      case DataForAllVersions(app, form) ⇒ (
+        List(
+          "app = ?",
+          "form = ?"
+        ),
+        (ps: PreparedStatement) ⇒ {
+          ps.setString(1, app)
+          ps.setString(2, form)
+        }
+      )
+    }
+
+  private def cleanIndex(
+    connection      : Connection,
+    whatToReindex   : WhatToReindex,
+    whereConditions : List[String],
+    paramSetter     : PreparedStatement ⇒ Unit
+  ): Unit = {
+    val deleteWhereClause = whereConditions match {
+      case Nil ⇒ ""
+      case _   ⇒ "WHERE " + whereConditions.mkString(" AND ")
+    }
+    val deleteFromValueIndexSql = "DELETE FROM orbeon_i_control_text " + (
+      whatToReindex match {
+        case AllData ⇒ ""
+        case _ ⇒
+          s"""|WHERE data_id IN (
+              |   SELECT data_id
+              |     FROM orbeon_i_current
+              |   $deleteWhereClause
+              | )
+              |""".stripMargin
       }
+    )
+    val deleteFromCurrentIndex =
+      s"""|DELETE FROM orbeon_i_current
+          |$deleteWhereClause
+          |""".stripMargin
 
-      // Get all the row from orbeon_form_data that are "latest" and not deleted
-      val xmlCol = Provider.xmlCol(provider, "d")
-      val currentDataSql =
-        s"""  SELECT d.id,
-           |         d.created,
-           |         d.last_modified_time,
-           |         d.last_modified_by,
-           |         d.username,
-           |         d.groupname,
-           |         d.organization_id,
-           |         d.app,
-           |         d.form,
-           |         d.form_version,
-           |         d.document_id,
-           |         d.draft,
-           |         $xmlCol
-           |$currentFromWhere
-           |ORDER BY app, form
-           |""".stripMargin
-
-      useAndClose(connection.prepareStatement(currentDataSql)) { ps ⇒
+    Iterator(
+      deleteFromValueIndexSql,
+      deleteFromCurrentIndex
+    ).foreach { deleteSql ⇒
+      useAndClose(connection.prepareStatement(deleteSql)) { ps ⇒
         paramSetter(ps)
-        useAndClose(ps.executeQuery()) { currentData ⇒
-
-          // Info on indexed controls for a given app/form
-          case class FormIndexedControls(
-            app             : String,
-            form            : String,
-            indexedControls : Seq[IndexedControl]
-          )
-
-          // Go through each data document
-          // - we keep track of the indexed controls along in the iteration, and thus avoid recomputing them
-          var prevIndexedControls: Option[FormIndexedControls] = None
-          while (currentData.next() && StatusStore.getStatus != Stopping) {
-
-            Backend.setProviderDocumentNext()
-            val app = currentData.getString("app")
-            val form = currentData.getString("form")
-
-            // Get indexed controls for current app/form
-            val indexedControls: Seq[IndexedControl] = prevIndexedControls match {
-              case Some(FormIndexedControls(`app`, `form`, indexedControls)) ⇒
-                // Use indexed controls from previous iteration
-                indexedControls
-              case _ ⇒
-                // Compute indexed controls reading the form definition
-                FormRunner.readPublishedForm(app, form)(RelationalUtils.Logger) match {
-                  case None ⇒
-                    RelationalUtils.Logger.logError("", s"Can't index documents for $app/$form as form definition can't be found")
-                    Seq.empty
-                  case Some(formDefinition) ⇒
-                    findIndexedControls(formDefinition, app, form)
-                }
-            }
+        ps.executeUpdate()
+      }
+    }
+  }
 
-            // Insert into the "current data" table
-            val position = Iterator.from(1)
-
-            val insertIntoCurrentSql =
-              """INSERT INTO orbeon_i_current
-                |           (data_id,
-                |            created,
-                |            last_modified_time,
-                |            last_modified_by,
-                |            username,
-                |            groupname,
-                |            organization_id,
-                |            app,
-                |            form,
-                |            form_version,
-                |            document_id,
-                |            draft)
-                |    VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
-              """.stripMargin
-
-            useAndClose(connection.prepareStatement(insertIntoCurrentSql)) { ps ⇒
-              ps.setInt      (position.next(), currentData.getInt("id"))
-              ps.setTimestamp(position.next(), currentData.getTimestamp("created"))
-              ps.setTimestamp(position.next(), currentData.getTimestamp("last_modified_time"))
-              ps.setString   (position.next(), currentData.getString("last_modified_by"))
-              ps.setString   (position.next(), currentData.getString("username"))
-              ps.setString   (position.next(), currentData.getString("groupname"))
-              RelationalUtils.getIntOpt(currentData, "organization_id") match {
-                case Some(id) ⇒ ps.setInt(position.next(), id)
-                case None     ⇒ ps.setNull(position.next(), java.sql.Types.INTEGER)
-              }
-              ps.setString   (position.next(), app)
-              ps.setString   (position.next(), form)
-              ps.setInt      (position.next(), currentData.getInt("form_version"))
-              ps.setString   (position.next(), currentData.getString("document_id"))
-              ps.setString   (position.next(), currentData.getString("draft"))
-              ps.executeUpdate()
-              ps.close()
-            }
+  // Partitions only clean the index for the app/form they index, so remove what is left for forms which don't have
+  // data anymore
+  private def cleanIndexForFormsWithoutData(connection: Connection): Unit = {
+    val withoutDataCondition =
+      """|NOT EXISTS (
+         |  SELECT *
+         |    FROM orbeon_form_data d
+         |   WHERE d.app  = orbeon_i_current.app AND
+         |         d.form = orbeon_i_current.form
+         |)
+         |""".stripMargin
+    val deleteFromValueIndexSql =
+      s"""|DELETE FROM orbeon_i_control_text
+          |WHERE data_id IN (
+          |   SELECT data_id
+          |     FROM orbeon_i_current
+          |    WHERE $withoutDataCondition
+          | )
+          |""".stripMargin
+    val deleteFromCurrentIndex =
+      s"""|DELETE FROM orbeon_i_current
+          |WHERE $withoutDataCondition
+          |""".stripMargin
 
-            // Read data (XML)
-            // - using lazy, as we might not need the data, if there are no controls to index
-            // - return root element, as XPath this is the node XPath expressions are relative to
-            lazy val dataRootElement: NodeInfo = {
-              val document = Provider.readXmlColumn(provider, currentData)
-              document.descendant(*).head
-            }
+    Iterator(
+      deleteFromValueIndexSql,
+      deleteFromCurrentIndex
+    ).foreach { deleteSql ⇒
+      useAndClose(connection.prepareStatement(deleteSql))(_.executeUpdate())
+    }
+  }
 
-            // Extract and insert value for each indexed control
-            for (control ← indexedControls) {
-
-              val nodes = scaxon.XPath.eval(dataRootElement, control.xpath, FbNamespaceMapping).asInstanceOf[Seq[NodeInfo]]
-              for ((node, pos) ← nodes.zipWithIndex) {
-                val nodeValue = truncateValue(provider, node.getStringValue)
-                // For indexing, we are not interested in empty values
-                if (!nodeValue.isEmpty) {
-                  val position = Iterator.from(1)
-                  val insertIntoControlTextSql =
-                    """INSERT INTO orbeon_i_control_text
-                      |           (data_id,
-                      |            pos,
-                      |            control,
-                      |            val)
-                      |    VALUES (? , ? , ? , ? )
-                    """.stripMargin
-                  useAndClose(connection.prepareStatement(insertIntoControlTextSql)) { ps ⇒
-                    ps.setInt   (position.next(), currentData.getInt("id"))
-                    ps.setInt   (position.next(), pos + 1)
-                    ps.setString(position.next(), control.xpath)
-                    ps.setString(position.next(), nodeValue)
-                    ps.executeUpdate()
-                    ps.close()
-                  }
-                }
-              }
+  private def currentFromWhere(whereConditions: List[String]) =
+    s"""|    FROM
+        |      orbeon_form_data d,
+        |      (
+        |        SELECT
+        |          document_id,
+        |          draft,
+        |          max(last_modified_time) last_modified_time
+        |        FROM
+        |          orbeon_form_data
+        |        ${whereConditions.nonEmpty.string("WHERE")}
+        |          ${whereConditions.mkString(" AND ")}
+        |        GROUP BY
+        |          document_id,
+        |          draft
+        |      ) l
+        |   WHERE
+        |     d.document_id          = l.document_id        AND
+        |     d.last_modified_time   = l.last_modified_time AND
+        |     d.deleted              = 'N'
+        |""".stripMargin
+
+  private def countDocuments(
+    connection      : Connection,
+    whereConditions : List[String],
+    paramSetter     : PreparedStatement ⇒ Unit
+  ): Int = {
+    val countSql =
+      s"""|SELECT count(*)
+          |${currentFromWhere(whereConditions)}
+          |""".stripMargin
+    useAndClose(connection.prepareStatement(countSql)) { ps ⇒
+      paramSetter(ps)
+      useAndClose(ps.executeQuery()) { rs ⇒
+        rs.next()
+        rs.getInt(1)
+      }
+    }
+  }
+
+  // All the app/form for which there is data, used to partition the work
+  private def findForms(connection: Connection): List[DataForAllVersions] = {
+    val formsSql =
+      """SELECT DISTINCT app, form
+        |  FROM orbeon_form_data
+        |""".stripMargin
+    useAndClose(connection.prepareStatement(formsSql)) { ps ⇒
+      useAndClose(ps.executeQuery()) { rs ⇒
+        val forms = ListBuffer[DataForAllVersions]()
+        while (rs.next())
+          forms += DataForAllVersions(rs.getString("app"), rs.getString("form"))
+        forms.result()
+      }
+    }
+  }
+
+  private def readIndexedControls(app: String, form: String): Seq[IndexedControl] =
+    FormRunner.readPublishedForm(app, form)(RelationalUtils.Logger) match {
+      case None ⇒
+        RelationalUtils.Logger.logError("", s"Can't index documents for $app/$form as form definition can't be found")
+        Seq.empty
+      case Some(formDefinition) ⇒
+        findIndexedControls(formDefinition, app, form)
+    }
+
+  private def indexDocuments(
+    provider           : Provider,
+    connection         : Connection,
+    whereConditions    : List[String],
+    paramSetter        : PreparedStatement ⇒ Unit,
+    indexedControlsFor : (String, String) ⇒ Seq[IndexedControl],
+    batchSize          : Int
+  ): Unit = {
+
+    // Get all the row from orbeon_form_data that are "latest" and not deleted
+    val xmlCol = Provider.xmlCol(provider, "d")
+    val currentDataSql =
+      s"""  SELECT d.id,
+         |         d.created,
+         |         d.last_modified_time,
+         |         d.last_modified_by,
+         |         d.username,
+         |         d.groupname,
+         |         d.organization_id,
+         |         d.app,
+         |         d.form,
+         |         d.form_version,
+         |         d.document_id,
+         |         d.draft,
+         |         $xmlCol
+         |${currentFromWhere(whereConditions)}
+         |ORDER BY app, form
+         |""".stripMargin
+
+    val insertIntoCurrentSql =
+      """INSERT INTO orbeon_i_current
+        |           (data_id,
+        |            created,
+        |            last_modified_time,
+        |            last_modified_by,
+        |            username,
+        |            groupname,
+        |            organization_id,
+        |            app,
+        |            form,
+        |            form_version,
+        |            document_id,
+        |            draft)
+        |    VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+      """.stripMargin
+
+    val insertIntoControlTextSql =
+      """INSERT INTO orbeon_i_control_text
+        |           (data_id,
+        |            pos,
+        |            control,
+        |            val)
+        |    VALUES (? , ? , ? , ? )
+      """.stripMargin
+
+    useAndClose(connection.prepareStatement(currentDataSql)) { ps ⇒
+      paramSetter(ps)
+      useAndClose(ps.executeQuery()) { currentData ⇒
+        useAndClose(connection.prepareStatement(insertIntoCurrentSql)) { insertIntoCurrent ⇒
+          useAndClose(connection.prepareStatement(insertIntoControlTextSql)) { insertIntoControlText ⇒
+
+            // Rows for `orbeon_i_current` must be inserted before rows for `orbeon_i_control_text`
+            val batches =
+              new Batches(batchSize, documentsInBatch ⇒ {
+                insertIntoCurrent.executeBatch()
+                insertIntoControlText.executeBatch()
+                Backend.setProviderDocumentNext(documentsInBatch)
+              })
+
+            // Go through each data document
+            while (currentData.next() && StatusStore.getStatus != Stopping) {
+
+              val app  = currentData.getString("app")
+              val form = currentData.getString("form")
+
+              addDocumentRows(
+                provider,
+                currentData,
+                app,
+                form,
+                indexedControlsFor(app, form),
+                insertIntoCurrent,
+                insertIntoControlText
+              )
+
+              batches.documentAdded()
             }
-            // Pass current indexed controls to the next iteration
-            prevIndexedControls = Some(FormIndexedControls(app, form, indexedControls))
+
+            batches.done()
           }
         }
       }
     }
   }
 
+  private def addDocumentRows(
+    provider              : Provider,
+    currentData           : ResultSet,
+    app                   : String,
+    form                  : String,
+    indexedControls       : Seq[IndexedControl],
+    insertIntoCurrent     : PreparedStatement,
+    insertIntoControlText : PreparedStatement
+  ): Unit = {
+
+    val dataId = currentData.getInt("id")
+
+    // Add to the "current data" table
+    locally {
+      val position = Iterator.from(1)
+      val ps = insertIntoCurrent
+
+      ps.setInt      (position.next(), dataId)
+      ps.setTimestamp(position.next(), currentData.getTimestamp("created"))
+      ps.setTimestamp(position.next(), currentData.getTimestamp("last_modified_time"))
+      ps.setString   (position.next(), currentData.getString("last_modified_by"))
+      ps.setString   (position.next(), currentData.getString("username"))
+      ps.setString   (position.next(), currentData.getString("groupname"))
+      RelationalUtils.getIntOpt(currentData, "organization_id") match {
+        case Some(id) ⇒ ps.setInt(position.next(), id)
+        case None     ⇒ ps.setNull(position.next(), java.sql.Types.INTEGER)
+      }
+      ps.setString   (position.next(), app)
+      ps.setString   (position.next(), form)
+      ps.setInt      (position.next(), currentData.getInt("form_version"))
+      ps.setString   (position.next(), currentData.getString("document_id"))
+      ps.setString   (position.next(), currentData.getString("draft"))
+      ps.addBatch()
+    }
+
+    // Read data (XML)
+    // - using lazy, as we might not need the data, if there are no controls to index
+    // - return root element, as XPath this is the node XPath expressions are relative to
+    lazy val dataRootElement: NodeInfo = {
+      val document = Provider.readXmlColumn(provider, currentData)
+      document.descendant(*).head
+    }
+
+    // Extract and add value for each indexed control
+    for (control ← indexedControls) {
+
+      val nodes = scaxon.XPath.eval(dataRootElement, control.xpath, FbNamespaceMapping).asInstanceOf[Seq[NodeInfo]]
+      for ((node, pos) ← nodes.zipWithIndex) {
+        val nodeValue = truncateValue(provider, node.getStringValue)
+        // For indexing, we are not interested in empty values
+        if (!nodeValue.isEmpty) {
+          val position = Iterator.from(1)
+          val ps = insertIntoControlText
+          ps.setInt   (position.next(), dataId)
+          ps.setInt   (position.next(), pos + 1)
+          ps.setString(position.next(), control.xpath)
+          ps.setString(position.next(), nodeValue)
+          ps.addBatch()
+        }
+      }
+    }
+  }
+
   /**
    * If control values are "really long", we might not be able fully index them. Here we truncate values stored
    * in the index table so it doesn't exceed the limit imposed by the type used to store the value in
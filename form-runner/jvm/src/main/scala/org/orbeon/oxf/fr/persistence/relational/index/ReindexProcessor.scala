@@ -16,6 +16,7 @@ package org.orbeon.oxf.fr.persistence.relational.index
 import org.orbeon.oxf.fr.persistence.relational._
 import org.orbeon.oxf.pipeline.api.PipelineContext
 import org.orbeon.oxf.processor.ProcessorImpl
+import org.orbeon.oxf.properties.Properties
 import org.orbeon.oxf.util._
 import org.orbeon.oxf.fr.persistence.relational.Provider
 
@@ -29,12 +30,27 @@ import org.orbeon.oxf.fr.persistence.relational.Provider
 class ReindexProcessor extends ProcessorImpl {
 
   private val ReindexPathRegex    = """/fr/service/([^/]+)/reindex""".r
+  private val ParallelismProperty = "oxf.fr.persistence.reindex.parallelism"
+  private val BatchSizeProperty   = "oxf.fr.persistence.reindex.batch-size"
 
   override def start(pipelineContext: PipelineContext): Unit = {
 
     val ReindexPathRegex(providerToken) = NetUtils.getExternalContext.getRequest.getRequestPath
     val provider = Provider.providerFromToken(providerToken)
-    RelationalUtils.withConnection(Index.reindex(provider, _, Index.AllData))
+
+    val properties  = Properties.instance.getPropertySet
+    val parallelism = properties.getInteger(ParallelismProperty, 1)
+    val batchSize   = properties.getInteger(BatchSizeProperty, Index.DefaultBatchSize)
+
+    if (parallelism > 1)
+      Index.reindexInParallel(
+        provider,
+        RelationalUtils.getDataSource(RelationalUtils.getDataSourceNameFromHeaders),
+        parallelism,
+        batchSize
+      )
+    else
+      RelationalUtils.withConnection(Index.reindex(provider, _, Index.AllData, batchSize))
   }
 
 }
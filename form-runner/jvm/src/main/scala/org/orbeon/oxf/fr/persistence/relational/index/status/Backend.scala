@@ -37,11 +37,26 @@ object Backend {
     StatusStore.setStatus(Stopped)
   }
 
-  def setProviderDocumentTotal(total: Int): Unit =
+  // Time at which indexing of documents started for the current provider, used to compute throughput
+  @volatile private var providerStartTime = 0L
+
+  // Reindexing can run on multiple threads, so updates of the document count are synchronized
+  def setProviderDocumentTotal(total: Int): Unit = synchronized {
+    providerStartTime = System.currentTimeMillis
     setIndexing(i ⇒ Some(i.copy(documentCount = Some(Count(total = total, current = 0)))))
+  }
+
+  def setProviderDocumentNext(count: Int = 1): Unit = synchronized {
+    setDocumentCount(c ⇒ c.copy(current = c.current + count))
+  }
 
-  def setProviderDocumentNext(): Unit =
-    setDocumentCount(c ⇒ c.copy(current = c.current + 1))
+  // Documents indexed per second for the current provider
+  def documentsPerSecond: Double =
+    Some(StatusStore.getStatus) collect {
+      case Indexing(_, _, Some(Count(current, _))) if providerStartTime > 0 ⇒
+        val elapsed = System.currentTimeMillis - providerStartTime
+        if (elapsed > 0) current * 1000.0 / elapsed else 0.0
+    } getOrElse 0.0
 
   private def setIndexing(setter: Indexing ⇒ Option[Indexing]): Unit =
     Some(StatusStore.getStatus).collect { case status: Indexing ⇒
@@ -22,7 +22,7 @@ import scala.collection.JavaConverters._
 
 object StatusStore {
 
-  private var currentStatus: Status = Stopped
+  @volatile private var currentStatus: Status = Stopped
 
   def getStatus: Status = currentStatus
 
@@ -42,7 +42,7 @@ object StatusStore {
           maybeDocumentCount match {
             case None                        ⇒ logInfo (s"Indexing $providerInfo")
             case Some(dc) if dc.current == 0 ⇒ logInfo (s"Indexing $providerInfo, ${dc.total} documents")
-            case Some(dc) if dc.current != 0 ⇒ logDebug(s"Indexing $providerInfo, document ${dc.current}/${dc.total}")
+            case Some(dc) if dc.current != 0 ⇒ logDebug(s"Indexing $providerInfo, document ${dc.current}/${dc.total}, ${Backend.documentsPerSecond.toInt} documents/s")
           }
       }
     }
@@ -25,6 +25,7 @@ object UI {
   def getProviderTotal   = Some(StatusStore.getStatus).collect{case Indexing(_, c, _) ⇒ c.total         }.getOrElse(0)
   def getDocumentCurrent = Some(StatusStore.getStatus).collect{case Indexing(_, _, Some(d)) ⇒ d.current }.getOrElse(0)
   def getDocumentTotal   = Some(StatusStore.getStatus).collect{case Indexing(_, _, Some(d)) ⇒ d.total   }.getOrElse(0)
+  def getDocumentsPerSecond = Backend.documentsPerSecond
 
 }
 
@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.fr.persistence.relational.index
+
+import org.junit.Test
+import org.orbeon.oxf.fr.persistence.relational.index.Index.{DataForAllVersions, IndexedControl}
+import org.orbeon.oxf.fr.persistence.relational.index.status._
+import org.scalatest.junit.AssertionsForJUnit
+
+import scala.collection.mutable.ListBuffer
+
+class ReindexTest extends AssertionsForJUnit {
+
+  @Test def batching(): Unit = {
+
+    val executed = ListBuffer[Int]()
+    val batches  = new Index.Batches(100, executed += _)
+
+    for (_ ← 1 to 250)
+      batches.documentAdded()
+
+    assert(executed.toList === List(100, 100))
+
+    batches.done()
+    assert(executed.toList === List(100, 100, 50))
+
+    // Nothing left to execute
+    batches.done()
+    assert(executed.toList === List(100, 100, 50))
+  }
+
+  @Test def partitioning(): Unit = {
+
+    val forms =
+      List(
+        DataForAllVersions("acme",  "order"),
+        DataForAllVersions("acme",  "invoice"),
+        DataForAllVersions("other", "order")
+      )
+
+    val reads = ListBuffer[(String, String)]()
+
+    def readIndexedControls(app: String, form: String): Seq[IndexedControl] = {
+      reads += app → form
+      Seq(IndexedControl(s"$app-$form", inSearch = true, inSummary = true, "xpath", "xs:string", "input", htmlLabel = false, Nil))
+    }
+
+    val partitions = Index.partitionsWithIndexedControls(forms, readIndexedControls)
+
+    // One partition per app/form, which includes all the versions of the form
+    assert(partitions.map(_._1) === forms)
+    assert(reads.toList === List("acme" → "order", "acme" → "invoice", "other" → "order"))
+    assert(partitions.map(_._2.head.name) === List("acme-order", "acme-invoice", "other-order"))
+  }
+
+  @Test def documentsPerSecond(): Unit = {
+
+    StatusStore.setStatus(Stopped)
+    assert(Backend.documentsPerSecond === 0.0)
+
+    try {
+      StatusStore.setStatus(Indexing("mysql", Count(1, 1), None))
+
+      val startTime = System.currentTimeMillis
+      Backend.setProviderDocumentTotal(1000)
+      Thread.sleep(100)
+      Backend.setProviderDocumentNext(100)
+      Backend.setProviderDocumentNext(50)
+      val elapsed = System.currentTimeMillis - startTime
+
+      assert(StatusStore.getStatus === Indexing("mysql", Count(1, 1), Some(Count(150, 1000))))
+
+      // 150 documents in at least 100 ms, and at most the time measured here
+      val documentsPerSecond = Backend.documentsPerSecond
+      assert(documentsPerSecond <= 1500.0)
+      assert(documentsPerSecond >= 150 * 1000.0 / (elapsed + 1000))
+    } finally
+      StatusStore.setStatus(Stopped)
+  }
+}
@@ -27,4 +27,7 @@ public interface Cache {
     int getCurrentSize();
     int getMaxSize();
     void setMaxSize(int maxSize);
+    long getCurrentWeight();
+    long getMaxWeight();
+    long getEvictionCount();
 }
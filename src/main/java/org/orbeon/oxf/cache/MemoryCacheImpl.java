@@ -25,28 +25,48 @@ import java.util.concurrent.locks.Lock;
 /**
  * Memory cache implementation.
  *
+ * The cache is bounded by a number of entries and optionally by a total weight. When a maximum weight is set, objects
+ * implementing Weighable are weighed when added, and entries are evicted from the end of the LRU list until the total
+ * weight fits again. Other objects have a weight of 0.
+ *
  * @noinspection SimplifiableIfStatement
  */
 public class MemoryCacheImpl implements Cache {
 
+    public static final long NO_MAX_WEIGHT = Long.MAX_VALUE;
+
     private int maxSize;
+    private volatile long maxWeight;
 
     private Map<CacheKey, CacheEntry> keyToEntryMap = new HashMap<CacheKey, CacheEntry>();
     private CacheLinkedList linkedList = new CacheLinkedList();
     private int currentSize;
+    private long currentWeight;
+    private long evictionCount;
 
     public MemoryCacheImpl(int maxSize) {
+        this(maxSize, NO_MAX_WEIGHT);
+    }
+
+    public MemoryCacheImpl(int maxSize, long maxWeight) {
         this.maxSize = maxSize;
+        this.maxWeight = maxWeight;
     }
 
-    public synchronized void add(CacheKey key, Object validity, Object cacheable) {
+    public void add(CacheKey key, Object validity, Object cacheable) {
+        // Weigh before taking the lock as this can be costly
+        final long weight = (maxWeight != NO_MAX_WEIGHT && cacheable instanceof Weighable) ? ((Weighable) cacheable).getApproximateWeight() : 0;
+        add(key, validity, cacheable, weight);
+    }
+
+    private synchronized void add(CacheKey key, Object validity, Object cacheable, long weight) {
         if (key == null || validity == null || maxSize == 0) return;
         CacheEntry entry = keyToEntryMap.get(key);
         if (entry == null) {
             // No existing entry found
             if (currentSize == maxSize) {
                 // Cache is full, try to evict one entry, starting from the end
-                tryEvictLast();
+                tryEvictLast(null);
                 // If somehow we couldn't manage to evict an entry (e.g. all were locked), the cache will grow over
                 // maxsize.
             }
@@ -56,6 +76,8 @@ public class MemoryCacheImpl implements Cache {
             entry.key = key;
             entry.validity = validity;
             entry.cacheable = cacheable;
+            entry.weight = weight;
+            currentWeight += weight;
             keyToEntryMap.put(key, entry);
             entry.listEntry = linkedList.addFirst(entry);
 
@@ -66,15 +88,20 @@ public class MemoryCacheImpl implements Cache {
             // Update validity and move to the front
             entry.validity = validity;
             entry.cacheable = cacheable;
+            currentWeight += weight - entry.weight;
+            entry.weight = weight;
             linkedList.remove(entry.listEntry);
             entry.listEntry = linkedList.addFirst(entry);
         }
+
+        // Don't evict the entry just added, even if it is heavier than the maximum weight on its own
+        while (currentWeight > maxWeight && tryEvictLast(entry)) {}
     }
 
-    private boolean tryEvictLast() {
+    private boolean tryEvictLast(CacheEntry entryToKeep) {
         for (final Iterator<CacheEntry> i = linkedList.reverseIterator(); i.hasNext();) {
             final CacheEntry entryToTry = i.next();
-            if (tryEvict(entryToTry)) {
+            if (entryToTry != entryToKeep && tryEvict(entryToTry)) {
                 return true;
             }
         }
@@ -120,9 +147,11 @@ public class MemoryCacheImpl implements Cache {
             keyToEntryMap.remove(key);
             linkedList.remove(entry.listEntry);
             currentSize--;
+            currentWeight -= entry.weight;
 
             // Notify object
             if (isEvict) {
+                evictionCount++;
                 notifyEvicted(entry.cacheable);
             } else if (isRemove) {
                 notifyRemoved(entry.cacheable);
@@ -159,6 +188,7 @@ public class MemoryCacheImpl implements Cache {
         keyToEntryMap = new HashMap<CacheKey, CacheEntry>();
         linkedList = new CacheLinkedList();
         currentSize = 0;
+        currentWeight = 0;
         return previousSize;
     }
 
@@ -213,7 +243,7 @@ public class MemoryCacheImpl implements Cache {
             int tryCount = 0;
             final int maxTries = currentSize;
             while(currentSize > maxSize && tryCount < maxTries) {
-                tryEvictLast();
+                tryEvictLast(null);
                 tryCount++;
             }
 
@@ -221,6 +251,23 @@ public class MemoryCacheImpl implements Cache {
         }
     }
 
+    public synchronized long getCurrentWeight() {
+        return currentWeight;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public synchronized void setMaxWeight(long maxWeight) {
+        this.maxWeight = maxWeight;
+        while (currentWeight > maxWeight && tryEvictLast(null)) {}
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
     public Iterator<CacheKey> iterateCacheKeys() {
         return new TransformIterator(linkedList.iterator(), new Transformer() {
             public Object transform(Object o) {
@@ -13,7 +13,9 @@
  */
 package org.orbeon.oxf.cache;
 
+import org.orbeon.oxf.common.OXFException;
 import org.orbeon.oxf.properties.Properties;
+import org.orbeon.oxf.properties.PropertySet;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -28,6 +30,13 @@ public class ObjectCache {
 
     private static final String CACHE_PROPERTY_NAME_PREFIX = "oxf.";
     private static final String CACHE_PROPERTY_NAME_SIZE_SUFFIX = ".size";
+    private static final String CACHE_PROPERTY_NAME_IMPLEMENTATION_SUFFIX = ".implementation";
+    private static final String CACHE_PROPERTY_NAME_CONCURRENCY_SUFFIX = ".concurrency-level";
+    private static final String CACHE_PROPERTY_NAME_MAX_WEIGHT_SUFFIX = ".max-weight-mb";
+
+    private static final String IMPLEMENTATION_MEMORY = "memory";
+    private static final String IMPLEMENTATION_STRIPED = "striped";
+    private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
 
     private static final Map<String, Cache> namedObjectCaches = new HashMap<String, Cache>();
 
@@ -49,6 +58,13 @@ public class ObjectCache {
     /**
      * Get the instance of the object cache specified.
      *
+     * The implementation is selected with the oxf.[cacheName].implementation property, which can be "memory" (the
+     * default, a single LRU list under one lock) or "striped" (independently locked segments, see
+     * StripedMemoryCacheImpl). The number of segments is set with oxf.[cacheName].concurrency-level.
+     *
+     * In addition to the maximum number of entries, oxf.[cacheName].max-weight-mb sets the maximum total weight, in
+     * megabytes, of the cached objects which implement Weighable. 0, the default, means no maximum weight.
+     *
      * @param cacheName     name of the cache
      * @param defaultSize   default size if size is not found in properties
      * @return              instance of cache
@@ -56,9 +72,22 @@ public class ObjectCache {
     public synchronized static Cache instance(String cacheName, int defaultSize) {
         Cache cache = namedObjectCaches.get(cacheName);
         if (cache == null) {
-            final String propertyName = CACHE_PROPERTY_NAME_PREFIX + cacheName + CACHE_PROPERTY_NAME_SIZE_SUFFIX;
-            final Integer size = Properties.instance().getPropertySet().getInteger(propertyName, defaultSize);
-            cache = new MemoryCacheImpl(size);
+            final PropertySet propertySet = Properties.instance().getPropertySet();
+            final String propertyPrefix = CACHE_PROPERTY_NAME_PREFIX + cacheName;
+
+            final Integer size = propertySet.getInteger(propertyPrefix + CACHE_PROPERTY_NAME_SIZE_SUFFIX, defaultSize);
+            final String implementation = propertySet.getString(propertyPrefix + CACHE_PROPERTY_NAME_IMPLEMENTATION_SUFFIX, IMPLEMENTATION_MEMORY);
+            final Integer maxWeightMB = propertySet.getInteger(propertyPrefix + CACHE_PROPERTY_NAME_MAX_WEIGHT_SUFFIX, 0);
+            final long maxWeight = maxWeightMB > 0 ? maxWeightMB * 1024L * 1024L : MemoryCacheImpl.NO_MAX_WEIGHT;
+
+            if (IMPLEMENTATION_STRIPED.equals(implementation)) {
+                final Integer concurrencyLevel = propertySet.getInteger(propertyPrefix + CACHE_PROPERTY_NAME_CONCURRENCY_SUFFIX, DEFAULT_CONCURRENCY_LEVEL);
+                cache = new StripedMemoryCacheImpl(size, concurrencyLevel, maxWeight);
+            } else if (IMPLEMENTATION_MEMORY.equals(implementation)) {
+                cache = new MemoryCacheImpl(size, maxWeight);
+            } else {
+                throw new OXFException("Invalid cache implementation for `" + cacheName + "`: " + implementation);
+            }
             namedObjectCaches.put(cacheName, cache);
         }
         return cache;
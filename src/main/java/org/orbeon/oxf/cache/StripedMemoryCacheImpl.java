@@ -0,0 +1,152 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.cache;
+
+import org.apache.commons.collections.iterators.IteratorChain;
+
+import java.util.Iterator;
+
+/**
+ * Memory cache implementation split into independently locked segments.
+ *
+ * Each key is mapped to a segment by hash, and each segment is a MemoryCacheImpl with its own monitor. This means that
+ * validity checks and eviction locks behave exactly as with MemoryCacheImpl, but LRU ordering is only maintained within
+ * a segment, so eviction is an approximation of global LRU.
+ */
+public class StripedMemoryCacheImpl implements Cache {
+
+    // Don't create segments smaller than this, as with small caches the LRU approximation becomes too coarse
+    private static final int MIN_SEGMENT_SIZE = 8;
+
+    private final MemoryCacheImpl[] segments;
+    private volatile int maxSize;
+    private final long maxWeight;
+
+    public StripedMemoryCacheImpl(int maxSize, int concurrencyLevel) {
+        this(maxSize, concurrencyLevel, MemoryCacheImpl.NO_MAX_WEIGHT);
+    }
+
+    public StripedMemoryCacheImpl(int maxSize, int concurrencyLevel, long maxWeight) {
+        final int segmentCount = Math.max(1, Math.min(concurrencyLevel, maxSize / MIN_SEGMENT_SIZE));
+
+        this.segments = new MemoryCacheImpl[segmentCount];
+        this.maxSize = maxSize;
+        this.maxWeight = maxWeight;
+
+        // Like the size, the weight is split evenly between segments
+        for (int i = 0; i < segmentCount; i++)
+            segments[i] = new MemoryCacheImpl(
+                (int) segmentShare(maxSize, segmentCount, i),
+                maxWeight == MemoryCacheImpl.NO_MAX_WEIGHT ? maxWeight : segmentShare(maxWeight, segmentCount, i)
+            );
+    }
+
+    // Share of the total for the given segment, so that the shares add up to the total: the first `total % segmentCount`
+    // segments get one more than the others
+    private static long segmentShare(long total, int segmentCount, int segment) {
+        return total / segmentCount + (segment < total % segmentCount ? 1 : 0);
+    }
+
+    private MemoryCacheImpl segmentFor(CacheKey key) {
+        // Spread the hash so that keys with poor low bits still distribute across segments
+        int h = key.hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return segments[(h & 0x7fffffff) % segments.length];
+    }
+
+    public int getSegmentCount() {
+        return segments.length;
+    }
+
+    public void add(CacheKey key, Object validity, Object cacheable) {
+        if (key == null) return;
+        segmentFor(key).add(key, validity, cacheable);
+    }
+
+    public void remove(CacheKey key) {
+        segmentFor(key).remove(key);
+    }
+
+    public int removeAll() {
+        int count = 0;
+        for (final MemoryCacheImpl segment : segments)
+            count += segment.removeAll();
+        return count;
+    }
+
+    public Object findValid(CacheKey key, Object validity) {
+        return segmentFor(key).findValid(key, validity);
+    }
+
+    public Object takeValid(CacheKey key, Object validity) {
+        return segmentFor(key).takeValid(key, validity);
+    }
+
+    public CacheEntry findAny(CacheKey key) {
+        return segmentFor(key).findAny(key);
+    }
+
+    // NOTE: Like with MemoryCacheImpl, iteration is not safe against concurrent modifications
+    public Iterator<CacheKey> iterateCacheKeys() {
+        final IteratorChain chain = new IteratorChain();
+        for (final MemoryCacheImpl segment : segments)
+            chain.addIterator(segment.iterateCacheKeys());
+        return chain;
+    }
+
+    public Iterator<Object> iterateCacheObjects() {
+        final IteratorChain chain = new IteratorChain();
+        for (final MemoryCacheImpl segment : segments)
+            chain.addIterator(segment.iterateCacheObjects());
+        return chain;
+    }
+
+    public int getCurrentSize() {
+        int size = 0;
+        for (final MemoryCacheImpl segment : segments)
+            size += segment.getCurrentSize();
+        return size;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getCurrentWeight() {
+        long weight = 0;
+        for (final MemoryCacheImpl segment : segments)
+            weight += segment.getCurrentWeight();
+        return weight;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public long getEvictionCount() {
+        long count = 0;
+        for (final MemoryCacheImpl segment : segments)
+            count += segment.getEvictionCount();
+        return count;
+    }
+
+    public synchronized void setMaxSize(int maxSize) {
+        if (maxSize != this.maxSize) {
+            for (int i = 0; i < segments.length; i++)
+                segments[i].setMaxSize((int) segmentShare(maxSize, segments.length, i));
+            this.maxSize = maxSize;
+        }
+    }
+}
@@ -74,6 +74,7 @@ public abstract class ProcessorImpl implements Processor {
     private final List<ProcessorInputOutputInfo> outputsInfo = new ArrayList<ProcessorInputOutputInfo>(0);
 
     private LocationData locationData;
+    private ProcessorStats profilerStats;
 
     public static final String PROCESSOR_INPUT_SCHEME = "input:";
     public static final String PROCESSOR_OUTPUT_SCHEME = "output:";
@@ -91,6 +92,16 @@ public abstract class ProcessorImpl implements Processor {
         return sequenceNumber;
     }
 
+    /**
+     * Return the statistics of this processor for the pipeline profiler.
+     */
+    public ProcessorStats getProfilerStats() {
+        // Not created before the processor is used, so that its location is known
+        if (profilerStats == null)
+            profilerStats = PipelineProfiler.statsFor(this);
+        return profilerStats;
+    }
+
     /**
      * Return a property set for this processor.
      */
@@ -357,6 +368,9 @@ public abstract class ProcessorImpl implements Processor {
                 if (logger.isDebugEnabled())
                     logger.debug("Cache " + debugInfo + ": source cacheable and found for key '" + keyValidity.key + "'. FOUND object: " + inputObject);
 
+                if (PipelineProfiler.isEnabled())
+                    getProfilerStats().cacheHits().incrementAndGet();
+
                 reader.foundInCache();
                 return (T) inputObject;
             }
@@ -365,6 +379,9 @@ public abstract class ProcessorImpl implements Processor {
         if (logger.isDebugEnabled())
             logger.debug("Cache " + debugInfo + ": READING.");
 
+        if (PipelineProfiler.isEnabled())
+            getProfilerStats().cacheMisses().incrementAndGet();
+
         final T result = reader.read(pipelineContext, input);
 
         if (reader.allowCaching()) {
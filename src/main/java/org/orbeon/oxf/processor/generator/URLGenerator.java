@@ -529,7 +529,9 @@ public class URLGenerator extends ProcessorImpl {
                                 final Long validity = (Long) getHandlerValidity(pipelineContext, configURIReferences.config, configURIReferences.config.getURL(), handler);
 
                                 // Create store for caching if necessary
-                                final XMLReceiver output = isUseLocalCache ? new SAXStore(xmlReceiver) : xmlReceiver;
+                                final boolean isUseResponseCache =
+                                    handler instanceof URLResourceHandler && ((URLResourceHandler) handler).isResponseCacheable();
+                                final XMLReceiver output = (isUseLocalCache || isUseResponseCache) ? new SAXStore(xmlReceiver) : xmlReceiver;
 
                                 // Handle mode
                                 String mode = configURIReferences.config.getMode();
@@ -573,11 +575,14 @@ public class URLGenerator extends ProcessorImpl {
                                 // Cache the resource if requested but only if there is not a failure status code. It
                                 // seems reasonable to follow the semantic of the web and to never cache unsuccessful
                                 // responses.
-                                if (isUseLocalCache && ! handler.isFailureStatusCode()) {
+                                if ((isUseLocalCache || isUseResponseCache) && ! handler.isFailureStatusCode()) {
                                     // Make sure SAXStore loses its reference on its output so that we don't clutter the cache
                                     ((SAXStore) output).setXMLReceiver(null);
                                     // Add to cache
-                                    ObjectCache.instance().add(localCacheKey, localCacheValidity, output);
+                                    if (isUseLocalCache)
+                                        ObjectCache.instance().add(localCacheKey, localCacheValidity, output);
+                                    if (isUseResponseCache)
+                                        ((URLResourceHandler) handler).storeInResponseCache((SAXStore) output);
                                 }
                             } finally {
                                 handler.destroy();
@@ -923,27 +928,38 @@ public class URLGenerator extends ProcessorImpl {
         private InputStream inputStream;
         private scala.collection.immutable.List<Tuple2<String, String>> headersToPropagate;
 
+        // HTTP response cache, if enabled and usable with this configuration
+        private HttpResponseCache responseCache;
+        private String responseCacheKey;
+        private boolean authenticatedRequest;
+        private boolean revalidating;
+
+        // Cached document used instead of the connection, if any
+        private HttpResponseCache.Entry cachedEntry;
+
         public URLResourceHandler(Config config) {
             super(config);
         }
 
         public String getResourceMediaType() throws IOException {
             openConnection();
-            return connectionResult.mediatypeOrDefault(null);
+            return cachedEntry != null ? cachedEntry.mediatype() : connectionResult.mediatypeOrDefault(null);
         }
 
         public String getConnectionEncoding() throws IOException {
             openConnection();
-            return connectionResult.charsetJava();
+            return cachedEntry != null ? cachedEntry.charset() : connectionResult.charsetJava();
         }
 
         public int getConnectionStatusCode() throws IOException {
             openConnection();
-            return connectionResult.statusCode();
+            return cachedEntry != null ? 200 : connectionResult.statusCode();
         }
 
         public Long getValidity() throws IOException {
             openConnection();
+            if (cachedEntry != null)
+                return cachedEntry.validity();
             return isFailureStatusCode() ? null : connectionResult.lastModifiedJava();
         }
 
@@ -959,6 +975,32 @@ public class URLGenerator extends ProcessorImpl {
             // file can be locked on disk.
             if (inputStream != null)
                 inputStream.close();
+            // Let another request revalidate the cached document if this one didn't
+            if (revalidating) {
+                responseCache.endRevalidation(responseCacheKey);
+                revalidating = false;
+            }
+        }
+
+        public boolean isResponseCacheable() throws IOException {
+            openConnection();
+            return
+                responseCacheKey != null &&
+                cachedEntry == null &&
+                HttpResponseCache.isStorable(connectionResult.statusCode(), connectionResult.headers(), authenticatedRequest);
+        }
+
+        public void storeInResponseCache(SAXStore document) {
+            responseCache.put(
+                responseCacheKey,
+                HttpResponseCache.createEntry(
+                    document,
+                    connectionResult.mediatypeOrDefault(null),
+                    connectionResult.charsetJava(),
+                    connectionResult.headers(),
+                    System.currentTimeMillis()
+                )
+            );
         }
 
         private void openConnection() throws IOException {
@@ -966,11 +1008,42 @@ public class URLGenerator extends ProcessorImpl {
         }
 
         private void openConnection(Long lastModified) throws IOException {
-            if (connectionResult == null) {
+            if (connectionResult == null && cachedEntry == null) {
                 // TODO: pass logging callback
 
+                final URI url;
+                try {
+                    url = config.getURL().toURI();
+                } catch (URISyntaxException e) {
+                    throw new OXFException(e);
+                }
+
+                // Use the response cache for plain HTTP documents only: included documents are dependencies which
+                // the cache doesn't track, and headers to read are only available from an actual connection
+                final HttpResponseCache cache = HttpResponseCache.instanceOrNull();
+                if (cache != null &&
+                        HttpResponseCache.isHttpScheme(url.getScheme()) &&
+                        ! config.getParserConfiguration().handleXInclude &&
+                        (config.getReadHeaders() == null || config.getReadHeaders().isEmpty())) {
+                    responseCache    = cache;
+                    responseCacheKey = config.toString() + "|" + config.getMode();
+                }
+
+                final HttpResponseCache.Lookup lookup =
+                    responseCache != null ? responseCache.lookup(responseCacheKey, System.currentTimeMillis()) : null;
+
+                if (lookup != null && ! lookup.mustRevalidate()) {
+                    // Fresh document, or stale document which another request is revalidating
+                    cachedEntry = lookup.entry();
+                    return;
+                }
+
+                revalidating = lookup != null;
+
                 final Map<String, String[]> newHeaders =
-                    URLGeneratorBase.setIfModifiedIfNeeded(config.getHeaderNameValues(), lastModified);
+                    new HashMap<String, String[]>(URLGeneratorBase.setIfModifiedIfNeeded(config.getHeaderNameValues(), lastModified));
+                if (revalidating)
+                    newHeaders.putAll(lookup.entry().conditionalHeaders());
 
                 final Credentials credentials = config.getUsername() == null ?
                     null :
@@ -981,12 +1054,6 @@ public class URLGenerator extends ProcessorImpl {
                         config.getDomain()
                     );
 
-                final URI url;
-                try {
-                    url = config.getURL().toURI();
-                } catch (URISyntaxException e) {
-                    throw new OXFException(e);
-                }
                 final scala.collection.immutable.Map<String, scala.collection.immutable.List<String>> headers =
                     Connection.jBuildConnectionHeadersCapitalizedIfNeeded(
                         url.getScheme(),
@@ -1000,6 +1067,22 @@ public class URLGenerator extends ProcessorImpl {
                 connectionResult =
                     Connection.jApply(HttpMethod.GET$.MODULE$, url, credentials, null, headers, true, false, indentedLogger).connect(true);
 
+                authenticatedRequest = HttpResponseCache.isAuthenticatedRequest(credentials != null, headers);
+
+                if (revalidating) {
+                    if (connectionResult.statusCode() == 304) {
+                        // The cached document is still valid
+                        cachedEntry = responseCache.revalidated(responseCacheKey, lookup.entry(), connectionResult.headers(), System.currentTimeMillis());
+                        connectionResult.close();
+                        connectionResult = null;
+                        revalidating = false;
+                        return;
+                    } else {
+                        // The new document, if any, replaces the cached document after it is read
+                        responseCache.remove(responseCacheKey);
+                    }
+                }
+
                 inputStream = connectionResult.content().inputStream();
 
                 headersToPropagate = URLGeneratorBase.collectHeaders(connectionResult, config.getReadHeaders());
@@ -1010,29 +1093,39 @@ public class URLGenerator extends ProcessorImpl {
 
         public void readHTML(XMLReceiver xmlReceiver) throws IOException {
             openConnection();
+            if (replayCachedEntry(xmlReceiver))
+                return;
             checkStatusCode();
             ResourceHandlerBase.readHTML(inputStream, config.getTidyConfig(), getExternalEncoding(), xmlReceiver);
         }
 
         public void readText(ContentHandler output, String contentType, Long lastModified) throws IOException {
             openConnection();
+            if (replayCachedEntry(output))
+                return;
             output.setDocumentLocator(new URLLocator(config.getURL().toExternalForm()));
             BinaryTextSupport.readText(inputStream, getExternalEncoding(), output, contentType, lastModified, getConnectionStatusCode());
         }
 
         public void readJSON(XMLReceiver output, String contentType, Long lastModified) throws IOException {
             openConnection();
+            if (replayCachedEntry(output))
+                return;
             readJSON(inputStream, output);
         }
 
         public void readBinary(ContentHandler output, String contentType, Long lastModified) throws IOException {
             openConnection();
+            if (replayCachedEntry(output))
+                return;
             output.setDocumentLocator(new URLLocator(config.getURL().toExternalForm()));
             BinaryTextSupport.readBinary(inputStream, output, contentType, lastModified, getConnectionStatusCode(), null, headersToPropagate);
         }
 
         public void readXML(PipelineContext pipelineContext, XMLReceiver xmlReceiver, URIProcessorOutputImpl.URIReferences uriReferences) throws IOException {
             openConnection();
+            if (replayCachedEntry(xmlReceiver))
+                return;
             checkStatusCode();
 
             final XMLParsing.ParserConfiguration parserConfiguration = new XMLParsing.ParserConfiguration(config.getParserConfiguration(), uriReferences);
@@ -1055,6 +1148,18 @@ public class URLGenerator extends ProcessorImpl {
             }
         }
 
+        // The cached document is the output of the generator for the same configuration, whatever the mode
+        private boolean replayCachedEntry(ContentHandler output) {
+            if (cachedEntry == null)
+                return false;
+            try {
+                cachedEntry.document().replay((XMLReceiver) output);
+            } catch (SAXException e) {
+                throw new OXFException(e);
+            }
+            return true;
+        }
+
         public boolean isFailureStatusCode() throws IOException {
             // NOTE: We accept -1 internally to indicate we don't have an actual status code
             final int statusCode = getConnectionStatusCode();
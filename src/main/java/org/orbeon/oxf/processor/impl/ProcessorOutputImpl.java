@@ -252,16 +252,55 @@ public abstract class ProcessorOutputImpl implements ProcessorOutput {
     private class TopLevelOutputFilter extends RuntimeOutputFilter {
         @Override
         public void read(PipelineContext pipelineContext, XMLReceiver xmlReceiver) {
-            // Read the current processor output
-            readImpl(pipelineContext, xmlReceiver);
+            final ProcessorStats stats = getProfilerStats(pipelineContext);
+            if (stats != null) {
+                final ProfilingXMLReceiver profilingXMLReceiver = new ProfilingXMLReceiver(xmlReceiver);
+                PipelineProfiler.enter();
+                try {
+                    readImpl(pipelineContext, profilingXMLReceiver);
+                } finally {
+                    PipelineProfiler.exitRead(stats, profilingXMLReceiver);
+                }
+            } else {
+                // Read the current processor output
+                readImpl(pipelineContext, xmlReceiver);
+            }
         }
 
         public OutputCacheKey getKey(PipelineContext pipelineContext) {
-            return getKeyImpl(pipelineContext);
+            final ProcessorStats stats = getProfilerStats(pipelineContext);
+            if (stats != null) {
+                PipelineProfiler.enter();
+                try {
+                    return getKeyImpl(pipelineContext);
+                } finally {
+                    PipelineProfiler.exitKey(stats);
+                }
+            } else {
+                return getKeyImpl(pipelineContext);
+            }
         }
 
         public Object getValidity(PipelineContext pipelineContext) {
-            return getValidityImpl(pipelineContext);
+            final ProcessorStats stats = getProfilerStats(pipelineContext);
+            if (stats != null) {
+                PipelineProfiler.enter();
+                try {
+                    return getValidityImpl(pipelineContext);
+                } finally {
+                    PipelineProfiler.exitValidity(stats);
+                }
+            } else {
+                return getValidityImpl(pipelineContext);
+            }
+        }
+
+        // Only outputs of actual processors are profiled, not those internal to pipelines
+        private ProcessorStats getProfilerStats(PipelineContext pipelineContext) {
+            if (! PipelineProfiler.isEnabled())
+                return null;
+            final Processor processor = getProcessor(pipelineContext);
+            return processor instanceof ProcessorImpl ? ((ProcessorImpl) processor).getProfilerStats() : null;
         }
     };
 
@@ -17,6 +17,7 @@ package org.orbeon.oxf.processor.pipeline;
 import org.orbeon.oxf.common.OXFException;
 import org.orbeon.oxf.processor.Processor;
 import org.orbeon.oxf.processor.ProcessorInput;
+import org.orbeon.oxf.processor.ProcessorOutput;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -38,6 +39,8 @@ public class PipelineConfig {
     private List<Processor> processors = new ArrayList<Processor>();
     // List of Processor objects: we have to call their start() method
     private List<Processor> processorsToStart = new ArrayList<Processor>();
+    // Outputs read ahead of time when the pipeline starts
+    private List<ProcessorOutput> prefetchedOutputs = new ArrayList<ProcessorOutput>();
 
     public void declareTopOutput(String name, PipelineProcessor.InternalTopOutput topOutput) {
         List<PipelineProcessor.InternalTopOutput> outputsForName = nameToTopOutputMap.get(name);
@@ -77,4 +80,12 @@ public class PipelineConfig {
     public List<Processor> getProcessorsToStart() {
         return processorsToStart;
     }
+
+    public void addPrefetchedOutput(ProcessorOutput output) {
+        prefetchedOutputs.add(output);
+    }
+
+    public List<ProcessorOutput> getPrefetchedOutputs() {
+        return prefetchedOutputs;
+    }
 }
@@ -0,0 +1,279 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.processor.pipeline;
+
+import org.apache.log4j.Logger;
+import org.orbeon.oxf.cache.OutputCacheKey;
+import org.orbeon.oxf.common.OXFException;
+import org.orbeon.oxf.externalcontext.AsyncRequest;
+import org.orbeon.oxf.externalcontext.ExternalContext;
+import org.orbeon.oxf.externalcontext.LocalExternalContext;
+import org.orbeon.oxf.externalcontext.ResponseAdapter;
+import org.orbeon.oxf.pipeline.api.PipelineContext;
+import org.orbeon.oxf.processor.ProcessorOutput;
+import org.orbeon.oxf.properties.Properties;
+import org.orbeon.oxf.util.LoggerFactory;
+import org.orbeon.oxf.xml.SAXStore;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads the outputs of independent pipeline statements ahead of time, in parallel with the rest of the pipeline.
+ *
+ * Each output is read in its own PipelineContext on a bounded thread pool, and fully buffered. Processors keep their
+ * state in the PipelineContext, so running them in another context is safe, as it is for concurrent requests. When
+ * the thread pool is busy, outputs are simply read by the pipeline when needed.
+ *
+ * Reads don't use the request directly, which is not thread-safe and might be recycled by the container once the
+ * request ends. They use a copy of the request taken before they start, and request attributes they set are copied
+ * back to the request when the pipeline uses the output. Reads still running when the pipeline context ends are
+ * interrupted and waited for.
+ *
+ * Reads still queued when the pipeline needs the output are cancelled, and the pipeline reads the output itself, so
+ * that it never waits for reads queued behind the reads of other pipelines.
+ */
+public class PipelinePrefetch {
+
+    public static final String ENABLED_PROPERTY = "oxf.pipeline.parallel.enabled";
+    public static final String THREADS_PROPERTY = "oxf.pipeline.parallel.threads";
+    public static final String QUEUE_SIZE_PROPERTY = "oxf.pipeline.parallel.queue-size";
+
+    private static final int THREADS_DEFAULT = 8;
+    private static final int QUEUE_SIZE_DEFAULT = 64;
+
+    private static final Logger logger = LoggerFactory.createLogger(PipelinePrefetch.class);
+
+    private static ExecutorService executor;
+
+    public static boolean isEnabled() {
+        return Properties.instance().getPropertySet().getBoolean(ENABLED_PROPERTY, false);
+    }
+
+    /**
+     * Document, key and validity of an output read ahead of time.
+     */
+    public static class Result {
+        public final SAXStore document;
+        public final OutputCacheKey key;
+        public final Object validity;
+        public final Map<String, Object> requestAttributes;
+
+        public Result(SAXStore document, OutputCacheKey key, Object validity, Map<String, Object> requestAttributes) {
+            this.document = document;
+            this.key = key;
+            this.validity = validity;
+            this.requestAttributes = requestAttributes;
+        }
+
+        /**
+         * Set the request attributes set while reading the output, as if the output had been read with the request.
+         */
+        public void copyRequestAttributes(PipelineContext pipelineContext) {
+            final ExternalContext externalContext = (ExternalContext) pipelineContext.getAttribute(PipelineContext.EXTERNAL_CONTEXT);
+            if (externalContext != null && externalContext.getRequest() != null && ! requestAttributes.isEmpty())
+                externalContext.getRequest().getAttributesMap().putAll(requestAttributes);
+        }
+    }
+
+    /**
+     * Read task which can be waited for after it is cancelled, and which the pipeline can take over before it starts.
+     */
+    static class ReadTask extends FutureTask<Result> {
+
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private volatile boolean started;
+
+        public ReadTask(Callable<Result> callable) {
+            super(callable);
+        }
+
+        @Override
+        public void run() {
+            // Tasks taken over by the pipeline return right away when the pool runs them
+            if (claimed.compareAndSet(false, true)) {
+                started = true;
+                try {
+                    super.run();
+                } finally {
+                    done.countDown();
+                }
+            }
+        }
+
+        /**
+         * Cancel the task if it hasn't started, and return whether it was cancelled.
+         */
+        public boolean cancelIfNotStarted() {
+            if (claimed.compareAndSet(false, true)) {
+                cancel(false);
+                return true;
+            } else {
+                return false;
+            }
+        }
+
+        public void awaitIfStarted() throws InterruptedException {
+            // A task cancelled before it starts returns right away when the pool runs it
+            if (started)
+                done.await();
+        }
+    }
+
+    /**
+     * Start reading the given outputs. Outputs which can't be read ahead of time are not in the returned map.
+     */
+    public static Map<ProcessorOutput, Future<Result>> start(PipelineContext pipelineContext, List<ProcessorOutput> outputs) {
+        final Map<ProcessorOutput, Future<Result>> futures = new HashMap<ProcessorOutput, Future<Result>>();
+        // Processors such as the URL generator need the request to forward headers
+        final ExternalContext externalContext = (ExternalContext) pipelineContext.getAttribute(PipelineContext.EXTERNAL_CONTEXT);
+        for (final ProcessorOutput output : outputs) {
+            // Each read gets its own copy, as reads set request attributes
+            final ExternalContext externalContextCopy = copyExternalContext(externalContext);
+            final ReadTask task = new ReadTask(new Callable<Result>() {
+                public Result call() {
+                    return read(output, externalContextCopy);
+                }
+            });
+            try {
+                getExecutor().execute(task);
+                futures.put(output, task);
+            } catch (RejectedExecutionException e) {
+                if (logger.isDebugEnabled())
+                    logger.debug("Thread pool busy, not reading output ahead of time: " + output.getId());
+            }
+        }
+        return futures;
+    }
+
+    /**
+     * Wait for an output read ahead of time, and throw the error which happened while reading it, if any. Return null
+     * if the read hasn't started yet, in which case it is cancelled, and the caller must read the output itself.
+     */
+    public static Result get(Future<Result> future) {
+        if (((ReadTask) future).cancelIfNotStarted()) {
+            if (logger.isDebugEnabled())
+                logger.debug("Output not read ahead of time yet, reading it directly");
+            return null;
+        }
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            else if (cause instanceof Error)
+                throw (Error) cause;
+            else
+                throw new OXFException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OXFException(e);
+        }
+    }
+
+    /**
+     * Cancel outputs not read yet, when they are not needed anymore. Reads in progress are interrupted, and this waits
+     * for them to end, so that no read outlives the pipeline context.
+     */
+    public static void cancel(Map<ProcessorOutput, Future<Result>> futures) {
+        for (final Future<Result> future : futures.values())
+            future.cancel(true);
+        try {
+            for (final Future<Result> future : futures.values())
+                ((ReadTask) future).awaitIfStarted();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Copy of the external context with a copy of the request, taken on the thread of the request.
+     */
+    static ExternalContext copyExternalContext(ExternalContext externalContext) {
+        if (externalContext == null || externalContext.getRequest() == null)
+            return null;
+        else
+            return new LocalExternalContext(
+                externalContext.getWebAppContext(),
+                new AsyncRequest(externalContext.getRequest(), false),
+                new ResponseAdapter()
+            );
+    }
+
+    private static Result read(ProcessorOutput output, ExternalContext externalContext) {
+        final PipelineContext pipelineContext = new PipelineContext();
+        boolean success = false;
+        try {
+            final Map<String, Object> initialAttributes;
+            if (externalContext != null) {
+                pipelineContext.setAttribute(PipelineContext.EXTERNAL_CONTEXT, externalContext);
+                initialAttributes = new HashMap<String, Object>(externalContext.getRequest().getAttributesMap());
+            } else {
+                initialAttributes = null;
+            }
+
+            output.getProcessor(pipelineContext).reset(pipelineContext);
+
+            final OutputCacheKey key = output.getKey(pipelineContext);
+            final Object validity = output.getValidity(pipelineContext);
+            final SAXStore document = new SAXStore();
+            output.read(pipelineContext, document);
+
+            // Request attributes set by the read
+            final Map<String, Object> requestAttributes = new HashMap<String, Object>();
+            if (externalContext != null)
+                for (final Map.Entry<String, Object> entry : externalContext.getRequest().getAttributesMap().entrySet())
+                    if (entry.getValue() != initialAttributes.get(entry.getKey()))
+                        requestAttributes.put(entry.getKey(), entry.getValue());
+
+            success = true;
+            return new Result(document, key, validity, requestAttributes);
+        } finally {
+            pipelineContext.destroy(success);
+        }
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            final int threads = Math.max(1, Properties.instance().getPropertySet().getInteger(THREADS_PROPERTY, THREADS_DEFAULT));
+            final int queueSize = Properties.instance().getPropertySet().getInteger(QUEUE_SIZE_PROPERTY, QUEUE_SIZE_DEFAULT);
+            final AtomicInteger threadCount = new AtomicInteger();
+
+            final ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                threads,
+                threads,
+                60L,
+                TimeUnit.SECONDS,
+                queueSize > 0 ? new LinkedBlockingQueue<Runnable>(queueSize) : new SynchronousQueue<Runnable>(),
+                new ThreadFactory() {
+                    public Thread newThread(Runnable runnable) {
+                        final Thread thread = new Thread(runnable, "orbeon-pipeline-" + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+            );
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+        }
+        return executor;
+    }
+}
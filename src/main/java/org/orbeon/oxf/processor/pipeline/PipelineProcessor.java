@@ -22,6 +22,7 @@ import org.orbeon.oxf.pipeline.api.PipelineContext;
 import org.orbeon.oxf.xml.XMLReceiver;
 import org.orbeon.oxf.processor.*;
 import org.orbeon.oxf.processor.generator.DOMGenerator;
+import org.orbeon.oxf.processor.generator.URLGenerator;
 import org.orbeon.oxf.processor.impl.ProcessorInputImpl;
 import org.orbeon.oxf.processor.pipeline.ast.*;
 import org.orbeon.oxf.processor.pipeline.choose.AbstractChooseProcessor;
@@ -34,8 +35,10 @@ import org.orbeon.oxf.xml.SchemaRepository;
 import org.orbeon.oxf.xml.dom4j.Dom4jUtils;
 import org.orbeon.oxf.xml.dom4j.ExtendedLocationData;
 import org.orbeon.oxf.xml.dom4j.LocationData;
+import org.xml.sax.SAXException;
 
 import java.util.*;
+import java.util.concurrent.Future;
 
 /**
  * <b>Lifecycle</b>
@@ -88,6 +91,8 @@ public class PipelineProcessor extends ProcessorImpl {
                             "' is not connected to a processor output in pipeline",
                             PipelineProcessor.this.getLocationData());
 
+                startPrefetches(pipelineContext, (State) getState(pipelineContext));
+
                 executeChildren(pipelineContext, new Runnable() {
                     public void run() {
                         readInputAsSAX(pipelineContext, bottomInput, xmlReceiver);
@@ -161,6 +166,7 @@ public class PipelineProcessor extends ProcessorImpl {
         // Create new configuration object
         final PipelineConfig config = new PipelineConfig();
         final PipelineBlock block = new PipelineBlock();
+        final boolean prefetchEnabled = PipelinePrefetch.isEnabled();
 
         // Create socket info for each param
         for (Iterator i = astPipeline.getParams().iterator(); i.hasNext();) {
@@ -214,6 +220,7 @@ public class PipelineProcessor extends ProcessorImpl {
                         new String[] { "name", processorNameOrURI }));
 
                 // Process outputs
+                final boolean prefetch = prefetchEnabled && isPrefetchable(processorCall, processor);
                 for (Iterator j = processorCall.getOutputs().iterator(); j.hasNext();) {
                     foundOutput = true;
                     ASTOutput output = (ASTOutput) j.next();
@@ -226,12 +233,18 @@ public class PipelineProcessor extends ProcessorImpl {
                         throw new OXFException("Either one of id or ref must be specified on output " + nm );
 
                     ProcessorOutput pout = processor.createOutput( nm );
+                    setDebugAndSchema(pout, output);
+                    if (prefetch) {
+                        // Read by the pipeline from the document read ahead of time
+                        final PrefetchedOutput prefetchedOutput = new PrefetchedOutput(pout);
+                        config.addPrefetchedOutput(prefetchedOutput);
+                        pout = prefetchedOutput;
+                    }
                     if ( id != null)
                         block.declareOutput(output.getNode(), id, pout);
                     if ( ref != null)
                         block.connectProcessorToBottomInput
                                 (output.getNode(), nm, ref, pout);
-                    setDebugAndSchema(pout, output);
                 }
 
                 // Make sure at least one of the outputs is connected
@@ -423,6 +436,30 @@ public class PipelineProcessor extends ProcessorImpl {
         return config;
     }
 
+    /**
+     * Whether the output of a processor call can be read ahead of time, in parallel with the rest of the pipeline.
+     *
+     * This is the case for URL generators which don't depend on other statements or on pipeline inputs, so that
+     * independent I/O, like several documents loaded to be aggregated, happens concurrently. Other processors are
+     * not considered, as they might have side effects or use the request.
+     */
+    private static boolean isPrefetchable(ASTProcessorCall processorCall, Processor processor) {
+        if (! (processor instanceof URLGenerator) || processorCall.getOutputs().size() != 1)
+            return false;
+
+        final ASTOutput output = (ASTOutput) processorCall.getOutputs().get(0);
+        if (output.getId() == null || output.getRef() != null)
+            return false;
+
+        // Only inline documents and URLs
+        for (Iterator i = processorCall.getInputs().iterator(); i.hasNext();) {
+            final ASTInput input = (ASTInput) i.next();
+            if (input.getTransform() != null || (input.getHref() != null && ! (input.getHref() instanceof ASTHrefURL)))
+                return false;
+        }
+        return true;
+    }
+
     private PipelineConfig readPipelineConfig(PipelineContext context, ProcessorInput configInput) {
         try {
             // Read config input using PipelineReader
@@ -569,6 +606,58 @@ public class PipelineProcessor extends ProcessorImpl {
         }
     }
 
+    /**
+     * Output of a processor read ahead of time when the pipeline is read. If that was not possible, the processor
+     * output is read directly. The key and validity are those of the processor output, so that checking them doesn't
+     * wait for the read.
+     */
+    public static class PrefetchedOutput extends org.orbeon.oxf.processor.impl.ProcessorOutputImpl {
+
+        private final ProcessorOutput output;
+
+        public PrefetchedOutput(ProcessorOutput output) {
+            // Don't pass a processor instance to the constructor
+            super(PipelineProcessor.class, output.getName());
+            this.output = output;
+            setId(output.getId());
+            setLocationData(output.getLocationData());
+        }
+
+        public ProcessorOutput getOutput() {
+            return output;
+        }
+
+        public void readImpl(PipelineContext context, XMLReceiver xmlReceiver) {
+            final PipelinePrefetch.Result result = getResult(context);
+            if (result != null) {
+                result.copyRequestAttributes(context);
+                try {
+                    result.document.replay(xmlReceiver);
+                } catch (SAXException e) {
+                    throw new OXFException(e);
+                }
+            } else {
+                output.read(context, xmlReceiver);
+            }
+        }
+
+        @Override
+        public OutputCacheKey getKeyImpl(PipelineContext pipelineContext) {
+            return output.getKey(pipelineContext);
+        }
+
+        @Override
+        public Object getValidityImpl(PipelineContext pipelineContext) {
+            return output.getValidity(pipelineContext);
+        }
+
+        private PipelinePrefetch.Result getResult(PipelineContext pipelineContext) {
+            final State state = (State) getParentState(pipelineContext);
+            final Future<PipelinePrefetch.Result> future = state.prefetches != null ? state.prefetches.get(this) : null;
+            return future != null ? PipelinePrefetch.get(future) : null;
+        }
+    }
+
     /**
      * "Artificial" input sitting at the "bottom" of the pipeline.
      */
@@ -608,6 +697,12 @@ public class PipelineProcessor extends ProcessorImpl {
         state.nameToBottomInputMap = config.getNameToInputMap();
         state.started = true;
 
+        // Independent outputs are read in parallel once the pipeline is read, and not when only its key or validity
+        // are needed
+        state.prefetchedOutputs = config.getPrefetchedOutputs();
+        if (! config.getProcessorsToStart().isEmpty())
+            startPrefetches(context, state);
+
         // Run the processors that are not connected to any pipeline output
         for (Iterator i = config.getProcessorsToStart().iterator(); i.hasNext();) {
             final Processor processor = (Processor) i.next();
@@ -623,6 +718,30 @@ public class PipelineProcessor extends ProcessorImpl {
         }
     }
 
+    private void startPrefetches(PipelineContext context, State state) {
+        if (state.prefetches == null && state.prefetchedOutputs != null && ! state.prefetchedOutputs.isEmpty()) {
+            final List<ProcessorOutput> outputs = new ArrayList<ProcessorOutput>();
+            for (final ProcessorOutput prefetchedOutput : state.prefetchedOutputs)
+                outputs.add(((PrefetchedOutput) prefetchedOutput).getOutput());
+
+            final Map<ProcessorOutput, Future<PipelinePrefetch.Result>> futures = PipelinePrefetch.start(context, outputs);
+            state.prefetches = new HashMap<ProcessorOutput, Future<PipelinePrefetch.Result>>();
+            for (final ProcessorOutput prefetchedOutput : state.prefetchedOutputs) {
+                final Future<PipelinePrefetch.Result> future = futures.get(((PrefetchedOutput) prefetchedOutput).getOutput());
+                if (future != null)
+                    state.prefetches.put(prefetchedOutput, future);
+            }
+
+            // Don't keep reading outputs which are not needed
+            final State startedState = state;
+            context.addContextListener(new PipelineContext.ContextListenerAdapter() {
+                public void contextDestroyed(boolean success) {
+                    PipelinePrefetch.cancel(startedState.prefetches);
+                }
+            });
+        }
+    }
+
     private void resetChildProcessors(final PipelineContext context) {
         if (hasState(context)) {
             final State state = (State) getState(context);
@@ -640,6 +759,11 @@ public class PipelineProcessor extends ProcessorImpl {
 
     @Override
     public void reset(final PipelineContext context) {
+        if (hasState(context)) {
+            final State state = (State) getState(context);
+            if (state.prefetches != null)
+                PipelinePrefetch.cancel(state.prefetches);
+        }
         resetChildProcessors(context);
         setState(context, new State());
     }
@@ -649,6 +773,8 @@ public class PipelineProcessor extends ProcessorImpl {
         public boolean started = false;
         public Map<String, List<ProcessorInput>> pipelineInputs = new HashMap<String, List<ProcessorInput>>();
         public List<Processor> childProcessors;
+        public List<ProcessorOutput> prefetchedOutputs;
+        public Map<ProcessorOutput, Future<PipelinePrefetch.Result>> prefetches;
     }
 
     private void addSelfAsParent(PipelineContext pipelineContext) {
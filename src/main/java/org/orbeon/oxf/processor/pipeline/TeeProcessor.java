@@ -13,24 +13,55 @@
  */
 package org.orbeon.oxf.processor.pipeline;
 
+import org.apache.commons.fileupload.FileItem;
 import org.apache.log4j.Logger;
 import org.orbeon.oxf.cache.OutputCacheKey;
 import org.orbeon.oxf.common.OXFException;
 import org.orbeon.oxf.common.ValidationException;
 import org.orbeon.oxf.pipeline.api.PipelineContext;
+import org.orbeon.oxf.properties.Properties;
 import org.orbeon.oxf.xml.XMLReceiver;
 import org.orbeon.oxf.processor.*;
 import org.orbeon.oxf.util.LoggerFactory;
+import org.orbeon.oxf.util.NetUtils;
 import org.orbeon.oxf.xml.SAXStore;
 import org.orbeon.oxf.xml.dom4j.LocationData;
 import org.xml.sax.SAXException;
 
+import java.io.*;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * This internal processor handles the tee-ing functionality of XPL, i.e. sending an XML infoset to multiple readers.
+ *
+ * The first output read streams the input to its reader while recording it, and the other outputs replay the
+ * recording. The size of the recordings kept in memory is accounted for across all tees. Above the maximum set with
+ * the oxf.pipeline.tee.max-buffer-mb property, recordings are written to a temporary file until they are replayed.
  */
 public class TeeProcessor extends ProcessorImpl {
 
     private static final Logger logger = LoggerFactory.createLogger(TeeProcessor.class);
+
+    public static final String MAX_BUFFER_PROPERTY = "oxf.pipeline.tee.max-buffer-mb";
+    private static final int MAX_BUFFER_DEFAULT = 0;
+
+    // Accounting of the recordings kept in memory by all tees
+    private static final AtomicLong bufferedBytes = new AtomicLong();
+    private static final AtomicLong peakBufferedBytes = new AtomicLong();
+    private static final AtomicLong spillCount = new AtomicLong();
+
+    public static long getBufferedBytes() {
+        return bufferedBytes.get();
+    }
+
+    public static long getPeakBufferedBytes() {
+        return peakBufferedBytes.get();
+    }
+
+    public static long getSpillCount() {
+        return spillCount.get();
+    }
+
     private Exception creationException;
     private Exception resetException;
     private ProcessorKey resetProcessorKey;
@@ -74,7 +105,7 @@ public class TeeProcessor extends ProcessorImpl {
         public void readImpl(PipelineContext context, XMLReceiver xmlReceiver) {
             try {
                 final State state = (State) getState(context);
-                if (state.store == null) {
+                if (state.store == null && state.spilledStore == null) {
                     // Tee hasn't been read yet
 
                     if (state.stateWasCleared) {
@@ -84,10 +115,17 @@ public class TeeProcessor extends ProcessorImpl {
 
                     // Create SAXStore and read input through it
                     final ProcessorInput input = getInputByName(INPUT_DATA);
-                    state.store = new SAXStore(xmlReceiver);
-                    readInputAsSAX(context, input, state.store);
-                } else {
+                    final SAXStore store = new SAXStore(xmlReceiver);
+                    state.store = store;
+                    readInputAsSAX(context, input, store);
+
+                    // Don't keep a reference to the first reader
+                    store.setXMLReceiver(null);
+                    bufferStore(context, state);
+                } else if (state.store != null) {
                     state.store.replay(xmlReceiver);
+                } else {
+                    replaySpilledStore(state.spilledStore, state.bufferedSize, xmlReceiver);
                 }
 
                 // If this output can be read only once, increase read count
@@ -116,16 +154,60 @@ public class TeeProcessor extends ProcessorImpl {
 
         private void freeSAXStoreIfNeeded(State state) {
             if (state.readCount == getOutputCount()) {
-                final SAXStore freedStore = state.store;
-                state.store = null;
+                final long saxStoreSize = state.bufferedSize;
+                final boolean wasSpilled = state.spilledStore != null;
+                releaseStore(state);
                 state.stateWasCleared = true;
 
                 final ProcessorOutput output = getInputByName(INPUT_DATA).getOutput();
                 if (logger.isDebugEnabled()) {
-                    final long saxStoreSize = freedStore.getApproximateSize();
-                    logger.debug("Freed SAXStore for output id: " + output.getName() + "; approximate size: " + saxStoreSize + " bytes");
+                    logger.debug("Freed " + (wasSpilled ? "spilled " : "") + "SAXStore for output id: " + output.getName() + "; approximate size: " + saxStoreSize + " bytes");
+                }
+            }
+        }
+
+        // Account for the recording once it is complete, and write it to disk if there is not enough room for it
+        private void bufferStore(PipelineContext context, final State state) {
+            if (! isMultipleReads && state.readCount + 1 == getOutputCount()) {
+                // This is the only read: the recording is freed right away
+                state.bufferedSize = 0;
+                return;
+            }
+
+            final long size = state.store.getApproximateSize();
+            final long maxBufferBytes = Properties.instance().getPropertySet().getInteger(MAX_BUFFER_PROPERTY, MAX_BUFFER_DEFAULT) * 1024L * 1024L;
+
+            if (maxBufferBytes > 0 && bufferedBytes.get() + size > maxBufferBytes) {
+                state.spilledStore = spillStore(state.store);
+                state.store = null;
+                state.bufferedSize = size;
+                spillCount.incrementAndGet();
+                if (logger.isDebugEnabled())
+                    logger.debug("Spilled SAXStore to disk; approximate size: " + size + " bytes");
+            } else {
+                state.bufferedSize = size;
+                state.isAccounted = true;
+                addBufferedBytes(size);
+            }
+
+            // Make sure the accounting is correct even if some outputs are never read
+            context.addContextListener(new PipelineContext.ContextListenerAdapter() {
+                public void contextDestroyed(boolean success) {
+                    releaseStore(state);
                 }
+            });
+        }
+
+        private void releaseStore(State state) {
+            if (state.isAccounted) {
+                bufferedBytes.addAndGet(- state.bufferedSize);
+                state.isAccounted = false;
             }
+            if (state.spilledStore != null)
+                state.spilledStore.delete();
+
+            state.store = null;
+            state.spilledStore = null;
         }
 
         @Override
@@ -160,6 +242,50 @@ public class TeeProcessor extends ProcessorImpl {
         }
     }
 
+    private static void addBufferedBytes(long size) {
+        final long newBufferedBytes = bufferedBytes.addAndGet(size);
+        long peak;
+        while (newBufferedBytes > (peak = peakBufferedBytes.get()) && ! peakBufferedBytes.compareAndSet(peak, newBufferedBytes));
+    }
+
+    static FileItem spillStore(SAXStore store) {
+        // The file is also deleted at the end of the request in case it is not freed before
+        final FileItem fileItem = NetUtils.prepareFileItem(NetUtils.REQUEST_SCOPE, logger);
+        try {
+            final ObjectOutputStream os = new ObjectOutputStream(new BufferedOutputStream(fileItem.getOutputStream()));
+            try {
+                store.writeExternal(os);
+            } finally {
+                os.close();
+            }
+        } catch (IOException e) {
+            throw new OXFException(e);
+        }
+        return fileItem;
+    }
+
+    // The recording is read back entirely before being replayed, so account for it while it is in memory
+    static void replaySpilledStore(FileItem fileItem, long size, XMLReceiver xmlReceiver) throws SAXException {
+        final SAXStore store;
+        try {
+            final ObjectInputStream is = new ObjectInputStream(new BufferedInputStream(fileItem.getInputStream()));
+            try {
+                store = new SAXStore(is);
+            } finally {
+                is.close();
+            }
+        } catch (IOException e) {
+            throw new OXFException(e);
+        }
+
+        addBufferedBytes(size);
+        try {
+            store.replay(xmlReceiver);
+        } finally {
+            bufferedBytes.addAndGet(- size);
+        }
+    }
+
     @Override
     public void reset(PipelineContext context) {
         if (logger.isDebugEnabled()) {
@@ -171,6 +297,9 @@ public class TeeProcessor extends ProcessorImpl {
 
     private static class State {
         public SAXStore store;
+        public FileItem spilledStore;
+        public long bufferedSize;
+        public boolean isAccounted;
         public int readCount;
         public OutputCacheKey outputCacheKey;
         public Object validity;
@@ -17,6 +17,7 @@ import org.orbeon.errorified.Exceptions;
 import org.apache.log4j.Logger;
 import org.orbeon.dom.Document;
 import org.orbeon.dom.Node;
+import org.orbeon.oxf.cache.Cache;
 import org.orbeon.oxf.cache.CacheKey;
 import org.orbeon.oxf.cache.InternalCacheKey;
 import org.orbeon.oxf.cache.ObjectCache;
@@ -31,6 +32,7 @@ import org.orbeon.oxf.processor.generator.URLGenerator;
 import org.orbeon.oxf.processor.impl.CacheableTransformerOutputImpl;
 import org.orbeon.oxf.processor.transformer.TransformerURIResolver;
 import org.orbeon.oxf.processor.transformer.URIResolverListener;
+import org.orbeon.oxf.properties.Properties;
 import org.orbeon.oxf.properties.PropertySet;
 import org.orbeon.oxf.properties.PropertyStore;
 import org.orbeon.oxf.resources.URLFactory;
@@ -93,6 +95,15 @@ public abstract class XSLTTransformer extends ProcessorImpl {
     // This input determines attributes to set on the TransformerFactory
     private static final String INPUT_ATTRIBUTES = "attributes";
     public static final String XSLT_STYLESHEET_URI_LISTENER = "xslt-stylesheet-uri-listener"; // used by XSLTTransformer
+    // When this pipeline context attribute is set, the stylesheet is compiled and pinned but not run (see XSLTWarmUp)
+    public static final String XSLT_COMPILE_ONLY = "xslt-compile-only";
+
+    // Compiled stylesheets which are expensive to create are kept in a separate cache, so that they are not evicted
+    // by the many small entries of the main cache
+    private static final String PINNED_CACHE_NAME = "cache.xslt.pinned";
+    private static final int PINNED_CACHE_DEFAULT_SIZE = 100;
+    private static final String PINNED_COMPILE_TIME_PROPERTY = "oxf.xslt.pinned.compile-time";
+    private static final int PINNED_COMPILE_TIME_DEFAULT = 1000;
 
     public XSLTTransformer(String schemaURI) {
         addInputInfo(new ProcessorInputOutputInfo(INPUT_CONFIG, schemaURI));
@@ -124,8 +135,7 @@ public abstract class XSLTTransformer extends ProcessorImpl {
                         // FIXME: this won't depend on the transformer input.
                         final KeyValidity stylesheetKeyValidity = createStyleSheetKeyValidity(pipelineContext, configKeyValidity, uriReferences);
                         if (stylesheetKeyValidity != null)
-                            templatesInfo = (TemplatesInfo) ObjectCache.instance()
-                                    .findValid(stylesheetKeyValidity.key, stylesheetKeyValidity.validity);
+                            templatesInfo = (TemplatesInfo) findValid(stylesheetKeyValidity.key, stylesheetKeyValidity.validity);
                     }
 
                     // Get transformer attributes if any
@@ -168,6 +178,10 @@ public abstract class XSLTTransformer extends ProcessorImpl {
                         templatesInfo = createTransformer(pipelineContext, transformerClass, attributes);
                     }
 
+                    // Warm-up only needs the compiled stylesheet in cache
+                    if (pipelineContext.getAttribute(XSLT_COMPILE_ONLY) != null)
+                        return;
+
                     // At this point, we have a templatesInfo, so run the transformation
 
                     // Find which receiver to use
@@ -577,7 +591,7 @@ public abstract class XSLTTransformer extends ProcessorImpl {
             private URIReferences getURIReferences(PipelineContext context, KeyValidity configKeyValidity) {
                 if (configKeyValidity == null)
                     return null;
-                return (URIReferences) ObjectCache.instance().findValid(configKeyValidity.key, configKeyValidity.validity);
+                return (URIReferences) findValid(configKeyValidity.key, configKeyValidity.validity);
             }
 
             private KeyValidity createStyleSheetKeyValidity(PipelineContext context, KeyValidity configKeyValidity, URIReferences uriReferences) {
@@ -627,6 +641,7 @@ public abstract class XSLTTransformer extends ProcessorImpl {
                 try {
                     // Create transformer
                     final TemplatesInfo templatesInfo = new TemplatesInfo();
+                    final long compileStartTime = System.currentTimeMillis();
                     final List<StylesheetForwardingXMLReceiver> xsltXMLReceivers = new ArrayList<StylesheetForwardingXMLReceiver>();
                     {
                         // Create SAXSource adding our forwarding receiver
@@ -658,6 +673,18 @@ public abstract class XSLTTransformer extends ProcessorImpl {
                         templatesInfo.systemId = topStylesheetXMLReceiver.getSystemId();
                     }
 
+                    // Stylesheets compiled during warm-up, or which take long to compile, go to the pinned cache
+                    final long compileTime = System.currentTimeMillis() - compileStartTime;
+                    final Cache cache;
+                    if (pipelineContext.getAttribute(XSLT_COMPILE_ONLY) != null
+                            || compileTime >= Properties.instance().getPropertySet().getInteger(PINNED_COMPILE_TIME_PROPERTY, PINNED_COMPILE_TIME_DEFAULT)) {
+                        cache = pinnedCache();
+                        if (logger.isDebugEnabled())
+                            logger.debug("Pinning stylesheet " + templatesInfo.systemId + " compiled in " + compileTime + " ms");
+                    } else {
+                        cache = ObjectCache.instance();
+                    }
+
                     // Update cache
                     {
                         // Create uriReferences
@@ -674,12 +701,12 @@ public abstract class XSLTTransformer extends ProcessorImpl {
                         // Put in cache: configKey -> uriReferences
                         final KeyValidity configKeyValidity = getInputKeyValidity(pipelineContext, INPUT_CONFIG);
                         if (configKeyValidity != null)
-                            ObjectCache.instance().add(configKeyValidity.key, configKeyValidity.validity, uriReferences);
+                            cache.add(configKeyValidity.key, configKeyValidity.validity, uriReferences);
 
                         // Put in cache: (configKey, uriReferences.stylesheetReferences) -> transformer
                         final KeyValidity stylesheetKeyValidity = createStyleSheetKeyValidity(pipelineContext, configKeyValidity, uriReferences);
                         if (stylesheetKeyValidity != null)
-                            ObjectCache.instance().add(stylesheetKeyValidity.key, stylesheetKeyValidity.validity, templatesInfo);
+                            cache.add(stylesheetKeyValidity.key, stylesheetKeyValidity.validity, templatesInfo);
                     }
 
                     return templatesInfo;
@@ -732,6 +759,16 @@ public abstract class XSLTTransformer extends ProcessorImpl {
         return output;
     }
 
+    private static Cache pinnedCache() {
+        return ObjectCache.instance(PINNED_CACHE_NAME, PINNED_CACHE_DEFAULT_SIZE);
+    }
+
+    // Look in the pinned cache first, then in the main cache
+    private static Object findValid(CacheKey key, Object validity) {
+        final Object pinned = pinnedCache().findValid(key, validity);
+        return pinned != null ? pinned : ObjectCache.instance().findValid(key, validity);
+    }
+
     private StringBuilderWriter createErrorStringBuilderWriter(TransformerHandler transformerHandler) throws Exception {
         final String transformerClassName = transformerHandler.getTransformer().getClass().getName();
 
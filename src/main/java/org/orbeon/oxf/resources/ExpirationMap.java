@@ -13,24 +13,28 @@
  */
 package org.orbeon.oxf.resources;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A map where the value expire after the interval given at construction time.
+ *
+ * The map can be used concurrently without locking.
  */
 public class ExpirationMap {
 
+    public static final long NEVER_EXPIRE = -1;
+
     private long expirationInterval;
-    private Map store = new HashMap();
+    private Map<String, MapEntry> store = new ConcurrentHashMap<String, MapEntry>();
 
     public ExpirationMap(long expirationInterval) {
         this.expirationInterval = expirationInterval;
     }
 
     public Object  get(long currentTimeMillis, String key) {
-        MapEntry entry = (MapEntry) store.get(key);
-        if (entry == null || (entry.lastAccess + expirationInterval) < currentTimeMillis) {
+        MapEntry entry = store.get(key);
+        if (entry == null || (expirationInterval != NEVER_EXPIRE && (entry.lastAccess + expirationInterval) < currentTimeMillis)) {
             return null;
         } else {
             entry.lastAccess = currentTimeMillis;
@@ -39,17 +43,17 @@ public class ExpirationMap {
     }
 
     public void put(long currentTimeMillis, String key, Object value) {
-        MapEntry entry = (MapEntry) store.get(key);
-        if (entry == null) {
-            entry = new MapEntry();
-            store.put(key, entry);
-        }
-        entry.lastAccess = currentTimeMillis;
-        entry.value = value;
+        // Replace the entry so that readers never see a new access time with an old value
+        store.put(key, new MapEntry(currentTimeMillis, value));
     }
 
     private static class MapEntry {
-        public long lastAccess;
-        public Object value;
+        public volatile long lastAccess;
+        public final Object value;
+
+        MapEntry(long lastAccess, Object value) {
+            this.lastAccess = lastAccess;
+            this.value = value;
+        }
     }
 }
@@ -18,6 +18,7 @@ import java.util.Map;
 public class FilesystemResourceManagerFactory implements ResourceManagerFactory {
 
     public static final String SANDBOX_DIRECTORY_PROPERTY = "oxf.resources.filesystem.sandbox-directory";
+    public static final String WATCH_PROPERTY = "oxf.resources.filesystem.watch";
 
     private Map props;
 
@@ -31,6 +31,7 @@ public class FilesystemResourceManagerImpl extends ResourceManagerBase {
 
     private boolean hasSandbox;
     protected File rootDirectory;
+    private FileChangeWatcher watcher;
 
     public FilesystemResourceManagerImpl(Map props) throws OXFException {
         super(props);
@@ -46,6 +47,16 @@ public class FilesystemResourceManagerImpl extends ResourceManagerBase {
 
             hasSandbox = true;
         }
+
+        // Optionally watch for changes instead of checking files periodically
+        if ("true".equals(props.get(FilesystemResourceManagerFactory.WATCH_PROPERTY))
+                && ! "true".equals(props.get(ResourceManagerBase.FROZEN_KEY))) {
+            try {
+                watcher = new FileChangeWatcher(hasSandbox ? rootDirectory.getName() : "filesystem");
+            } catch (Exception e) {
+                logger.warn("cannot watch filesystem changes, checking files periodically instead", e);
+            }
+        }
     }
 
     /**
@@ -85,6 +96,10 @@ public class FilesystemResourceManagerImpl extends ResourceManagerBase {
         }
     }
 
+    protected Long watchedLastModified(String key) {
+        return watcher != null ? watcher.lastModified(getFile(key)) : null;
+    }
+
     /**
      * Returns the length of the file denoted by this abstract pathname.
      * @return The length, in bytes, of the file denoted by this abstract pathname, or 0L if the file does not exist
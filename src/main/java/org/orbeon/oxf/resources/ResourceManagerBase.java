@@ -39,7 +39,11 @@ public abstract class ResourceManagerBase implements ResourceManager {
     private static final String MIN_RELOAD_INTERVAL_KEY = "oxf.resources.common.min-reload-interval";
     private static final long DEFAULT_MIN_RELOAD_INTERVAL = 2 * 1000;
 
+    // When true, resources are assumed not to change after deployment, and are stat'ed only once
+    public static final String FROZEN_KEY = "oxf.resources.common.frozen";
+
     private ExpirationMap lastModifiedMap;
+    private boolean frozen;
 
     /**
      * Initialisation. Should be called only by sub-classes
@@ -54,7 +58,8 @@ public abstract class ResourceManagerBase implements ResourceManager {
                 throw new OXFException("Value for property '" + MIN_RELOAD_INTERVAL_KEY + "' must be a non-negative integer.");
             minReloadInterval = longValue;
         }
-        lastModifiedMap = new ExpirationMap(minReloadInterval);
+        frozen = "true".equals(props.get(FROZEN_KEY));
+        lastModifiedMap = new ExpirationMap(frozen ? ExpirationMap.NEVER_EXPIRE : minReloadInterval);
     }
 
     public Node getContentAsDOM(String key) {
@@ -122,8 +127,20 @@ public abstract class ResourceManagerBase implements ResourceManager {
         return transformer;
     }
 
-    final synchronized public long lastModified(String key, boolean doNotThrowResourceNotFound) {
+    final public long lastModified(String key, boolean doNotThrowResourceNotFound) {
+
+        // Use information kept up to date by the implementation if available
+        if (! frozen) {
+            final Long watched = watchedLastModified(key);
+            if (watched != null) {
+                if (watched == -1 && ! doNotThrowResourceNotFound)
+                    throw new ResourceNotFoundException(key);
+                return watched;
+            }
+        }
+
         // Do only 1 call to currentTimeMillis()
+        // NOTE: Concurrent callers might both call lastModifiedImpl(), which is harmless
         final long currentTime = System.currentTimeMillis();
         Object value = lastModifiedMap.get(currentTime, key);
         if (value == null) {
@@ -160,4 +177,12 @@ public abstract class ResourceManagerBase implements ResourceManager {
     }
 
     abstract protected long lastModifiedImpl(String key, boolean doNotThrowResourceNotFound);
+
+    /**
+     * Return the last modified date of the resource if the implementation is notified of changes to it, -1 if the
+     * resource doesn't exist, or null if the information must be obtained from lastModifiedImpl().
+     */
+    protected Long watchedLastModified(String key) {
+        return null;
+    }
 }
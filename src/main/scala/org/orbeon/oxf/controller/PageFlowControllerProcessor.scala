@@ -163,11 +163,7 @@ class PageFlowControllerProcessor extends ProcessorImpl with Logging {
     }
 
     // Run the first matching entry if any
-    val routOpt = (
-      pageFlow.routes.iterator
-      map  (route ⇒ route → MatchResult(route.routeElement.pattern, path))
-      find (_._2.matches)
-    )
+    val routOpt = pageFlow.routeIndex.findFirst(path)
 
     routOpt match {
       case Some((route: FileRoute, matchResult)) ⇒
@@ -614,7 +610,10 @@ object PageFlowControllerProcessor {
     errorRoute        : Option[PageOrServiceRoute],
     pathMatchers      : Seq[PathMatcher],
     file              : Option[String]
-  )
+  ) {
+    // Built once with the compiled page flow, which is cached
+    val routeIndex = new RouteIndex(routes map (route ⇒ route.routeElement.pattern → route))
+  }
 
   def att(e: Element, name: String) = e.attributeValueOpt(name)
   def idAtt(e: Element) = att(e, "id")
@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.controller
+
+import java.util.regex.Pattern
+import java.{util ⇒ ju}
+
+import org.orbeon.oxf.processor.RegexpMatcher.MatchResult
+
+// Index of route patterns, to find the first route matching a path without testing every pattern.
+//
+// - Each pattern is analyzed to find the literal prefix that any matching path must start with. The prefixes are
+//   stored in a trie, so that walking the path through the trie once yields all the routes which can possibly match.
+// - The candidates are then tested in declaration order, so the first matching route is the same as with a linear
+//   scan. Patterns which are plain literals are tested with a string comparison.
+class RouteIndex[T](entries: Seq[(Pattern, T)]) {
+
+  import RouteIndex._
+
+  private val patterns = entries.map(_._1).toArray
+  private val values   = entries.map(_._2).toArray
+  private val literals = patterns map (p ⇒ literalPrefix(p.pattern) collect { case (prefix, true) ⇒ prefix } orNull)
+
+  private class Node {
+    val children = new ju.HashMap[Character, Node]
+    val routes   = new ju.BitSet
+  }
+
+  private val root = new Node
+
+  for ((pattern, index) ← patterns.zipWithIndex) {
+    val prefix = literalPrefix(pattern.pattern) map (_._1) getOrElse ""
+    var node = root
+    for (c ← prefix) {
+      val child = node.children.get(c) match {
+        case null ⇒ val newChild = new Node; node.children.put(c, newChild); newChild
+        case existing ⇒ existing
+      }
+      node = child
+    }
+    node.routes.set(index)
+  }
+
+  def findFirst(path: String): Option[(T, MatchResult)] = {
+
+    // Gather the routes whose literal prefix is a prefix of the path
+    val candidates = new ju.BitSet(patterns.length)
+    var node = root
+    var position = 0
+    while (node ne null) {
+      candidates.or(node.routes)
+      node = if (position < path.length) node.children.get(path.charAt(position)) else null
+      position += 1
+    }
+
+    var index = candidates.nextSetBit(0)
+    while (index >= 0) {
+      val literal = literals(index)
+      if (literal ne null) {
+        if (literal == path)
+          return Some(values(index) → MatchResult(matches = true))
+      } else {
+        val matchResult = MatchResult(patterns(index), path)
+        if (matchResult.matches)
+          return Some(values(index) → matchResult)
+      }
+      index = candidates.nextSetBit(index + 1)
+    }
+
+    None
+  }
+}
+
+object RouteIndex {
+
+  private val MetaCharacters = "\\.[]{}()*+?^$|"
+  private val Quantifiers    = "*+?{"
+
+  // Return the literal prefix of a regular expression, and whether the whole expression is that literal, or `None`
+  // if the expression may have a top-level alternative, in which case matching strings don't share a prefix. This is
+  // conservative: the prefix stops at the first construct which is not a plain character.
+  def literalPrefix(regexp: String): Option[(String, Boolean)] =
+    if (hasTopLevelAlternative(regexp))
+      None
+    else {
+      val prefix = new java.lang.StringBuilder
+      var position = 0
+      var done = false
+      while (! done && position < regexp.length) {
+        val c = regexp.charAt(position)
+        val (literal, length) =
+          if (c == '\\' && position + 1 < regexp.length && ! Character.isLetterOrDigit(regexp.charAt(position + 1)))
+            (Some(regexp.charAt(position + 1)), 2)
+          else if (MetaCharacters.indexOf(c) == -1)
+            (Some(c), 1)
+          else
+            (None, 0)
+
+        literal match {
+          case Some(_) if position + length < regexp.length && Quantifiers.indexOf(regexp.charAt(position + length)) != -1 ⇒
+            // The character is optional or repeated
+            done = true
+          case Some(literalChar) ⇒
+            prefix.append(literalChar)
+            position += length
+          case None ⇒
+            done = true
+        }
+      }
+      Some(prefix.toString → (position == regexp.length))
+    }
+
+  private def hasTopLevelAlternative(regexp: String): Boolean = {
+    var depth    = 0
+    var inClass  = false
+    var position = 0
+    while (position < regexp.length) {
+      regexp.charAt(position) match {
+        case '\\'                           ⇒ position += 1
+        case '[' if inClass                 ⇒ return true // nested classes are not tracked, so be conservative
+        case '[' if ! inClass               ⇒ inClass = true
+        case ']' if inClass                 ⇒ inClass = false
+        case '(' if ! inClass               ⇒ depth += 1
+        case ')' if ! inClass               ⇒ depth -= 1
+        case '|' if ! inClass && depth == 0 ⇒ return true
+        case _                              ⇒
+      }
+      position += 1
+    }
+    false
+  }
+}
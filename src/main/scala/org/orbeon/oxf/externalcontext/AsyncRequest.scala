@@ -19,9 +19,11 @@ import org.orbeon.oxf.externalcontext.ExternalContext.Request
 import org.orbeon.oxf.util.URLRewriterUtils
 
 // This request copies all values of the given request ahead of time
-class AsyncRequest(req: Request) extends ExternalContext.Request {
+class AsyncRequest(req: Request, createSession: Boolean) extends ExternalContext.Request {
 
-  private val session = req.getSession(true) // assume it's ok to create a session
+  def this(req: Request) = this(req, createSession = true) // assume it's ok to create a session
+
+  private val session = req.getSession(createSession)
   private lazy val platformClientContextPath    = URLRewriterUtils.getClientContextPath(this, true)
   private lazy val applicationClientContextPath = URLRewriterUtils.getClientContextPath(this, false)
 
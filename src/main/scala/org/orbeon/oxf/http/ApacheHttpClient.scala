@@ -22,6 +22,7 @@ import jcifs.ntlmssp.{Type1Message, Type2Message, Type3Message}
 import jcifs.util.Base64
 import org.apache.http.auth._
 import org.apache.http.client.methods._
+import org.apache.http.client.params.HttpClientParams
 import org.apache.http.client.protocol.{ClientContext, RequestAcceptEncoding, ResponseContentEncoding}
 import org.apache.http.client.{CookieStore, CredentialsProvider}
 import org.apache.http.conn.routing.{HttpRoute, HttpRoutePlanner}
@@ -29,8 +30,8 @@ import org.apache.http.conn.scheme.{PlainSocketFactory, Scheme, SchemeRegistry}
 import org.apache.http.conn.ssl.SSLSocketFactory
 import org.apache.http.entity.{ContentType, InputStreamEntity}
 import org.apache.http.impl.auth.{BasicScheme, NTLMEngine, NTLMEngineException, NTLMScheme}
-import org.apache.http.impl.client.{BasicCredentialsProvider, DefaultHttpClient}
-import org.apache.http.impl.conn.PoolingClientConnectionManager
+import org.apache.http.conn.ConnectionKeepAliveStrategy
+import org.apache.http.impl.client.{BasicCredentialsProvider, DefaultConnectionKeepAliveStrategy, DefaultHttpClient}
 import org.apache.http.params.{BasicHttpParams, HttpConnectionParams}
 import org.apache.http.protocol.{BasicHttpContext, ExecutionContext, HttpContext}
 import org.apache.http.util.EntityUtils
@@ -62,6 +63,8 @@ class ApacheHttpClient(settings: HttpClientSettings) extends HttpClient {
     newProxyAuthState foreach
       (httpContext.setAttribute(ClientContext.PROXY_AUTH_STATE, _)) // Set proxy and host authentication
 
+    httpClient.setKeepAliveStrategy(KeepAliveStrategy)
+
     // Handle deflate/gzip transparently
     httpClient.addRequestInterceptor(new RequestAcceptEncoding)
     httpClient.addResponseInterceptor(new ResponseContentEncoding)
@@ -193,7 +196,21 @@ class ApacheHttpClient(settings: HttpClientSettings) extends HttpClient {
     def newHttpParams =
       new BasicHttpParams |!>
       (HttpConnectionParams.setStaleCheckingEnabled(_, settings.staleCheckingEnabled)) |!>
-      (HttpConnectionParams.setSoTimeout(_, settings.soTimeout))
+      (HttpConnectionParams.setSoTimeout(_, settings.soTimeout)) |!>
+      (HttpClientParams.setConnectionManagerTimeout(_, settings.poolLeaseTimeout)) // fail instead of waiting forever for a connection
+
+    // Use the duration indicated by the server if any, and our default otherwise
+    object KeepAliveStrategy extends ConnectionKeepAliveStrategy {
+
+      private val serverStrategy = new DefaultConnectionKeepAliveStrategy
+
+      def getKeepAliveDuration(response: org.apache.http.HttpResponse, context: HttpContext): Long =
+        serverStrategy.getKeepAliveDuration(response, context) match {
+          case duration if duration > 0           ⇒ duration
+          case _ if settings.keepAliveTimeout > 0 ⇒ settings.keepAliveTimeout
+          case _                                  ⇒ -1
+        }
+    }
 
     // It seems that credentials and state are not thread-safe, so create every time
     def newProxyAuthState = proxyCredentials map {
@@ -262,10 +279,8 @@ class ApacheHttpClient(settings: HttpClientSettings) extends HttpClient {
 
       schemeRegistry.register(new Scheme("https", 443, sslSocketFactory))
 
-      // Pooling connection manager with limits removed
-      new PoolingClientConnectionManager(schemeRegistry) |!>
-        (_.setMaxTotal(Integer.MAX_VALUE))               |!>
-        (_.setDefaultMaxPerRoute(Integer.MAX_VALUE))
+      // Pooling connection manager with configurable limits
+      new HttpConnectionPool(schemeRegistry, settings)
     }
 
 
@@ -0,0 +1,160 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.http
+
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.{ConcurrentHashMap, Executors, ThreadFactory, TimeUnit}
+import javax.management.ObjectName
+
+import org.apache.http.conn.routing.HttpRoute
+import org.apache.http.conn.scheme.SchemeRegistry
+import org.apache.http.conn.{ClientConnectionRequest, ConnectionPoolTimeoutException}
+import org.apache.http.impl.conn.PoolingClientConnectionManager
+import org.orbeon.oxf.util.{JMX, LoggerFactory}
+
+import scala.collection.JavaConverters._
+import scala.util.control.NonFatal
+
+// Statistics exposed over JMX
+trait HttpConnectionPoolMBean {
+  def getMaxTotal               : Int
+  def getDefaultMaxPerRoute     : Int
+  def getLeased                 : Int
+  def getAvailable              : Int
+  def getPending                : Int
+  def getLeaseCount             : Long
+  def getLeaseTimeoutCount      : Long
+  def getAverageLeaseWaitMillis : Double
+  def getMaxLeaseWaitMillis     : Double
+  def getRouteStats             : Array[String]
+}
+
+// Pooling connection manager which keeps statistics about connection leases, and closes expired and idle
+// connections in the background.
+class HttpConnectionPool(schemeRegistry: SchemeRegistry, settings: HttpClientSettings)
+  extends PoolingClientConnectionManager(schemeRegistry)
+  with HttpConnectionPoolMBean {
+
+  import HttpConnectionPool._
+
+  setMaxTotal(settings.poolMaxTotal)
+  setDefaultMaxPerRoute(settings.poolMaxPerRoute)
+
+  // Routes used so far, as the pool doesn't expose them
+  private val routes = new ConcurrentHashMap[HttpRoute, java.lang.Boolean]
+
+  private val leaseCount        = new AtomicLong
+  private val leaseTimeoutCount = new AtomicLong
+  private val leaseWaitNanos    = new AtomicLong
+  private val maxLeaseWaitNanos = new AtomicLong
+
+  override def requestConnection(route: HttpRoute, state: AnyRef): ClientConnectionRequest = {
+
+    routes.putIfAbsent(route, java.lang.Boolean.TRUE)
+
+    val request = super.requestConnection(route, state)
+
+    new ClientConnectionRequest {
+
+      def getConnection(timeout: Long, tunit: TimeUnit) = {
+        val start = System.nanoTime
+        try
+          request.getConnection(timeout, tunit)
+        catch {
+          case e: ConnectionPoolTimeoutException ⇒
+            leaseTimeoutCount.incrementAndGet()
+            throw e
+        } finally
+          leaseDone(System.nanoTime - start)
+      }
+
+      def abortRequest() = request.abortRequest()
+    }
+  }
+
+  private def leaseDone(waitNanos: Long): Unit = {
+    leaseCount.incrementAndGet()
+    leaseWaitNanos.addAndGet(waitNanos)
+    var max = maxLeaseWaitNanos.get
+    while (waitNanos > max && ! maxLeaseWaitNanos.compareAndSet(max, waitNanos))
+      max = maxLeaseWaitNanos.get
+  }
+
+  def getLeased    = getTotalStats.getLeased
+  def getAvailable = getTotalStats.getAvailable
+  def getPending   = getTotalStats.getPending
+
+  def getLeaseCount        = leaseCount.get
+  def getLeaseTimeoutCount = leaseTimeoutCount.get
+
+  def getAverageLeaseWaitMillis = {
+    val count = leaseCount.get
+    if (count == 0) 0.0 else leaseWaitNanos.get.toDouble / count / 1000000
+  }
+
+  def getMaxLeaseWaitMillis = maxLeaseWaitNanos.get.toDouble / 1000000
+
+  def getRouteStats =
+    routes.keySet.asScala.toArray map { route ⇒
+      val stats = getStats(route)
+      s"$route: leased=${stats.getLeased}, available=${stats.getAvailable}, pending=${stats.getPending}, max=${stats.getMax}"
+    }
+
+  // Close expired and idle connections periodically, so that connections closed by servers are not kept in the pool
+  private val reaper =
+    Executors.newSingleThreadScheduledExecutor(new ThreadFactory {
+      def newThread(r: Runnable) = {
+        val thread = new Thread(r, "orbeon-http-connection-reaper")
+        thread.setDaemon(true)
+        thread
+      }
+    })
+
+  reaper.scheduleWithFixedDelay(
+    new Runnable {
+      def run() =
+        try {
+          closeExpiredConnections()
+          if (settings.poolIdleTimeout > 0)
+            closeIdleConnections(settings.poolIdleTimeout, TimeUnit.MILLISECONDS)
+        } catch {
+          case NonFatal(t) ⇒ Logger.warn("error while closing expired and idle connections", t)
+        }
+    },
+    ReaperIntervalMillis,
+    ReaperIntervalMillis,
+    TimeUnit.MILLISECONDS
+  )
+
+  private val objectNameOpt: Option[ObjectName] =
+    if (settings.poolJMX)
+      JMX.registerMBean(
+        this,
+        classOf[HttpConnectionPoolMBean],
+        s"org.orbeon:type=HttpConnectionPool,id=${Integer.toHexString(System.identityHashCode(this))}"
+      )
+    else
+      None
+
+  override def shutdown(): Unit = {
+    reaper.shutdownNow()
+    objectNameOpt foreach JMX.unregisterMBean
+    super.shutdown()
+  }
+}
+
+private object HttpConnectionPool {
+  val Logger               = LoggerFactory.createLogger(classOf[HttpConnectionPool])
+  val ReaperIntervalMillis = 5000L
+}
@@ -43,7 +43,14 @@ object PropertiesConnectionSettings {
       proxyUsername        = props.getNonBlankString(ProxyUsernameProperty),
       proxyPassword        = props.getNonBlankString(ProxyPasswordProperty),
       proxyNTLMHost        = props.getNonBlankString(ProxyNTLMHostProperty),
-      proxyNTLMDomain      = props.getNonBlankString(ProxyNTLMDomainProperty)
+      proxyNTLMDomain      = props.getNonBlankString(ProxyNTLMDomainProperty),
+
+      poolMaxTotal         = props.getInteger(PoolMaxTotalProperty, PoolMaxTotalDefault).toInt,
+      poolMaxPerRoute      = props.getInteger(PoolMaxPerRouteProperty, PoolMaxPerRouteDefault).toInt,
+      poolLeaseTimeout     = props.getInteger(PoolLeaseTimeoutProperty, PoolLeaseTimeoutDefault).toInt,
+      poolIdleTimeout      = props.getInteger(PoolIdleTimeoutProperty, PoolIdleTimeoutDefault).toInt,
+      poolJMX              = props.getBoolean(PoolJMXProperty, PoolJMXDefault),
+      keepAliveTimeout     = props.getInteger(KeepAliveTimeoutProperty, KeepAliveTimeoutDefault).toInt
     )
   }
 }
\ No newline at end of file
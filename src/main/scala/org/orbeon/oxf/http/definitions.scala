@@ -107,7 +107,14 @@ case class HttpClientSettings(
   proxyUsername        : Option[String],
   proxyPassword        : Option[String],
   proxyNTLMHost        : Option[String],
-  proxyNTLMDomain      : Option[String]
+  proxyNTLMDomain      : Option[String],
+
+  poolMaxTotal         : Int,
+  poolMaxPerRoute      : Int,
+  poolLeaseTimeout     : Int,
+  poolIdleTimeout      : Int,
+  poolJMX              : Boolean,
+  keepAliveTimeout     : Int
 )
 
 object HttpClientSettings {
@@ -147,7 +154,14 @@ object HttpClientSettings {
       proxyUsername        = stringParam(ProxyUsernameProperty),
       proxyPassword        = stringParam(ProxyPasswordProperty),
       proxyNTLMHost        = stringParam(ProxyNTLMHostProperty),
-      proxyNTLMDomain      = stringParam(ProxyNTLMDomainProperty)
+      proxyNTLMDomain      = stringParam(ProxyNTLMDomainProperty),
+
+      poolMaxTotal         = intParamWithDefault(PoolMaxTotalProperty, PoolMaxTotalDefault),
+      poolMaxPerRoute      = intParamWithDefault(PoolMaxPerRouteProperty, PoolMaxPerRouteDefault),
+      poolLeaseTimeout     = intParamWithDefault(PoolLeaseTimeoutProperty, PoolLeaseTimeoutDefault),
+      poolIdleTimeout      = intParamWithDefault(PoolIdleTimeoutProperty, PoolIdleTimeoutDefault),
+      poolJMX              = booleanParamWithDefault(PoolJMXProperty, PoolJMXDefault),
+      keepAliveTimeout     = intParamWithDefault(KeepAliveTimeoutProperty, KeepAliveTimeoutDefault)
     )
   }
 
@@ -166,12 +180,24 @@ object HttpClientSettings {
   val ProxyPasswordProperty        = "oxf.http.proxy.password"
   val ProxyNTLMHostProperty        = "oxf.http.proxy.ntlm.host"
   val ProxyNTLMDomainProperty      = "oxf.http.proxy.ntlm.domain"
+  val PoolMaxTotalProperty         = "oxf.http.pool.max-total"
+  val PoolMaxPerRouteProperty      = "oxf.http.pool.max-per-route"
+  val PoolLeaseTimeoutProperty     = "oxf.http.pool.lease-timeout"
+  val PoolIdleTimeoutProperty      = "oxf.http.pool.idle-timeout"
+  val PoolJMXProperty              = "oxf.http.pool.jmx"
+  val KeepAliveTimeoutProperty     = "oxf.http.keep-alive-timeout"
 
   val StaleCheckingEnabledDefault  = true
   val SOTimeoutPropertyDefault     = 0
   val ChunkRequestsDefault         = false
   val ProxySSLPropertyDefault      = false
   val SSLHostnameVerifierDefault   = "strict"
+  val PoolMaxTotalDefault          = 1000
+  val PoolMaxPerRouteDefault       = 200
+  val PoolLeaseTimeoutDefault      = 30000 // ms, 0 to wait indefinitely
+  val PoolIdleTimeoutDefault       = 60000 // ms, 0 to keep idle connections
+  val PoolJMXDefault               = true
+  val KeepAliveTimeoutDefault      = 60000 // ms, when the server doesn't say, 0 to keep connections indefinitely
 }
 
 case class Credentials(username: String, password: Option[String], preemptiveAuth: Boolean, domain: Option[String]) {
@@ -0,0 +1,233 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.processor
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.{AtomicBoolean, AtomicLong}
+import java.{util ⇒ ju}
+
+import org.orbeon.oxf.pipeline.api.PipelineContext
+import org.orbeon.oxf.properties.Properties
+import org.orbeon.oxf.util.JMX
+import org.orbeon.oxf.xml.{ForwardingXMLReceiver, XMLReceiver, XMLReceiverHelper}
+import org.xml.sax.Attributes
+
+import scala.collection.JavaConverters._
+
+// Statistics exposed over JMX
+trait PipelineProfilerMBean {
+  def isEnabled: Boolean
+  def setEnabled(enabled: Boolean): Unit
+  def reset(): Unit
+  def getProcessorStats: Array[String]
+}
+
+// Statistics about where time goes in pipelines, aggregated over requests.
+//
+// - Statistics are kept per processor, identified by its location in the pipeline. Processors created internally,
+//   which don't have a location, are grouped by name.
+// - Pipelines are pull-based, so reading an output also reads the outputs it depends on. Besides the total read time,
+//   the self time excludes the time spent reading other outputs and computing their keys and validities.
+// - Cache hits and misses are those of `readCacheInputAsObject()`, i.e. of the objects built by the processor from
+//   its inputs, such as compiled stylesheets.
+// - The profiler is disabled by default and can be enabled with a property or over JMX.
+object PipelineProfiler extends PipelineProfilerMBean {
+
+  val EnabledProperty = "oxf.pipeline.profiler.enabled"
+
+  @volatile private var enabled = false
+  private val Started = new AtomicBoolean(false)
+
+  private val statsByProcessor = new ConcurrentHashMap[String, ProcessorStats]
+
+  // Called once properties are available, as properties themselves are read with a pipeline
+  def startIfConfigured(): Unit =
+    if (Started.compareAndSet(false, true)) {
+      enabled = Properties.instance.getPropertySet.getBoolean(EnabledProperty, default = false)
+      JMX.registerMBean(this, classOf[PipelineProfilerMBean], "org.orbeon:type=PipelineProfiler")
+    }
+
+  def isEnabled = enabled
+  def setEnabled(enabled: Boolean): Unit = this.enabled = enabled
+
+  def reset(): Unit = statsByProcessor.values.asScala foreach (_.reset())
+
+  def statsFor(processor: Processor): ProcessorStats = {
+
+    val name     = Option(processor.getName) map (_.qualifiedName) getOrElse processor.getClass.getName
+    val location = Option(processor.getLocationData).map(l ⇒ s"${l.file}:${l.line}:${l.col}").orNull
+    val key      = if (location ne null) location + "|" + name else name
+
+    val newStats = new ProcessorStats(name, location)
+    Option(statsByProcessor.putIfAbsent(key, newStats)) getOrElse newStats
+  }
+
+  // Processors with the most self time first
+  def allStats: List[ProcessorStats] =
+    statsByProcessor.values.asScala.toList filter (_.reads.get > 0) sortBy (- _.readSelfNanos.get)
+
+  def getProcessorStats = allStats.map(_.toString).toArray
+
+  // Frames of the reads and key and validity computations in progress on the current thread
+  private class Frame(val start: Long) { var childNanos = 0L }
+
+  private val Frames = new ThreadLocal[ju.ArrayDeque[Frame]] {
+    override def initialValue() = new ju.ArrayDeque[Frame]
+  }
+
+  def enter(): Unit = Frames.get.push(new Frame(System.nanoTime))
+
+  def exitRead(stats: ProcessorStats, receiver: ProfilingXMLReceiver): Unit = {
+    val (totalNanos, selfNanos) = exit()
+    stats.reads.incrementAndGet()
+    stats.readNanos.addAndGet(totalNanos)
+    stats.readSelfNanos.addAndGet(selfNanos)
+    stats.events.addAndGet(receiver.eventCount)
+    stats.characters.addAndGet(receiver.characterCount)
+  }
+
+  def exitKey(stats: ProcessorStats): Unit = {
+    val (_, selfNanos) = exit()
+    stats.keyCount.incrementAndGet()
+    stats.keyNanos.addAndGet(selfNanos)
+  }
+
+  def exitValidity(stats: ProcessorStats): Unit = {
+    val (_, selfNanos) = exit()
+    stats.validityCount.incrementAndGet()
+    stats.validityNanos.addAndGet(selfNanos)
+  }
+
+  private def exit(): (Long, Long) = {
+    val frames     = Frames.get
+    val frame      = frames.pop()
+    val totalNanos = System.nanoTime - frame.start
+
+    if (! frames.isEmpty)
+      frames.peek.childNanos += totalNanos
+
+    (totalNanos, totalNanos - frame.childNanos)
+  }
+
+  def toXML(helper: XMLReceiverHelper): Unit = {
+    helper.startElement("processors")
+    for (stats ← allStats)
+      helper.element("processor", stats.toAttributes)
+    helper.endElement()
+  }
+}
+
+class ProcessorStats(val name: String, val location: String) {
+
+  val reads         = new AtomicLong
+  val readNanos     = new AtomicLong
+  val readSelfNanos = new AtomicLong
+  val events        = new AtomicLong
+  val characters    = new AtomicLong
+  val keyCount      = new AtomicLong
+  val keyNanos      = new AtomicLong
+  val validityCount = new AtomicLong
+  val validityNanos = new AtomicLong
+  val cacheHits     = new AtomicLong
+  val cacheMisses   = new AtomicLong
+
+  private def all = List(reads, readNanos, readSelfNanos, events, characters, keyCount, keyNanos, validityCount, validityNanos, cacheHits, cacheMisses)
+
+  def reset(): Unit = all foreach (_.set(0))
+
+  def cacheHitRatio = {
+    val lookups = cacheHits.get + cacheMisses.get
+    if (lookups == 0) 0.0 else cacheHits.get.toDouble / lookups
+  }
+
+  private def millis(nanos: AtomicLong) = f"${nanos.get.toDouble / 1000000}%.3f"
+
+  def toAttributes: Array[String] =
+    Array(
+      "name",            name,
+      "location",        location,
+      "reads",           reads.get.toString,
+      "read-ms",         millis(readNanos),
+      "self-ms",         millis(readSelfNanos),
+      "events",          events.get.toString,
+      "characters",      characters.get.toString,
+      "keys",            keyCount.get.toString,
+      "key-ms",          millis(keyNanos),
+      "validities",      validityCount.get.toString,
+      "validity-ms",     millis(validityNanos),
+      "cache-hits",      cacheHits.get.toString,
+      "cache-misses",    cacheMisses.get.toString,
+      "cache-hit-ratio", f"$cacheHitRatio%.2f"
+    )
+
+  override def toString =
+    toAttributes.grouped(2) collect { case Array(attName, value) if value ne null ⇒ s"$attName=$value" } mkString ", "
+}
+
+// Count the events and characters produced by an output
+class ProfilingXMLReceiver(xmlReceiver: XMLReceiver) extends ForwardingXMLReceiver(xmlReceiver) {
+
+  var eventCount     = 0L
+  var characterCount = 0L
+
+  override def startElement(uri: String, localname: String, qName: String, attributes: Attributes): Unit = {
+    eventCount += 1
+    super.startElement(uri, localname, qName, attributes)
+  }
+
+  override def endElement(uri: String, localname: String, qName: String): Unit = {
+    eventCount += 1
+    super.endElement(uri, localname, qName)
+  }
+
+  override def characters(chars: Array[Char], start: Int, length: Int): Unit = {
+    eventCount += 1
+    characterCount += length
+    super.characters(chars, start, length)
+  }
+
+  override def ignorableWhitespace(chars: Array[Char], start: Int, length: Int): Unit = {
+    eventCount += 1
+    characterCount += length
+    super.ignorableWhitespace(chars, start, length)
+  }
+
+  override def processingInstruction(target: String, data: String): Unit = {
+    eventCount += 1
+    super.processingInstruction(target, data)
+  }
+
+  override def comment(ch: Array[Char], start: Int, length: Int): Unit = {
+    eventCount += 1
+    super.comment(ch, start, length)
+  }
+}
+
+// Output the statistics of the profiler, for example to be shown by a page
+class PipelineProfilerGenerator extends ProcessorImpl {
+
+  import ProcessorImpl._
+
+  addOutputInfo(new ProcessorInputOutputInfo(OUTPUT_DATA))
+
+  override def createOutput(name: String) =
+    addOutput(name, new ProcessorOutputImpl(PipelineProfilerGenerator.this, name) {
+      def readImpl(context: PipelineContext, xmlReceiver: XMLReceiver): Unit = {
+        val helper = new XMLReceiverHelper(xmlReceiver)
+        helper.startDocument()
+        PipelineProfiler.toXML(helper)
+        helper.endDocument()
+      }
+    })
+}
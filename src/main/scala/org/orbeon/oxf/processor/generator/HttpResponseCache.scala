@@ -0,0 +1,290 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.processor.generator
+
+import java.lang.{Long ⇒ JLong}
+import java.{util ⇒ ju}
+
+import org.orbeon.oxf.http.Headers
+import org.orbeon.oxf.properties.Properties
+import org.orbeon.oxf.util.CoreUtils._
+import org.orbeon.oxf.util.DateUtils
+import org.orbeon.oxf.xml.SAXStore
+
+import scala.collection.JavaConverters._
+import scala.collection.mutable
+import scala.util.Try
+
+// Shared cache of documents read by the URL generator over HTTP, following the caching rules of RFC 7234 for a
+// shared cache.
+//
+// - Entries hold the parsed document, so a fresh entry is replayed without connecting or parsing.
+// - Stale entries with a validator are revalidated with `If-None-Match` and `If-Modified-Since`, and a 304 response
+//   only refreshes the freshness of the entry.
+// - Within the `stale-while-revalidate` window, a single caller revalidates the entry while the others keep using the
+//   stale entry instead of piling up on the server.
+// - The cache is bounded by the approximate size of the documents, and the least recently used entries are dropped.
+class HttpResponseCache(maxBytes: Long) {
+
+  import HttpResponseCache._
+
+  // Access order, so that iteration starts with the least recently used entry
+  private val entries      = new ju.LinkedHashMap[String, Entry](16, 0.75f, true)
+  private val revalidating = mutable.Set[String]()
+
+  private var usedBytes     = 0L
+  private var hitCount      = 0L
+  private var missCount     = 0L
+  private var evictionCount = 0L
+
+  // Return `null` if there is no entry, which is easier on Java callers
+  def lookup(key: String, now: Long): Lookup = synchronized {
+    Option(entries.get(key)) match {
+      case Some(entry) if entry.isFresh(now) ⇒
+        hitCount += 1
+        Lookup(entry, mustRevalidate = false)
+      case Some(entry) if entry.isStaleUsable(now) && revalidating(key) ⇒
+        hitCount += 1
+        Lookup(entry, mustRevalidate = false)
+      case Some(entry) if entry.hasValidator ⇒
+        missCount += 1
+        revalidating += key
+        Lookup(entry, mustRevalidate = true)
+      case Some(_) ⇒
+        missCount += 1
+        removeEntry(key)
+        null
+      case None ⇒
+        missCount += 1
+        null
+    }
+  }
+
+  // Return `false` if the document can't fit in the cache at all
+  def put(key: String, entry: Entry): Boolean = synchronized {
+
+    removeEntry(key)
+    revalidating -= key
+
+    if (entry.weight > maxBytes)
+      false
+    else {
+      while (usedBytes + entry.weight > maxBytes) {
+        removeEntry(entries.entrySet.iterator.next().getKey)
+        evictionCount += 1
+      }
+      entries.put(key, entry)
+      usedBytes += entry.weight
+      true
+    }
+  }
+
+  // Called after a 304 response: keep the document and update the freshness information
+  def revalidated(key: String, entry: Entry, headers: Map[String, List[String]], now: Long): Entry = {
+    val newEntry = entry.refresh(headers, now)
+    put(key, newEntry)
+    newEntry
+  }
+
+  // Called when the revalidation is over, whatever its outcome, so that another caller can try again
+  def endRevalidation(key: String): Unit = synchronized {
+    revalidating -= key
+  }
+
+  def remove(key: String): Unit = synchronized {
+    removeEntry(key)
+  }
+
+  def getCurrentSize   : Int  = synchronized { entries.size }
+  def getUsedBytes     : Long = synchronized { usedBytes }
+  def getHitCount      : Long = synchronized { hitCount }
+  def getMissCount     : Long = synchronized { missCount }
+  def getEvictionCount : Long = synchronized { evictionCount }
+
+  private def removeEntry(key: String): Unit =
+    Option(entries.remove(key)) foreach { entry ⇒
+      usedBytes -= entry.weight
+    }
+}
+
+object HttpResponseCache {
+
+  val MaxSizeProperty = "oxf.url-generator.http-cache.max-size-mb"
+  val MaxSizeDefault  = 0
+
+  // `None` if the cache is disabled
+  lazy val instanceOpt: Option[HttpResponseCache] = {
+    val maxSizeMB = Properties.instance.getPropertySet.getInteger(MaxSizeProperty, MaxSizeDefault).toInt
+    maxSizeMB > 0 option new HttpResponseCache(maxSizeMB.toLong * 1024 * 1024)
+  }
+
+  def instanceOrNull = instanceOpt.orNull
+
+  def isHttpScheme(scheme: String) = scheme == "http" || scheme == "https"
+
+  case class Lookup(entry: Entry, mustRevalidate: Boolean)
+
+  case class Entry(
+    document     : SAXStore,
+    mediatype    : String,       // `null` if unknown
+    charset      : String,       // `null` if unknown
+    etag         : Option[String],
+    lastModified : Option[Long],
+    storedAt     : Long,
+    freshUntil   : Long,
+    staleUntil   : Long          // end of the `stale-while-revalidate` window
+  ) {
+    val weight = document.getApproximateSize
+
+    def isFresh(now: Long)       = now < freshUntil
+    def isStaleUsable(now: Long) = now < staleUntil
+    def hasValidator             = etag.isDefined || lastModified.isDefined
+
+    // Validity for the pipeline cache, which is stable as long as the document doesn't change
+    def validity: JLong = lastModified getOrElse storedAt
+
+    def conditionalHeaders: ju.Map[String, Array[String]] = {
+      val headers =
+        etag.map(value ⇒ IfNoneMatch → Array(value)).toList :::
+        lastModified.map(value ⇒ IfModifiedSince → Array(DateUtils.RFC1123Date.print(value))).toList
+      headers.toMap.asJava
+    }
+
+    def refresh(headers: Map[String, List[String]], now: Long): Entry = {
+      val (newFreshUntil, newStaleUntil) = freshness(headers, now)
+      copy(
+        etag       = Headers.firstHeaderIgnoreCase(headers, ETag) orElse etag,
+        freshUntil = newFreshUntil,
+        staleUntil = newStaleUntil
+      )
+    }
+  }
+
+  def createEntry(
+    document  : SAXStore,
+    mediatype : String,
+    charset   : String,
+    headers   : Map[String, List[String]],
+    now       : Long
+  ): Entry = {
+    val (freshUntil, staleUntil) = freshness(headers, now)
+    Entry(
+      document     = document,
+      mediatype    = mediatype,
+      charset      = charset,
+      etag         = Headers.firstHeaderIgnoreCase(headers, ETag),
+      lastModified = Headers.firstDateHeaderIgnoreCase(headers, Headers.LastModified),
+      storedAt     = now,
+      freshUntil   = freshUntil,
+      staleUntil   = staleUntil
+    )
+  }
+
+  // Responses to such requests are likely specific to a user
+  def isAuthenticatedRequest(hasCredentials: Boolean, headers: Map[String, List[String]]): Boolean =
+    hasCredentials || (headers.keys exists (name ⇒ name.equalsIgnoreCase(Headers.Authorization) || name.equalsIgnoreCase(Headers.Cookie)))
+
+  // Whether a response can be stored by a shared cache (RFC 7234 section 3)
+  def isStorable(statusCode: Int, headers: Map[String, List[String]], authenticatedRequest: Boolean): Boolean = {
+
+    val directives = cacheControl(headers)
+
+    def hasExplicitFreshness =
+      directives.contains("max-age") || directives.contains("s-maxage") || header(headers, Expires).isDefined
+
+    def hasValidator =
+      header(headers, ETag).isDefined || header(headers, Headers.LastModified).isDefined
+
+    // We don't keep variants, so only accept `Vary` on headers which don't change the document
+    def varies =
+      headers exists { case (name, values) ⇒
+        name.equalsIgnoreCase(Vary) && (values flatMap (_.split(',')) map (_.trim.toLowerCase) exists
+          (varyName ⇒ varyName.nonEmpty && varyName != "accept-encoding"))
+      }
+
+    statusCode == 200                                         &&
+      ! directives.contains("no-store")                       &&
+      ! directives.contains("private")                        &&
+      (! authenticatedRequest || directives.contains("public")) &&
+      header(headers, SetCookie).isEmpty                      &&
+      ! varies                                                &&
+      (hasExplicitFreshness || hasValidator)
+  }
+
+  // Return the end of the freshness lifetime and the end of the `stale-while-revalidate` window
+  def freshness(headers: Map[String, List[String]], now: Long): (Long, Long) = {
+
+    val directives = cacheControl(headers)
+
+    def seconds(name: String) =
+      directives.get(name).flatten flatMap (s ⇒ Try(s.toLong).toOption) filter (_ >= 0)
+
+    val lifetimeMs =
+      if (directives.contains("no-cache"))
+        0L
+      else
+        seconds("s-maxage") orElse seconds("max-age") map (_ * 1000) getOrElse {
+          // `Expires` is relative to the server's `Date`, which protects against clock differences
+          val date = Headers.firstDateHeaderIgnoreCase(headers, Date) getOrElse now
+          Headers.firstDateHeaderIgnoreCase(headers, Expires) map (expires ⇒ (expires - date) max 0L) getOrElse 0L
+        }
+
+    // The response might have spent some time in other caches already
+    val ageMs = header(headers, Age) flatMap (s ⇒ Try(s.trim.toLong).toOption) map (_ * 1000) getOrElse 0L
+
+    val freshUntil = now + (lifetimeMs - ageMs).max(0L)
+
+    val staleUntil =
+      if (directives.contains("must-revalidate") || directives.contains("proxy-revalidate"))
+        freshUntil
+      else
+        freshUntil + seconds("stale-while-revalidate").map(_ * 1000).getOrElse(0L)
+
+    (freshUntil, staleUntil)
+  }
+
+  // Directive names are lowercase, and values are unquoted
+  def cacheControl(headers: Map[String, List[String]]): Map[String, Option[String]] = {
+
+    val directives =
+      for {
+        (name, values) ← headers.toList
+        if name.equalsIgnoreCase(CacheControl)
+        value          ← values
+        directive      ← value.split(',').toList map (_.trim)
+        if directive.nonEmpty
+      } yield
+        directive.split("=", 2) match {
+          case Array(directiveName, directiveValue) ⇒
+            directiveName.trim.toLowerCase → Some(directiveValue.trim.stripPrefix("\"").stripSuffix("\""))
+          case Array(directiveName) ⇒
+            directiveName.trim.toLowerCase → None
+        }
+
+    directives.toMap
+  }
+
+  private def header(headers: Map[String, List[String]], name: String) =
+    Headers.firstHeaderIgnoreCase(headers, name)
+
+  private val CacheControl    = "Cache-Control"
+  private val Expires         = "Expires"
+  private val Date            = "Date"
+  private val Age             = "Age"
+  private val ETag            = "ETag"
+  private val Vary            = "Vary"
+  private val SetCookie       = "Set-Cookie"
+  private val IfNoneMatch     = "If-None-Match"
+  private val IfModifiedSince = "If-Modified-Since"
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.processor.transformer.xslt
+
+import java.util.concurrent.atomic.{AtomicBoolean, AtomicInteger}
+import java.util.concurrent.{Executors, ThreadFactory}
+
+import org.orbeon.oxf.pipeline.InitUtils.withPipelineContext
+import org.orbeon.oxf.processor.generator.{DOMGenerator, URLGenerator}
+import org.orbeon.oxf.processor.{NullSerializer, ProcessorFactoryRegistry, ProcessorImpl}
+import org.orbeon.oxf.properties.Properties
+import org.orbeon.oxf.util.{LoggerFactory, PipelineUtils}
+import org.orbeon.oxf.xml.XMLConstants
+import org.orbeon.oxf.xml.dom4j.Dom4jUtils
+
+import scala.util.control.NonFatal
+
+// Compile a configured list of stylesheets when the application starts, so that the first users don't have to wait
+// for large stylesheets to compile.
+//
+// - Stylesheets are compiled in parallel on a small pool of daemon threads, and startup doesn't wait for them.
+// - Compiled stylesheets are stored under the same cache keys as when the stylesheet is referred to with `href` from
+//   a pipeline using `oxf:xslt` or `oxf:unsafe-xslt`, and they go to the pinned cache of `XSLTTransformer`.
+// - Errors are logged and otherwise ignored: the stylesheet is compiled again, and the error reported, on first use.
+object XSLTWarmUp {
+
+  val StylesheetsProperty = "oxf.xslt.warm-up.stylesheets"
+  val ThreadsProperty     = "oxf.xslt.warm-up.threads"
+  val ThreadsDefault      = 4
+
+  private val Logger  = LoggerFactory.createLogger(XSLTWarmUp.getClass)
+  private val Started = new AtomicBoolean(false)
+
+  // Start the warm-up once, even if called by several servlets or portlets
+  def startIfConfigured(): Unit = {
+
+    val propertySet = Properties.instance.getPropertySet
+    val urls        = propertySet.getString(StylesheetsProperty, "").split("""\s+""").toList filter (_.nonEmpty)
+
+    if (urls.nonEmpty && Started.compareAndSet(false, true)) {
+
+      val threads   = propertySet.getInteger(ThreadsProperty, ThreadsDefault).toInt max 1 min urls.size
+      val executor  = Executors.newFixedThreadPool(threads, DaemonThreadFactory)
+      val remaining = new AtomicInteger(urls.size)
+      val startTime = System.currentTimeMillis
+
+      Logger.info(s"Compiling ${urls.size} stylesheets with $threads threads")
+
+      for (url ← urls)
+        executor.execute(new Runnable {
+          def run(): Unit = {
+            compile(url)
+            if (remaining.decrementAndGet() == 0)
+              Logger.info(s"Compiled ${urls.size} stylesheets in ${System.currentTimeMillis - startTime} ms")
+          }
+        })
+
+      executor.shutdown()
+    }
+  }
+
+  // Compile a stylesheet and place it in cache without running it
+  def compile(url: String): Unit = {
+    val startTime = System.currentTimeMillis
+    try {
+      val xslt = ProcessorFactoryRegistry.lookup(XMLConstants.XSLT_PROCESSOR_QNAME).createInstance
+      PipelineUtils.connect(new URLGenerator(url), ProcessorImpl.OUTPUT_DATA, xslt, ProcessorImpl.INPUT_CONFIG)
+
+      // Without validity, so that the empty output is not cached
+      val data = PipelineUtils.createDOMGenerator(Dom4jUtils.NULL_DOCUMENT, "xslt-warm-up-data", null, DOMGenerator.DefaultContext)
+      PipelineUtils.connect(data, ProcessorImpl.OUTPUT_DATA, xslt, ProcessorImpl.INPUT_DATA)
+
+      val serializer = new NullSerializer
+      PipelineUtils.connect(xslt, ProcessorImpl.OUTPUT_DATA, serializer, ProcessorImpl.INPUT_DATA)
+
+      withPipelineContext { pipelineContext ⇒
+        pipelineContext.setAttribute(XSLTTransformer.XSLT_COMPILE_ONLY, java.lang.Boolean.TRUE)
+        xslt.reset(pipelineContext)
+        serializer.start(pipelineContext)
+      }
+
+      Logger.debug(s"Compiled stylesheet $url in ${System.currentTimeMillis - startTime} ms")
+    } catch {
+      case NonFatal(t) ⇒
+        Logger.warn(s"Unable to compile stylesheet $url during warm-up", t)
+    }
+  }
+
+  private object DaemonThreadFactory extends ThreadFactory {
+    private val count = new AtomicInteger(0)
+    def newThread(runnable: Runnable): Thread = {
+      val thread = new Thread(runnable, "xslt-warm-up-" + count.incrementAndGet())
+      thread.setDaemon(true)
+      thread
+    }
+  }
+}
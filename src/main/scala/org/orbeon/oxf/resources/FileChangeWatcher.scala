@@ -0,0 +1,125 @@
+/**
+  * Copyright (C) 2017 Orbeon, Inc.
+  *
+  * This program is free software; you can redistribute it and/or modify it under the terms of the
+  * GNU Lesser General Public License as published by the Free Software Foundation; either version
+  * 2.1 of the License, or (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+  * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+  * See the GNU Lesser General Public License for more details.
+  *
+  * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+  */
+package org.orbeon.oxf.resources
+
+import java.io.{File, IOException}
+import java.nio.file.StandardWatchEventKinds._
+import java.nio.file._
+import java.util.concurrent.ConcurrentHashMap
+import java.{lang ⇒ jl}
+
+import org.orbeon.oxf.util.LoggerFactory
+
+import scala.collection.JavaConverters._
+
+// Keep track of the last modification date of files under a resource root.
+//
+// - Lookups are reads of a concurrent map. Files are stat'ed only the first time they are looked up, and then when
+//   the filesystem reports a change in their directory.
+// - Directories are registered with the `WatchService` lazily, when a file they contain is first looked up. Only
+//   existing directories can be registered. For other files, `lastModified` returns `null` and the caller must find
+//   the information by other means.
+// - A daemon thread processes the filesystem events and updates the table.
+class FileChangeWatcher(name: String) {
+
+  import FileChangeWatcher._
+
+  private val watchService       = FileSystems.getDefault.newWatchService()
+  private val watchedDirectories = new ConcurrentHashMap[Path, WatchKey]
+  private val lastModifiedByPath = new ConcurrentHashMap[Path, jl.Long]
+
+  private val thread = new Thread(s"orbeon-resource-watcher-$name") {
+    override def run() = processEvents()
+  }
+
+  thread.setDaemon(true)
+  thread.start()
+
+  // Return -1 if the file doesn't exist or can't be read, or `null` if the file can't be watched
+  def lastModified(file: File): jl.Long = {
+
+    val path     = file.toPath.toAbsolutePath.normalize
+    val existing = lastModifiedByPath.get(path)
+
+    if (existing ne null)
+      existing
+    else if (watchDirectory(path.getParent)) {
+      // Stat after registering the directory, so that no change can be missed
+      val current  = stat(path)
+      val previous = lastModifiedByPath.putIfAbsent(path, current)
+      if (previous ne null) previous else current
+    } else
+      null
+  }
+
+  def close(): Unit = watchService.close()
+
+  private def watchDirectory(directory: Path): Boolean =
+    (directory ne null) && (
+      watchedDirectories.containsKey(directory) || (
+        Files.isDirectory(directory) && {
+          try {
+            // Registering the same directory twice returns the same key, so a concurrent registration is harmless
+            watchedDirectories.put(directory, directory.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY))
+            true
+          } catch {
+            case e: IOException ⇒
+              Logger.debug(s"cannot watch directory `$directory`: ${e.getMessage}")
+              false
+          }
+        }
+      )
+    )
+
+  private def pathsIn(directory: Path) =
+    lastModifiedByPath.keySet.asScala filter (_.getParent == directory)
+
+  private def processEvents(): Unit =
+    try {
+      while (true) {
+        val key       = watchService.take()
+        val directory = key.watchable.asInstanceOf[Path]
+
+        for (event ← key.pollEvents.asScala)
+          event.context match {
+            case fileName: Path ⇒
+              // Always update the entry, even if absent, so that a lookup which stat'ed the file before the change
+              // can't store a stale value afterwards
+              val path = directory.resolve(fileName)
+              lastModifiedByPath.put(path, stat(path))
+            case _ ⇒
+              // Events were lost
+              pathsIn(directory) foreach (path ⇒ lastModifiedByPath.put(path, stat(path)))
+          }
+
+        if (! key.reset()) {
+          // The directory is no longer accessible: forget about it so that it is registered again if it reappears
+          watchedDirectories.remove(directory)
+          pathsIn(directory) foreach lastModifiedByPath.remove
+        }
+      }
+    } catch {
+      case _: InterruptedException | _: ClosedWatchServiceException ⇒ // NOP
+    }
+}
+
+private object FileChangeWatcher {
+
+  val Logger = LoggerFactory.createLogger(classOf[FileChangeWatcher])
+
+  def stat(path: Path): jl.Long = {
+    val file = path.toFile
+    if (file.canRead) file.lastModified else -1L
+  }
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.util
+
+import java.lang.management.ManagementFactory
+import javax.management.{ObjectName, StandardMBean}
+
+import scala.util.control.NonFatal
+
+// MBeans are only used for monitoring, so failing to register or unregister them is logged and otherwise ignored
+object JMX {
+
+  private val Logger = LoggerFactory.createLogger(JMX.getClass)
+
+  // Register the MBean with the platform MBean server, and return its name if registered
+  def registerMBean[T](mbean: T, mbeanInterface: Class[T], name: String): Option[ObjectName] = {
+    val objectName = new ObjectName(name)
+    try {
+      ManagementFactory.getPlatformMBeanServer.registerMBean(new StandardMBean(mbean, mbeanInterface), objectName)
+      Some(objectName)
+    } catch {
+      case NonFatal(t) ⇒
+        Logger.warn(s"cannot register MBean `$objectName`", t)
+        None
+    }
+  }
+
+  def unregisterMBean(objectName: ObjectName): Unit =
+    try
+      ManagementFactory.getPlatformMBeanServer.unregisterMBean(objectName)
+    catch {
+      case NonFatal(_) ⇒
+    }
+}
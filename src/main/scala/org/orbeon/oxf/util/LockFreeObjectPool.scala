@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.util
+
+import java.util.concurrent.atomic.{AtomicLong, AtomicReferenceArray}
+
+import org.apache.commons.pool.{BaseObjectPool, PoolableObjectFactory}
+
+import scala.util.control.NonFatal
+
+// Object pool holding idle objects in a fixed array of slots updated with compare-and-set.
+//
+// - There is no monitor, and returning an object doesn't allocate (unlike `SoftReferenceObjectPool`).
+// - Each thread starts scanning at a slot derived from its id, so threads tend to reuse the same objects.
+// - When all slots are taken, returned objects are dropped and left to the garbage collector.
+class LockFreeObjectPool[T <: AnyRef](factory: PoolableObjectFactory[T], capacity: Int) extends BaseObjectPool[T] {
+
+  import LockFreeObjectPool._
+
+  require(capacity > 0)
+
+  private val slots = new AtomicReferenceArray[T](capacity)
+
+  private val hits      = new AtomicLong
+  private val misses    = new AtomicLong
+  private val creations = new AtomicLong
+  private val discards  = new AtomicLong
+
+  private def startSlot = (Thread.currentThread.getId % capacity).toInt
+
+  override def borrowObject(): T = {
+    assertOpen()
+
+    val start = startSlot
+    var i = 0
+    while (i < capacity) {
+      val index = (start + i) % capacity
+      val idle  = slots.get(index)
+      if ((idle ne null) && slots.compareAndSet(index, idle, null.asInstanceOf[T])) {
+        hits.incrementAndGet()
+        return idle
+      }
+      i += 1
+    }
+
+    misses.incrementAndGet()
+    val created = factory.makeObject()
+    creations.incrementAndGet()
+    created
+  }
+
+  override def returnObject(obj: T): Unit = {
+    if (! isClosed) {
+      val start = startSlot
+      var i = 0
+      while (i < capacity) {
+        val index = (start + i) % capacity
+        if ((slots.get(index) eq null) && slots.compareAndSet(index, null.asInstanceOf[T], obj))
+          return
+        i += 1
+      }
+    }
+
+    discards.incrementAndGet()
+    destroy(obj)
+  }
+
+  override def invalidateObject(obj: T): Unit =
+    factory.destroyObject(obj)
+
+  override def getNumIdle: Int = {
+    var count = 0
+    var i = 0
+    while (i < capacity) {
+      if (slots.get(i) ne null)
+        count += 1
+      i += 1
+    }
+    count
+  }
+
+  override def clear(): Unit = {
+    var i = 0
+    while (i < capacity) {
+      val idle = slots.getAndSet(i, null.asInstanceOf[T])
+      if (idle ne null)
+        destroy(idle)
+      i += 1
+    }
+  }
+
+  override def close(): Unit = {
+    super.close()
+    clear()
+  }
+
+  def statistics = PoolStatistics(
+    hits      = hits.get,
+    misses    = misses.get,
+    creations = creations.get,
+    discards  = discards.get,
+    idle      = getNumIdle
+  )
+
+  private def destroy(obj: T): Unit =
+    try factory.destroyObject(obj)
+    catch { case NonFatal(_) ⇒ } // same as `SoftReferenceObjectPool`
+}
+
+object LockFreeObjectPool {
+
+  case class PoolStatistics(hits: Long, misses: Long, creations: Long, discards: Long, idle: Int)
+
+  // Enough for each core to have an object in use plus one waiting
+  val DefaultCapacity = Runtime.getRuntime.availableProcessors * 2
+}
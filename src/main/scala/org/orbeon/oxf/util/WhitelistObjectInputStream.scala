@@ -31,8 +31,8 @@ class WhitelistObjectInputStream(is: InputStream, classNames: Set[String]) exten
 
 object WhitelistObjectInputStream {
 
-  def apply(is: InputStream, clazz: Class[_]): WhitelistObjectInputStream =
-    new WhitelistObjectInputStream(is, AllowedClasses ++ Set(clazz.getName))
+  def apply(is: InputStream, classes: Class[_]*): WhitelistObjectInputStream =
+    new WhitelistObjectInputStream(is, AllowedClasses ++ (classes map (_.getName)))
 
   private val AllowedPrefixes = List(
     "scala.collection.",
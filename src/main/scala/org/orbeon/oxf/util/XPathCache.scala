@@ -14,10 +14,10 @@
 package org.orbeon.oxf.util
 
 import collection.JavaConverters._
+import java.{util ⇒ ju}
 import java.util.{List ⇒ JList, Map ⇒ JMap}
 import org.apache.commons.pool.{BasePoolableObjectFactory, ObjectPool}
-import org.orbeon.oxf.cache.InternalCacheKey
-import org.orbeon.oxf.cache.ObjectCache
+import org.orbeon.oxf.cache.{CacheKey, ObjectCache}
 import org.orbeon.oxf.xml.dom4j.LocationData
 import org.orbeon.oxf.xml.NamespaceMapping
 import org.orbeon.saxon.Configuration
@@ -72,6 +72,17 @@ object XPathCache {
 
   }
 
+  // Borrow statistics for each cached expression pool, keyed by the cache key's description
+  def expressionPoolStatistics: List[(String, LockFreeObjectPool.PoolStatistics)] = {
+    val cache = ObjectCache.instance(XPathCacheName, XPathCacheDefaultSize)
+    for {
+      key   ← cache.iterateCacheKeys.asScala.toList
+      entry ← Option(cache.findAny(key)).toList
+      if key.isInstanceOf[XPathExpressionCacheKey] && entry.cacheable.isInstanceOf[LockFreeObjectPool[_]]
+    } yield
+      key.toString → entry.cacheable.asInstanceOf[LockFreeObjectPool[_]].statistics
+  }
+
   def isDynamicXPathError(t: Throwable) = t match {
     case e: XPathException if ! e.isStaticError ⇒ true
     case _ ⇒ false
@@ -540,46 +551,32 @@ object XPathCache {
       // Find pool from cache
       val validity = 0L
       val cache = ObjectCache.instance(XPathCacheName, XPathCacheDefaultSize)
-      val cacheKeyString = new StringBuilder(xpathString)
-
-      if (functionLibrary ne null) {// This is ok
-        cacheKeyString.append('|')
-        cacheKeyString.append(functionLibrary.hashCode.toString)
-      }
-      // NOTE: Mike Kay confirms on 2007-07-04 that compilation depends on the namespace context, so we need
-      // to use it as part of the cache key.
-      if (namespaceMapping ne null) {
-        // NOTE: Hash is mandatory in NamespaceMapping
-        cacheKeyString.append('|')
-        cacheKeyString.append(namespaceMapping.hash)
-      }
-
-      // NOTE: Make sure to copy the values in the key set, as the set returned by the map keeps a pointer to the
-      // Map! This can cause the XPath cache to keep a reference to variable values, which in turn can keep a
-      // reference all the way to e.g. an XFormsContainingDocument.
-      val variableNames = Option(variableToValueMap) map (_.keySet.asScala.toList) getOrElse List()
-
-      if (variableNames.nonEmpty) {
-        // There are some variables in scope. They must be part of the key
-        // TODO: Put this in static state as this can be determined statically once and for all
-        for (variableName ← variableNames) {
-          cacheKeyString.append('|')
-          cacheKeyString.append(variableName)
-        }
-      }
-
-      // Add this to the key as evaluating "name" as XPath or as AVT is very different!
-      cacheKeyString.append('|')
-      cacheKeyString.append(isAVT.toString)
 
+      // NOTE: Mike Kay confirms on 2007-07-04 that compilation depends on the namespace context, so the namespace
+      // mapping hash is part of the cache key. Evaluating "name" as XPath or as AVT is very different, so `isAVT` is
+      // also part of the key.
       // TODO: Add baseURI to cache key (currently, baseURI is pretty much unused)
+      val variableNamesOrNull = if (variableToValueMap ne null) variableToValueMap.keySet else null
+
+      val lookupKey =
+        new XPathExpressionCacheKey(
+          xpathString,
+          if (functionLibrary ne null) functionLibrary.hashCode else 0,
+          functionLibrary ne null,
+          if (namespaceMapping ne null) namespaceMapping.hash else null,
+          variableNamesOrNull,
+          isAVT
+        )
 
       val pooledXPathExpression = {
-        val cacheKey = new InternalCacheKey("XPath Expression2", cacheKeyString.toString)
-        var pool = cache.findValid(cacheKey, validity).asInstanceOf[ObjectPool[PooledXPathExpression]]
+        var pool = cache.findValid(lookupKey, validity).asInstanceOf[ObjectPool[PooledXPathExpression]]
         if (pool eq null) {
+          // NOTE: Make sure to copy the variable names, as the set returned by the map keeps a pointer to the Map!
+          // This can cause the XPath cache to keep a reference to variable values, which in turn can keep a
+          // reference all the way to e.g. an XFormsContainingDocument.
+          val variableNames = if (variableNamesOrNull ne null) variableNamesOrNull.asScala.toList else Nil
           pool = createXPathPool(configuration, xpathString, namespaceMapping, variableNames, functionLibrary, baseURI, isAVT, locationData)
-          cache.add(cacheKey, validity, pool)
+          cache.add(lookupKey.withVariableNames(variableNames.asJava), validity, pool)
         }
         // Get object from pool
         pool.borrowObject
@@ -620,7 +617,7 @@ object XPathCache {
         isAVT,
         locationData
       )
-    val pool = new SoftReferenceObjectPool(factory)
+    val pool = new LockFreeObjectPool(factory, LockFreeObjectPool.DefaultCapacity)
     factory.pool = pool
     pool
   }
@@ -713,4 +710,67 @@ object XPathCache {
         throw handleXPathException(t, xpathString, "evaluating XPath expression", locationData)
     } finally
       xpathExpression.returnToPool()
-}
\ No newline at end of file
+
+  // Structured cache key, so that looking up an expression doesn't build a string
+  //
+  // A key is still created for each lookup, and its hash is computed when it is created, including over the variable
+  // names. The hash is then used by the cache lookup and to rule out most unequal keys without comparing fields.
+  //
+  // For lookups, `variableNames` can be the live key set of the variables map. Keys stored in the cache must use a
+  // copy, see `withVariableNames`. Variable names are compared in iteration order.
+  private[util] class XPathExpressionCacheKey(
+    val xpathString         : String,
+    val functionLibraryHash : Int,
+    val hasFunctionLibrary  : Boolean,
+    val namespaceHash       : String,
+    val variableNames       : ju.Collection[String],
+    val isAVT               : Boolean
+  ) extends CacheKey {
+
+    override val hashCode: Int = {
+      var h = xpathString.hashCode
+      h = 31 * h + functionLibraryHash
+      h = 31 * h + (if (namespaceHash ne null) namespaceHash.hashCode else 0)
+      if (variableNames ne null) {
+        val it = variableNames.iterator
+        while (it.hasNext)
+          h = 31 * h + it.next().hashCode
+      }
+      31 * h + (if (isAVT) 1 else 0)
+    }
+
+    override def equals(other: Any): Boolean = other match {
+      case that: XPathExpressionCacheKey ⇒
+        (this eq that) || (
+          hashCode            == that.hashCode            &&
+          isAVT               == that.isAVT               &&
+          hasFunctionLibrary  == that.hasFunctionLibrary  &&
+          functionLibraryHash == that.functionLibraryHash &&
+          xpathString         == that.xpathString         &&
+          namespaceHash       == that.namespaceHash       &&
+          sameVariableNames(that.variableNames)
+        )
+      case _ ⇒ false
+    }
+
+    private def sameVariableNames(otherNames: ju.Collection[String]): Boolean = {
+      val size      = if (variableNames ne null) variableNames.size else 0
+      val otherSize = if (otherNames    ne null) otherNames.size    else 0
+
+      size == otherSize && (size == 0 || {
+        val it1 = variableNames.iterator
+        val it2 = otherNames.iterator
+        var same = true
+        while (same && it1.hasNext)
+          same = it1.next() == it2.next()
+        same
+      })
+    }
+
+    def withVariableNames(names: ju.Collection[String]) =
+      new XPathExpressionCacheKey(xpathString, functionLibraryHash, hasFunctionLibrary, namespaceHash, names, isAVT)
+
+    override def toString =
+      xpathString + (if (variableNames ne null) variableNames.asScala.mkString("|", "|", "") else "") + "|" + isAVT
+  }
+}
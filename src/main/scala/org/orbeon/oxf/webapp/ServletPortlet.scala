@@ -20,6 +20,8 @@ import org.orbeon.exception.OrbeonFormatter
 import org.orbeon.oxf.externalcontext.{WebAppContext, WebAppExternalContext}
 import org.orbeon.oxf.pipeline.InitUtils._
 import org.orbeon.oxf.pipeline.api.{PipelineContext, ProcessorDefinition}
+import org.orbeon.oxf.processor.PipelineProfiler
+import org.orbeon.oxf.processor.transformer.xslt.XSLTWarmUp
 import org.orbeon.oxf.util.CollectionUtils._
 
 import scala.util.control.NonFatal
@@ -50,6 +52,12 @@ trait ServletPortlet {
 
     // Run listener if needed
     processor foreach { case (processorPrefix, inputPrefix) ⇒ runInitDestroyListenerProcessor(_, _) }
+
+    // Compile configured stylesheets in the background
+    XSLTWarmUp.startIfConfigured()
+
+    PipelineProfiler.startIfConfigured()
+
     ProcessorService.Logger.info(logPrefix + " initialized.")
   }
 
@@ -219,4 +219,56 @@ class MemoryCacheTest extends AssertionsForJUnit {
     assert(range === keysAsInts)
     assert(range === values)
   }
-}
\ No newline at end of file
+
+  class MyWeighable(val getApproximateWeight: Long) extends MyCacheable(null) with Weighable
+
+  @Test def testEvictsByWeight(): Unit = {
+    val cache = new MemoryCacheImpl(100, 1000)
+
+    val o1 = new MyWeighable(400)
+    val o2 = new MyWeighable(400)
+    val o3 = new MyWeighable(400)
+
+    cache.add(Key("o1"), VALIDITY, o1)
+    cache.add(Key("o2"), VALIDITY, o2)
+    assert(cache.getCurrentWeight === 800)
+
+    // Adding the third object pushes out the least recently used one
+    cache.add(Key("o3"), VALIDITY, o3)
+
+    assert(o1.wasEvicted)
+    assert(! o2.wasEvicted)
+    assert(cache.getCurrentSize === 2)
+    assert(cache.getCurrentWeight === 800)
+    assert(cache.getEvictionCount === 1)
+
+    // Removing updates the weight
+    cache.remove(Key("o2"))
+    assert(cache.getCurrentWeight === 400)
+  }
+
+  @Test def testKeepsEntryHeavierThanMaxWeight(): Unit = {
+    val cache = new MemoryCacheImpl(100, 1000)
+
+    val o1 = new MyWeighable(100)
+    val o2 = new MyWeighable(5000)
+
+    cache.add(Key("o1"), VALIDITY, o1)
+    cache.add(Key("o2"), VALIDITY, o2)
+
+    assert(o1.wasEvicted)
+    assert(! o2.wasEvicted)
+    assert(cache.getCurrentWeight === 5000)
+  }
+
+  @Test def testNoMaxWeight(): Unit = {
+    val cache = new MemoryCacheImpl(100)
+
+    for (i ← 1 to 10)
+      cache.add(Key("o" + i), VALIDITY, new MyWeighable(Long.MaxValue / 2))
+
+    // Objects are not weighed when there is no maximum weight
+    assert(cache.getCurrentSize === 10)
+    assert(cache.getCurrentWeight === 0)
+  }
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.cache
+
+import java.util.concurrent.locks.{Lock, ReentrantLock}
+
+import org.junit.Test
+import org.scalatest.junit.AssertionsForJUnit
+
+import scala.collection.JavaConverters._
+import scala.concurrent.ExecutionContext.Implicits.global
+import scala.concurrent.duration._
+import scala.concurrent.{Await, Future}
+
+class StripedMemoryCacheTest extends AssertionsForJUnit {
+
+  class MyCacheable(val getEvictionLock: Lock) extends Cacheable {
+
+    var wasEvicted = false
+    var wasRemoved = false
+
+    def evicted(): Unit = { wasEvicted = true }
+    def removed(): Unit = { wasRemoved = true }
+    def added(): Unit = {}
+  }
+
+  case class Key(key: String) extends InternalCacheKey("test", key)
+  val VALIDITY = 0L
+
+  @Test def testSegmentCount(): Unit = {
+    assert(new StripedMemoryCacheImpl(1, 16).getSegmentCount === 1)
+    assert(new StripedMemoryCacheImpl(64, 16).getSegmentCount === 8)
+    assert(new StripedMemoryCacheImpl(5000, 16).getSegmentCount === 16)
+  }
+
+  @Test def testFindAndTake(): Unit = {
+    val cache = new StripedMemoryCacheImpl(1000, 16)
+
+    val objects = 1 to 100 map (i ⇒ Key("o" + i) → new MyCacheable(null))
+
+    for ((key, o) ← objects)
+      cache.add(key, VALIDITY, o)
+
+    assert(cache.getCurrentSize === 100)
+
+    for ((key, o) ← objects)
+      assert(cache.findValid(key, VALIDITY) eq o)
+
+    // Newer validity must not be found
+    assert(cache.findValid(Key("o1"), 1L) eq null)
+
+    val (key1, o1) = objects.head
+    assert(cache.takeValid(key1, VALIDITY) eq o1)
+    assert(o1.wasRemoved)
+    assert(cache.getCurrentSize === 99)
+  }
+
+  @Test def testRemoveAllNotifies(): Unit = {
+    val cache = new StripedMemoryCacheImpl(1000, 16)
+
+    val objects = 1 to 100 map (_ ⇒ new MyCacheable(null))
+    for ((o, i) ← objects.zipWithIndex)
+      cache.add(Key("o" + i), VALIDITY, o)
+
+    assert(cache.removeAll() === 100)
+    assert(objects forall (_.wasRemoved))
+    assert(cache.getCurrentSize === 0)
+  }
+
+  @Test def testBoundedSize(): Unit = {
+    val cache = new StripedMemoryCacheImpl(64, 8)
+
+    for (i ← 1 to 1000)
+      cache.add(Key("o" + i), VALIDITY, new MyCacheable(null))
+
+    assert(cache.getCurrentSize <= 64)
+    assert(cache.iterateCacheKeys.asScala.size === cache.getCurrentSize)
+    assert(cache.iterateCacheObjects.asScala.size === cache.getCurrentSize)
+  }
+
+  @Test def testSegmentSizesAddUpToMaxSize(): Unit = {
+    // 8 segments, which don't divide the size evenly
+    val cache = new StripedMemoryCacheImpl(100, 8)
+
+    def fill(): Unit =
+      for (i ← 1 to 10000)
+        cache.add(Key("o" + i), VALIDITY, new MyCacheable(null))
+
+    fill()
+    assert(cache.getCurrentSize === 100)
+
+    cache.setMaxSize(50)
+    fill()
+    assert(cache.getCurrentSize === 50)
+  }
+
+  @Test def testReduceSizeWithLock(): Unit = {
+    val cache = new StripedMemoryCacheImpl(1, 16)
+    val lock = new ReentrantLock
+
+    val o1 = new MyCacheable(lock)
+    cache.add(Key("o1"), VALIDITY, o1)
+
+    // Reduce size in other thread
+    lock.lock()
+    Await.ready(Future(cache.setMaxSize(0)), Duration.Inf)
+    lock.unlock()
+
+    assert(!o1.wasEvicted)
+    assert(!o1.wasRemoved)
+    assert(cache.getCurrentSize === 1)
+
+    cache.setMaxSize(1)
+    cache.setMaxSize(0)
+
+    assert(o1.wasEvicted)
+    assert(cache.getCurrentSize === 0)
+  }
+
+  @Test def testConcurrentAccess(): Unit = {
+    val cache = new StripedMemoryCacheImpl(256, 16)
+
+    val futures =
+      for (t ← 1 to 8)
+        yield Future {
+          for (i ← 1 to 10000) {
+            val key = Key("o" + (i % 512))
+            if (cache.findValid(key, VALIDITY) eq null)
+              cache.add(key, VALIDITY, new MyCacheable(null))
+          }
+        }
+
+    Await.result(Future.sequence(futures), Duration.Inf)
+
+    assert(cache.getCurrentSize <= 256)
+  }
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.controller
+
+import org.junit.Test
+import org.orbeon.oxf.processor.RegexpMatcher
+import org.orbeon.oxf.processor.RegexpMatcher.MatchResult
+import org.scalatest.junit.AssertionsForJUnit
+
+class RouteIndexTest extends AssertionsForJUnit {
+
+  import RouteIndexTest._
+
+  @Test def literalPrefixes(): Unit = {
+
+    val expected = List(
+      "/fr/service/publish"                  → Some("/fr/service/publish" → true),
+      "/fr/service/([^/^.]+)/reindex"        → Some("/fr/service/"        → false),
+      "/fr/?"                                → Some("/fr"                 → false),
+      "/fr/page\\.html"                      → Some("/fr/page.html"       → true),
+      "/fr/\\d+"                             → Some("/fr/"                → false),
+      "/fr/a+b"                              → Some("/fr/"                → false),
+      "/fr/(new|edit)"                       → Some("/fr/"                → false),
+      "^/fr/.*"                              → Some(""                    → false),
+      "/fr/[a|b]"                            → Some("/fr/"                → false),
+      "/fr/a|/other"                         → None,
+      "(?i)/fr/.*"                           → Some(""                    → false)
+    )
+
+    for ((regexp, result) ← expected)
+      assert(RouteIndex.literalPrefix(regexp) === result, regexp)
+  }
+
+  @Test def sameResultAsLinearScan(): Unit = {
+
+    val index = new RouteIndex(Routes map (regexp ⇒ RegexpMatcher.compilePattern(regexp) → regexp))
+
+    for (path ← Paths) {
+      val expected = Routes map (regexp ⇒ regexp → MatchResult(RegexpMatcher.compilePattern(regexp), path)) find (_._2.matches)
+      assert(index.findFirst(path) === expected, path)
+    }
+  }
+
+  @Test def globs(): Unit = {
+
+    val globs = List("/ops/*.js", "/*.png", "/apps/*/page", "*")
+    val index = new RouteIndex(globs map (glob ⇒ RegexpMatcher.compilePattern(glob, glob = true) → glob))
+
+    assert(index.findFirst("/ops/a.js")    map (_._1) contains "/ops/*.js")
+    assert(index.findFirst("/ops/a.css")   map (_._1) contains "*")
+    assert(index.findFirst("/b.png")       map (_._1) contains "/*.png")
+    assert(index.findFirst("/apps/x/page") map (_._1) contains "/apps/*/page")
+  }
+}
+
+object RouteIndexTest {
+
+  // Excerpt of the Form Runner page flow, followed by other routes
+  val Routes = List(
+    "/fr/service/persistence/.*",
+    "/fr/service/exist/crud/([^/]+/[^/]+/(form/[^/]+|data/([^/]+/[^/]+)?))",
+    "/fr/service/exist/search/([^/^.]+)/([^/^.]+)",
+    "/fr/service/(oracle|mysql|postgresql|db2|sqlserver)/crud/([^/]+/[^/]+/(form/[^/]+|(data|draft)/([^/]+/[^/]+)?))",
+    "/fr/service/(oracle|mysql|postgresql|db2|sqlserver)/search/([^/^.]+)/([^/^.]+)",
+    "/fr/service/([^/]+)/reindex",
+    "/fr/service/custom/([^/^.]+)/([^/^.]+)",
+    "/fr/service/([^/^.]+)/([^/^.]+)/(pdf|tiff)(/([^/^.]+))?",
+    "/fr/service/save-locally/serve",
+    "/fr/service/([^/^.]+)/([^/^.]+)/(new|edit)(/([^/^.]+))?",
+    "/fr/service/publish",
+    "/fr/?",
+    "/fr/([^/^.]+)/([^/^.]+)(/summary)",
+    "/fr/([^/^.]+)/([^/^.]+)/(new|edit|view)(/([^/^.]+))?",
+    "/fr/login",
+    "/xforms-server(/.*)?",
+    "/ops/.*\\.(js|css|png|gif)",
+    "/fr/a|/fr/b",
+    "/.*\\.(png|gif|ico)",
+    ".*"
+  )
+
+  val Paths = List(
+    "/fr/service/persistence/crud/acme/order/data/1/data.xml",
+    "/fr/service/exist/search/acme/order",
+    "/fr/service/mysql/crud/acme/order/form/form.xhtml",
+    "/fr/service/acme/reindex",
+    "/fr/service/custom/acme/order",
+    "/fr/service/acme/order/pdf/123",
+    "/fr/service/save-locally/serve",
+    "/fr/service/publish",
+    "/fr",
+    "/fr/",
+    "/fr/acme/order/summary",
+    "/fr/acme/order/edit/123",
+    "/fr/login",
+    "/fr/a",
+    "/fr/b",
+    "/xforms-server",
+    "/xforms-server/dynamic/abc",
+    "/ops/javascript/orbeon.js",
+    "/images/logo.png",
+    "/other",
+    ""
+  )
+}
+
+// Compare the route index with a linear scan over the routes. Run with:
+//
+//   RouteIndexBenchmark [iterations]
+object RouteIndexBenchmark {
+
+  import RouteIndexTest._
+
+  def main(args: Array[String]): Unit = {
+
+    val iterations = args.headOption map (_.toInt) getOrElse 200000
+
+    val patterns = Routes map (regexp ⇒ RegexpMatcher.compilePattern(regexp))
+    val index    = new RouteIndex(patterns zip Routes)
+
+    def linearScan(path: String) =
+      patterns.iterator map (pattern ⇒ pattern → MatchResult(pattern, path)) find (_._2.matches)
+
+    def time(name: String)(body: String ⇒ Any): Unit = {
+      // Warm up
+      for (_ ← 1 to iterations / 10; path ← Paths) body(path)
+      val start = System.nanoTime
+      for (_ ← 1 to iterations; path ← Paths) body(path)
+      println(f"$name%-12s ${(System.nanoTime - start).toDouble / iterations / Paths.size}%8.1f ns/path")
+    }
+
+    time("linear scan")(linearScan)
+    time("route index")(index.findFirst)
+  }
+}
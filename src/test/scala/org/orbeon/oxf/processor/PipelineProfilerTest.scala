@@ -0,0 +1,60 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.processor
+
+import org.junit.Test
+import org.orbeon.oxf.xml.SAXStore
+import org.scalatest.junit.AssertionsForJUnit
+
+class PipelineProfilerTest extends AssertionsForJUnit {
+
+  @Test def selfTimeExcludesNestedReads(): Unit = {
+
+    val outer = new ProcessorStats("outer", null)
+    val inner = new ProcessorStats("inner", null)
+
+    val outerReceiver = new ProfilingXMLReceiver(new SAXStore)
+    val innerReceiver = new ProfilingXMLReceiver(new SAXStore)
+
+    PipelineProfiler.enter()
+    Thread.sleep(5)
+    PipelineProfiler.enter()
+    innerReceiver.startDocument()
+    innerReceiver.characters("abc".toCharArray, 0, 3)
+    innerReceiver.endDocument()
+    Thread.sleep(20)
+    PipelineProfiler.exitRead(inner, innerReceiver)
+    PipelineProfiler.exitRead(outer, outerReceiver)
+
+    assert(inner.reads.get === 1)
+    assert(inner.events.get === 1)
+    assert(inner.characters.get === 3)
+    assert(inner.readSelfNanos.get === inner.readNanos.get)
+
+    assert(outer.readNanos.get >= inner.readNanos.get)
+    assert(outer.readSelfNanos.get === outer.readNanos.get - inner.readNanos.get)
+  }
+
+  @Test def cacheHitRatio(): Unit = {
+    val stats = new ProcessorStats("processor", "file.xpl:1:1")
+    assert(stats.cacheHitRatio === 0.0)
+
+    stats.cacheHits.addAndGet(3)
+    stats.cacheMisses.incrementAndGet()
+    assert(stats.cacheHitRatio === 0.75)
+
+    stats.reset()
+    assert(stats.toString contains "cache-hits=0")
+  }
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.processor.generator
+
+import org.junit.Test
+import org.orbeon.oxf.util.DateUtils
+import org.orbeon.oxf.xml.SAXStore
+import org.scalatest.junit.AssertionsForJUnit
+
+class HttpResponseCacheTest extends AssertionsForJUnit {
+
+  val Now = 1000000000000L
+
+  def document(textLength: Int) = {
+    val store = new SAXStore
+    store.startDocument()
+    store.characters(Array.fill(textLength)('x'), 0, textLength)
+    store.endDocument()
+    store
+  }
+
+  def entry(headers: Map[String, List[String]], textLength: Int = 10) =
+    HttpResponseCache.createEntry(document(textLength), "application/xml", null, headers, Now)
+
+  @Test def cacheControlParsing(): Unit = {
+    val directives =
+      HttpResponseCache.cacheControl(
+        Map("cache-control" → List("""Public, max-age=60""", """stale-while-revalidate="30""""))
+      )
+
+    assert(directives === Map("public" → None, "max-age" → Some("60"), "stale-while-revalidate" → Some("30")))
+  }
+
+  @Test def storableResponses(): Unit = {
+
+    val etag = "ETag" → List("\"v1\"")
+
+    assert(  HttpResponseCache.isStorable(200, Map(etag), authenticatedRequest = false))
+    assert(  HttpResponseCache.isStorable(200, Map("Cache-Control" → List("max-age=60")), authenticatedRequest = false))
+    assert(! HttpResponseCache.isStorable(200, Map.empty, authenticatedRequest = false))
+    assert(! HttpResponseCache.isStorable(404, Map(etag), authenticatedRequest = false))
+    assert(! HttpResponseCache.isStorable(200, Map(etag, "Cache-Control" → List("no-store")), authenticatedRequest = false))
+    assert(! HttpResponseCache.isStorable(200, Map(etag, "Cache-Control" → List("private")), authenticatedRequest = false))
+    assert(! HttpResponseCache.isStorable(200, Map(etag, "Set-Cookie" → List("a=b")), authenticatedRequest = false))
+    assert(! HttpResponseCache.isStorable(200, Map(etag, "Vary" → List("Accept-Language")), authenticatedRequest = false))
+    assert(  HttpResponseCache.isStorable(200, Map(etag, "Vary" → List("Accept-Encoding")), authenticatedRequest = false))
+    assert(! HttpResponseCache.isStorable(200, Map(etag), authenticatedRequest = true))
+    assert(  HttpResponseCache.isStorable(200, Map(etag, "Cache-Control" → List("public")), authenticatedRequest = true))
+  }
+
+  @Test def freshnessLifetime(): Unit = {
+
+    def freshness(headers: (String, List[String])*) = HttpResponseCache.freshness(headers.toMap, Now)
+
+    assert(freshness("Cache-Control" → List("max-age=60"))                         === (Now + 60000, Now + 60000))
+    assert(freshness("Cache-Control" → List("max-age=60, s-maxage=10"))            === (Now + 10000, Now + 10000))
+    assert(freshness("Cache-Control" → List("max-age=60"), "Age" → List("20"))     === (Now + 40000, Now + 40000))
+    assert(freshness("Cache-Control" → List("max-age=60, stale-while-revalidate=30")) === (Now + 60000, Now + 90000))
+    assert(freshness("Cache-Control" → List("max-age=60, stale-while-revalidate=30, must-revalidate")) === (Now + 60000, Now + 60000))
+    assert(freshness("Cache-Control" → List("no-cache, max-age=60"))               === (Now, Now))
+
+    // `Expires` is relative to the server's date
+    val serverDate = Now - 3600 * 1000
+    assert(
+      freshness(
+        "Date"    → List(DateUtils.RFC1123Date.print(serverDate)),
+        "Expires" → List(DateUtils.RFC1123Date.print(serverDate + 120 * 1000))
+      ) === (Now + 120000, Now + 120000)
+    )
+  }
+
+  @Test def revalidation(): Unit = {
+
+    val cache = new HttpResponseCache(1024 * 1024)
+    val first = entry(Map("Cache-Control" → List("max-age=60, stale-while-revalidate=30"), "ETag" → List("\"v1\"")))
+
+    cache.put("key", first)
+
+    // Fresh
+    assert(cache.lookup("key", Now + 1000) === HttpResponseCache.Lookup(first, mustRevalidate = false))
+
+    // Stale: the first caller revalidates, the others use the stale document in the meanwhile
+    assert(cache.lookup("key", Now + 70000) === HttpResponseCache.Lookup(first, mustRevalidate = true))
+    assert(cache.lookup("key", Now + 71000) === HttpResponseCache.Lookup(first, mustRevalidate = false))
+
+    // Past the `stale-while-revalidate` window, callers revalidate
+    assert(cache.lookup("key", Now + 95000).mustRevalidate)
+
+    assert(first.conditionalHeaders.get("If-None-Match").toList === List("\"v1\""))
+
+    // A 304 response keeps the document and makes it fresh again
+    val refreshed = cache.revalidated("key", first, Map("Cache-Control" → List("max-age=60")), Now + 100000)
+    assert(refreshed.document eq first.document)
+    assert(refreshed.etag === Some("\"v1\""))
+    assert(cache.lookup("key", Now + 110000) === HttpResponseCache.Lookup(refreshed, mustRevalidate = false))
+
+    // After a failed revalidation, the next caller revalidates again
+    assert(cache.lookup("key", Now + 170000).mustRevalidate)
+    cache.endRevalidation("key")
+    assert(cache.lookup("key", Now + 170000).mustRevalidate)
+
+    // Stale entries without a validator are dropped
+    cache.put("other", entry(Map("Cache-Control" → List("max-age=60"))))
+    assert(cache.lookup("other", Now + 70000) === null)
+    assert(cache.getCurrentSize === 1)
+  }
+
+  @Test def evictionBySize(): Unit = {
+
+    val headers = Map("Cache-Control" → List("max-age=60"))
+    val weight  = entry(headers, textLength = 1000).weight
+
+    val cache = new HttpResponseCache(weight * 3)
+
+    for (key ← List("a", "b", "c"))
+      assert(cache.put(key, entry(headers, textLength = 1000)))
+
+    // Use "a", so that "b" is the least recently used entry
+    assert(cache.lookup("a", Now) ne null)
+    assert(cache.put("d", entry(headers, textLength = 1000)))
+
+    assert(cache.lookup("b", Now) === null)
+    assert(List("a", "c", "d") forall (cache.lookup(_, Now) ne null))
+    assert(cache.getEvictionCount === 1)
+    assert(cache.getUsedBytes === weight * 3)
+
+    // Documents larger than the whole cache are not stored
+    assert(! cache.put("e", entry(headers, textLength = 10000)))
+  }
+}
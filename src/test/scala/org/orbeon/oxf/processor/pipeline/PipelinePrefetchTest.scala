@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.processor.pipeline
+
+import java.util.concurrent.Callable
+
+import org.orbeon.oxf.externalcontext.ExternalContext
+import org.orbeon.oxf.pipeline.api.PipelineContext
+import org.orbeon.oxf.processor.{ProcessorImpl, ProcessorOutput}
+import org.orbeon.oxf.test.{PipelineSupport, ResourceManagerSupport}
+import org.orbeon.oxf.util.PipelineUtils
+import org.orbeon.oxf.xml.dom4j.Dom4jUtils
+import org.orbeon.oxf.xml.{SAXStore, TransformerUtils}
+import org.scalatest.FunSpecLike
+
+import scala.collection.JavaConverters._
+
+class PipelinePrefetchTest extends ResourceManagerSupport with FunSpecLike {
+
+  val Url = PipelineSupport.DefaultRequestUrl
+
+  def withPipelineContext[T](body: PipelineContext ⇒ T): T = {
+    val pipelineContext = PipelineSupport.createPipelineContextWithExternalContext()
+    try
+      body(pipelineContext)
+    finally
+      pipelineContext.destroy(true)
+  }
+
+  def newOutput = PipelineUtils.createURLGenerator(Url).createOutput(ProcessorImpl.OUTPUT_DATA)
+
+  def toXML(saxStore: SAXStore) = Dom4jUtils.domToString(TransformerUtils.saxStoreToDom4jDocument(saxStore))
+
+  describe("Reading an output ahead of time") {
+
+    it("must produce the same document, key and validity as a sequential read") {
+      withPipelineContext { pipelineContext ⇒
+
+        val sequentialOutput = newOutput
+        val sequentialKey      = sequentialOutput.getKey(pipelineContext)
+        val sequentialValidity = sequentialOutput.getValidity(pipelineContext)
+        val sequentialDocument = new SAXStore
+        sequentialOutput.read(pipelineContext, sequentialDocument)
+
+        val prefetchedOutput = newOutput
+        val future           = PipelinePrefetch.start(pipelineContext, List(prefetchedOutput).asJava).get(prefetchedOutput)
+
+        // Wait for the read to complete, as it would otherwise be taken over if it hasn't started
+        future.get()
+        val result = PipelinePrefetch.get(future)
+
+        assert(toXML(result.document) === toXML(sequentialDocument))
+        assert(result.key             === sequentialKey)
+        assert(result.validity        === sequentialValidity)
+      }
+    }
+
+    it("must not use the request from other threads") {
+      withPipelineContext { pipelineContext ⇒
+
+        val externalContext = pipelineContext.getAttribute(PipelineContext.EXTERNAL_CONTEXT).asInstanceOf[ExternalContext]
+        val request         = externalContext.getRequest
+        val copy            = PipelinePrefetch.copyExternalContext(externalContext)
+
+        assert(copy.getRequest ne request)
+        assert(copy.getRequest.getHeaderValuesMap.asScala.mapValues(_.toList) === request.getHeaderValuesMap.asScala.mapValues(_.toList))
+        assert(copy.getRequest.credentials === request.credentials)
+
+        // Attributes set by a read only reach the request through the result
+        copy.getRequest.getAttributesMap.put("prefetch-test", "value")
+        assert(! request.getAttributesMap.containsKey("prefetch-test"))
+      }
+    }
+
+    it("must wait for reads when cancelled") {
+      withPipelineContext { pipelineContext ⇒
+
+        val outputs = List.fill(3)(newOutput)
+        val futures = PipelinePrefetch.start(pipelineContext, outputs.asJava)
+
+        PipelinePrefetch.cancel(futures)
+
+        assert(futures.values.asScala forall (_.isDone))
+      }
+    }
+
+    it("must let the pipeline read outputs whose read hasn't started") {
+
+      var reads = 0
+      val task =
+        new PipelinePrefetch.ReadTask(new Callable[PipelinePrefetch.Result] {
+          def call() = { reads += 1; null }
+        })
+
+      // Queued behind other reads
+      assert(PipelinePrefetch.get(task) eq null)
+      assert(task.isCancelled)
+
+      // And not read when the pool gets to it
+      task.run()
+      assert(reads === 0)
+
+      PipelinePrefetch.cancel(Map[ProcessorOutput, java.util.concurrent.Future[PipelinePrefetch.Result]](newOutput → task).asJava)
+    }
+  }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.processor.pipeline
+
+import org.orbeon.oxf.test.ResourceManagerSupport
+import org.orbeon.oxf.xml.dom4j.Dom4jUtils
+import org.orbeon.oxf.xml.{SAXStore, TransformerUtils}
+import org.scalatest.FunSpecLike
+
+class TeeProcessorTest extends ResourceManagerSupport with FunSpecLike {
+
+  def toXML(saxStore: SAXStore) = Dom4jUtils.domToString(TransformerUtils.saxStoreToDom4jDocument(saxStore))
+
+  describe("Replaying a spilled recording") {
+
+    val input =
+      TransformerUtils.dom4jToSAXStore(
+        Dom4jUtils.readDom4j(
+          """<root xmlns:foo="http://example.org/foo">
+            |  <foo:a b="c">text</foo:a>
+            |  <!-- comment -->
+            |  <d/>
+            |</root>""".stripMargin
+        ),
+        false
+      )
+
+    val size = input.getApproximateSize
+
+    it("must replay the input and account for the recording only while it is replayed") {
+
+      val bufferedBytesBefore = TeeProcessor.getBufferedBytes
+      var bufferedBytesDuring = 0L
+
+      val output = new SAXStore {
+        override def endDocument(): Unit = {
+          bufferedBytesDuring = TeeProcessor.getBufferedBytes
+          super.endDocument()
+        }
+      }
+
+      val fileItem = TeeProcessor.spillStore(input)
+      try
+        TeeProcessor.replaySpilledStore(fileItem, size, output)
+      finally
+        fileItem.delete()
+
+      assert(toXML(output)                 === toXML(input))
+      assert(bufferedBytesDuring           >=  bufferedBytesBefore + size)
+      assert(TeeProcessor.getBufferedBytes === bufferedBytesBefore)
+    }
+
+    it("must release the accounting when the replay fails") {
+
+      val bufferedBytesBefore = TeeProcessor.getBufferedBytes
+
+      val failing = new SAXStore {
+        override def endDocument(): Unit = throw new IllegalStateException
+      }
+
+      val fileItem = TeeProcessor.spillStore(input)
+      try
+        intercept[IllegalStateException] {
+          TeeProcessor.replaySpilledStore(fileItem, size, failing)
+        }
+      finally
+        fileItem.delete()
+
+      assert(TeeProcessor.getBufferedBytes === bufferedBytesBefore)
+    }
+  }
+}
@@ -0,0 +1,83 @@
+/**
+  * Copyright (C) 2017 Orbeon, Inc.
+  *
+  * This program is free software; you can redistribute it and/or modify it under the terms of the
+  * GNU Lesser General Public License as published by the Free Software Foundation; either version
+  * 2.1 of the License, or (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+  * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+  * See the GNU Lesser General Public License for more details.
+  *
+  * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+  */
+package org.orbeon.oxf.resources
+
+import java.io.{File, FileWriter}
+import java.nio.file.Files
+
+import org.junit.Test
+import org.scalatest.junit.AssertionsForJUnit
+
+class FileChangeWatcherTest extends AssertionsForJUnit {
+
+  // Some platforms poll the filesystem instead of receiving native notifications
+  val MaxWaitMillis = 30 * 1000
+
+  def write(file: File, content: String): Unit = {
+    val writer = new FileWriter(file)
+    try writer.write(content) finally writer.close()
+  }
+
+  def waitFor(condition: ⇒ Boolean): Boolean = {
+    val end = System.currentTimeMillis + MaxWaitMillis
+    while (! condition && System.currentTimeMillis < end)
+      Thread.sleep(20)
+    condition
+  }
+
+  @Test def trackChanges(): Unit = {
+
+    val directory = Files.createTempDirectory("orbeon-watcher").toFile
+    val watcher   = new FileChangeWatcher("test")
+
+    try {
+      val file = new File(directory, "a.xml")
+
+      // Missing file in an existing directory
+      assert(watcher.lastModified(file) === -1L)
+
+      // Creation
+      write(file, "<a/>")
+      assert(waitFor(watcher.lastModified(file) == file.lastModified))
+
+      // Modification
+      val modified = file.lastModified - 10000
+      write(file, "<b/>")
+      file.setLastModified(modified)
+      assert(waitFor(watcher.lastModified(file) == modified))
+
+      // Deletion
+      file.delete()
+      assert(waitFor(watcher.lastModified(file) == -1L))
+
+      // Files in missing directories can't be watched
+      assert(watcher.lastModified(new File(new File(directory, "missing"), "b.xml")) eq null)
+    } finally {
+      watcher.close()
+      directory.listFiles foreach (_.delete())
+      directory.delete()
+    }
+  }
+
+  @Test def frozenExpirationMap(): Unit = {
+    val map = new ExpirationMap(ExpirationMap.NEVER_EXPIRE)
+    map.put(0L, "key", "value")
+    assert(map.get(Long.MaxValue, "key") === "value")
+
+    val expiring = new ExpirationMap(1000)
+    expiring.put(0L, "key", "value")
+    assert(expiring.get(500L, "key") === "value")
+    assert(expiring.get(2000L, "key") eq null)
+  }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.util
+
+import java.util.concurrent.atomic.AtomicInteger
+
+import org.apache.commons.pool.BasePoolableObjectFactory
+import org.junit.Test
+import org.scalatest.junit.AssertionsForJUnit
+
+import scala.concurrent.ExecutionContext.Implicits.global
+import scala.concurrent.duration.Duration
+import scala.concurrent.{Await, Future}
+
+class LockFreeObjectPoolTest extends AssertionsForJUnit {
+
+  class Counter {
+    val created   = new AtomicInteger
+    val destroyed = new AtomicInteger
+  }
+
+  def newPool(capacity: Int) = {
+    val counter = new Counter
+    val pool =
+      new LockFreeObjectPool(
+        new BasePoolableObjectFactory[AnyRef] {
+          def makeObject() = { counter.created.incrementAndGet(); new AnyRef }
+          override def destroyObject(o: AnyRef): Unit = counter.destroyed.incrementAndGet()
+        },
+        capacity
+      )
+    (pool, counter)
+  }
+
+  @Test def reusesReturnedObjects(): Unit = {
+    val (pool, counter) = newPool(2)
+
+    val o1 = pool.borrowObject()
+    pool.returnObject(o1)
+    val o2 = pool.borrowObject()
+
+    assert(o1 eq o2)
+    assert(counter.created.get === 1)
+    assert(pool.statistics === LockFreeObjectPool.PoolStatistics(hits = 1, misses = 1, creations = 1, discards = 0, idle = 0))
+  }
+
+  @Test def discardsWhenFull(): Unit = {
+    val (pool, counter) = newPool(2)
+
+    val borrowed = List.fill(3)(pool.borrowObject())
+    borrowed foreach pool.returnObject
+
+    assert(counter.created.get === 3)
+    assert(counter.destroyed.get === 1)
+    assert(pool.getNumIdle === 2)
+    assert(pool.statistics.discards === 1)
+
+    pool.close()
+    assert(counter.destroyed.get === 3)
+    assert(pool.getNumIdle === 0)
+  }
+
+  @Test def neverHandsOutSameObjectTwice(): Unit = {
+    val (pool, _) = newPool(4)
+    val inUse = java.util.Collections.newSetFromMap(new java.util.concurrent.ConcurrentHashMap[AnyRef, java.lang.Boolean])
+
+    val futures =
+      for (_ ← 1 to 8)
+        yield Future {
+          for (_ ← 1 to 10000) {
+            val o = pool.borrowObject()
+            assert(inUse.add(o))
+            assert(inUse.remove(o))
+            pool.returnObject(o)
+          }
+        }
+
+    Await.result(Future.sequence(futures), Duration.Inf)
+
+    val statistics = pool.statistics
+    assert(statistics.hits + statistics.misses === 80000)
+  }
+}
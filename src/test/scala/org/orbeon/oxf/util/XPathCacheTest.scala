@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.util
+
+import java.{util ⇒ ju}
+
+import org.junit.Test
+import org.orbeon.oxf.util.XPathCache.XPathExpressionCacheKey
+import org.scalatest.junit.AssertionsForJUnit
+
+import scala.collection.JavaConverters._
+
+class XPathCacheTest extends AssertionsForJUnit {
+
+  def key(
+    xpathString   : String                = "instance()/name",
+    namespaceHash : String                = "ns-hash",
+    variableNames : ju.Collection[String] = List("a", "b").asJava,
+    isAVT         : Boolean               = false
+  ) =
+    new XPathExpressionCacheKey(xpathString, 42, hasFunctionLibrary = true, namespaceHash, variableNames, isAVT)
+
+  def assertHit(key1: XPathExpressionCacheKey, key2: XPathExpressionCacheKey): Unit = {
+    assert(key1          === key2)
+    assert(key1.hashCode === key2.hashCode)
+  }
+
+  @Test def equalKeysHit(): Unit = {
+
+    assertHit(key(), key())
+    assertHit(key(variableNames = null), key(variableNames = ju.Collections.emptyList[String]))
+
+    // The key used for the lookup reads the live key set of the variables, while the stored key has a copy
+    val variables = new ju.LinkedHashMap[String, AnyRef]
+    variables.put("a", "1")
+    variables.put("b", "2")
+
+    val lookupKey = key(variableNames = variables.keySet)
+    val storedKey = lookupKey.withVariableNames(variables.keySet.asScala.toList.asJava)
+
+    assertHit(lookupKey, storedKey)
+  }
+
+  @Test def differentKeysMiss(): Unit = {
+    assert(key() !== key(xpathString   = "instance()/other"))
+    assert(key() !== key(namespaceHash = "other-ns-hash"))
+    assert(key() !== key(namespaceHash = null))
+    assert(key() !== key(variableNames = List("a").asJava))
+    assert(key() !== key(variableNames = List("a", "c").asJava))
+    assert(key() !== key(variableNames = List("b", "a").asJava))
+    assert(key() !== key(variableNames = null))
+    assert(key() !== key(isAVT         = true))
+  }
+}
@@ -76,6 +76,7 @@ public class XFormsProperties {
     public static final String EXPOSE_XPATH_TYPES_PROPERTY = "expose-xpath-types";
     public static final String AJAX_UPDATE_FULL_THRESHOLD = "ajax.update.full.threshold";
     public static final String NO_UPDATES = "no-updates";
+    public static final String INITIAL_RESPONSE_CACHE_PROPERTY = "initial-response-cache";
 
     public static final String TYPE_OUTPUT_FORMAT_PROPERTY_PREFIX = "format.output.";
     public static final String TYPE_INPUT_FORMAT_PROPERTY_PREFIX = "format.input.";
@@ -256,6 +257,7 @@ public class XFormsProperties {
             new PropertyDefinition(ASYNC_SUBMISSION_POLL_DELAY                   , 10 * 1000,                      false),
             new PropertyDefinition(AJAX_UPDATE_FULL_THRESHOLD                    , 20,                             false),
             new PropertyDefinition(NO_UPDATES                                    , false,                          false),
+            new PropertyDefinition(INITIAL_RESPONSE_CACHE_PROPERTY               , false,                          false),
             new PropertyDefinition(XFORMS11_SWITCH_PROPERTY                      , false,                          false),
             new PropertyDefinition(XPATH_ANALYSIS_PROPERTY                       , false,                          false),
             new PropertyDefinition(CALCULATE_ANALYSIS_PROPERTY                   , false,                          false),
@@ -312,6 +314,30 @@ public class XFormsProperties {
     public static final String REPLICATION_PROPERTY = XFORMS_PROPERTY_PREFIX + "replication";
     public static final boolean REPLICATION_PROPERTY_DEFAULT = false;
 
+    public static final String STATE_DELTA_THRESHOLD_PROPERTY = XFORMS_PROPERTY_PREFIX + "state.delta-threshold";
+    public static final int STATE_DELTA_THRESHOLD_DEFAULT = 50;
+
+    public static final String STATE_OFF_HEAP_SIZE_PROPERTY = XFORMS_PROPERTY_PREFIX + "state.off-heap.size-mb";
+    public static final int STATE_OFF_HEAP_SIZE_DEFAULT = 0;
+
+    public static final String STATE_OFF_HEAP_MAPPED_FILE_PROPERTY = XFORMS_PROPERTY_PREFIX + "state.off-heap.mapped-file";
+    public static final boolean STATE_OFF_HEAP_MAPPED_FILE_DEFAULT = false;
+
+    public static final String ASYNC_SUBMISSION_MAX_THREADS_PROPERTY = XFORMS_PROPERTY_PREFIX + "submission.asynchronous.max-threads";
+    public static final int ASYNC_SUBMISSION_MAX_THREADS_DEFAULT = 16;
+
+    public static final String ASYNC_SUBMISSION_QUEUE_SIZE_PROPERTY = XFORMS_PROPERTY_PREFIX + "submission.asynchronous.queue-size";
+    public static final int ASYNC_SUBMISSION_QUEUE_SIZE_DEFAULT = 100;
+
+    public static final String ASYNC_SUBMISSION_REJECTION_POLICY_PROPERTY = XFORMS_PROPERTY_PREFIX + "submission.asynchronous.rejection-policy";
+    public static final String ASYNC_SUBMISSION_REJECTION_POLICY_DEFAULT = "caller-runs";
+
+    public static final String ASYNC_SUBMISSION_MAX_PER_DOCUMENT_PROPERTY = XFORMS_PROPERTY_PREFIX + "submission.asynchronous.max-per-document";
+    public static final int ASYNC_SUBMISSION_MAX_PER_DOCUMENT_DEFAULT = 4;
+
+    public static final String ASYNC_SUBMISSION_VIRTUAL_THREADS_PROPERTY = XFORMS_PROPERTY_PREFIX + "submission.asynchronous.virtual-threads";
+    public static final boolean ASYNC_SUBMISSION_VIRTUAL_THREADS_DEFAULT = false;
+
     public static final String DEBUG_LOGGING_PROPERTY = XFORMS_PROPERTY_PREFIX + "logging.debug";
     public static final String ERROR_LOGGING_PROPERTY = XFORMS_PROPERTY_PREFIX + "logging.error";
 
@@ -389,6 +415,50 @@ public class XFormsProperties {
                 (REPLICATION_PROPERTY, REPLICATION_PROPERTY_DEFAULT);
     }
 
+    // Maximum size of a dynamic state delta, as a percentage of the size of the full instances and controls
+    public static int getStateDeltaThreshold() {
+        return Properties.instance().getPropertySet().getInteger
+                (STATE_DELTA_THRESHOLD_PROPERTY, STATE_DELTA_THRESHOLD_DEFAULT);
+    }
+
+    // Size of the off-heap tier for serialized state, in megabytes, or 0 if disabled
+    public static int getStateOffHeapSizeMB() {
+        return Properties.instance().getPropertySet().getInteger
+                (STATE_OFF_HEAP_SIZE_PROPERTY, STATE_OFF_HEAP_SIZE_DEFAULT);
+    }
+
+    public static boolean isStateOffHeapMappedFile() {
+        return Properties.instance().getPropertySet().getBoolean
+                (STATE_OFF_HEAP_MAPPED_FILE_PROPERTY, STATE_OFF_HEAP_MAPPED_FILE_DEFAULT);
+    }
+
+    public static int getAsynchronousSubmissionMaxThreads() {
+        return Properties.instance().getPropertySet().getInteger
+                (ASYNC_SUBMISSION_MAX_THREADS_PROPERTY, ASYNC_SUBMISSION_MAX_THREADS_DEFAULT);
+    }
+
+    public static int getAsynchronousSubmissionQueueSize() {
+        return Properties.instance().getPropertySet().getInteger
+                (ASYNC_SUBMISSION_QUEUE_SIZE_PROPERTY, ASYNC_SUBMISSION_QUEUE_SIZE_DEFAULT);
+    }
+
+    // Either "caller-runs" or "abort"
+    public static String getAsynchronousSubmissionRejectionPolicy() {
+        return Properties.instance().getPropertySet().getString
+                (ASYNC_SUBMISSION_REJECTION_POLICY_PROPERTY, ASYNC_SUBMISSION_REJECTION_POLICY_DEFAULT);
+    }
+
+    // Maximum number of running asynchronous submissions per document, or 0 if there is no limit
+    public static int getAsynchronousSubmissionMaxPerDocument() {
+        return Properties.instance().getPropertySet().getInteger
+                (ASYNC_SUBMISSION_MAX_PER_DOCUMENT_PROPERTY, ASYNC_SUBMISSION_MAX_PER_DOCUMENT_DEFAULT);
+    }
+
+    public static boolean isAsynchronousSubmissionVirtualThreads() {
+        return Properties.instance().getPropertySet().getBoolean
+                (ASYNC_SUBMISSION_VIRTUAL_THREADS_PROPERTY, ASYNC_SUBMISSION_VIRTUAL_THREADS_DEFAULT);
+    }
+
     public static boolean getDebugLogXPathAnalysis() {
         return Properties.instance().getPropertySet().getBoolean(DEBUG_LOG_XPATH_ANALYSIS_PROPERTY, false);
     }
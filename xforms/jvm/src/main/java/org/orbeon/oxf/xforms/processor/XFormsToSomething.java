@@ -199,9 +199,14 @@ abstract public class XFormsToSomething extends ProcessorImpl {
                 // In this case, we found the static state digest and more in the cache, but we must now create a new XFormsContainingDocument from this information
                 cacheTracer.digestAndTemplateStatus(scala.Option.apply(stage2CacheableState.staticStateDigest));
 
+                // Reuse the initial response produced for the same form, path and parameters if possible
+                if (initializeXFormsDocument &&
+                        InitialResponseCache.findAndReplay(stage2CacheableState.staticStateDigest, externalContext, xmlReceiver, htmlLogger))
+                    return;
+
                 final XFormsStaticState staticState;
                 {
-                    final XFormsStaticState cachedState = XFormsStaticStateCache.getDocumentJava(stage2CacheableState.staticStateDigest);
+                    final XFormsStaticState cachedState = XFormsStaticStateCache.getOrRestoreDocumentJava(stage2CacheableState.staticStateDigest);
                     if (cachedState != null && cachedState.topLevelPart().metadata().bindingsIncludesAreUpToDate()) {
                         // Found static state in cache
                         cacheTracer.staticStateStatus(true, cachedState.digest());
@@ -242,8 +247,17 @@ abstract public class XFormsToSomething extends ProcessorImpl {
             }
 
             // Output resulting document
-            if (initializeXFormsDocument)
-                produceOutput(pipelineContext, outputName, externalContext, htmlLogger, stage2CacheableState, containingDocument[0], xmlReceiver);
+            if (initializeXFormsDocument) {
+                if (InitialResponseCache.isCacheable(containingDocument[0], outputName)) {
+                    // Keep the response so it can be reused by requests with the same path and parameters
+                    final SAXStore response = new SAXStore();
+                    produceOutput(pipelineContext, outputName, externalContext, htmlLogger, stage2CacheableState, containingDocument[0], response);
+                    InitialResponseCache.store(stage2CacheableState.staticStateDigest, externalContext, containingDocument[0], response);
+                    response.replay(xmlReceiver);
+                } else {
+                    produceOutput(pipelineContext, outputName, externalContext, htmlLogger, stage2CacheableState, containingDocument[0], xmlReceiver);
+                }
+            }
 
             // Notify state manager
             XFormsAPI.withContainingDocumentJava(containingDocument[0], new Runnable() { // scope because dynamic properties can cause lazy XPath evaluations
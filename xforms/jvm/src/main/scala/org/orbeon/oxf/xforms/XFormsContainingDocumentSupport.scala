@@ -17,7 +17,7 @@ import java.{util ⇒ ju}
 
 import org.apache.commons.lang3.StringUtils
 import org.orbeon.datatypes.MaximumSize
-import org.orbeon.oxf.cache.Cacheable
+import org.orbeon.oxf.cache.{Cacheable, Weighable}
 import org.orbeon.oxf.common.Version
 import org.orbeon.oxf.controller.PageFlowControllerProcessor
 import org.orbeon.oxf.http.Headers
@@ -45,7 +45,7 @@ import org.orbeon.oxf.xforms.processor.XFormsServer
 import org.orbeon.oxf.xforms.state.{DynamicState, RequestParameters, XFormsStateManager}
 import org.orbeon.oxf.xforms.upload.{AllowedMediatypes, UploadCheckerLogic}
 import org.orbeon.oxf.xforms.xbl.XBLContainer
-import org.orbeon.oxf.xml.{XMLReceiver, XMLReceiverSupport}
+import org.orbeon.oxf.xml.{SAXStore, XMLReceiver, XMLReceiverSupport}
 
 import scala.annotation.tailrec
 import scala.collection.JavaConverters._
@@ -134,6 +134,7 @@ abstract class XFormsContainingDocumentSupport(var disableUpdates: Boolean)
     with ContainingDocumentRequest
     with ContainingDocumentDelayedEvents
     with XFormsDocumentLifecycle
+    with ContainingDocumentWeight
     with Cacheable
     with XFormsObject
 
@@ -221,6 +222,36 @@ trait ContainingDocumentUpload {
   }
 }
 
+trait ContainingDocumentWeight extends Weighable {
+
+  self: XBLContainer ⇒
+
+  def getControls        : XFormsControls
+  def getLastAjaxResponse: SAXStore
+
+  // Approximate weight of a control, including its bindings and the state it keeps
+  private val ControlWeight = 500L
+
+  // Rough estimate of the memory retained by the document, used by the document cache when it has a maximum weight
+  //
+  // Only the parts which vary the most between documents are counted: instances, controls, and the last Ajax
+  // response. The static state is shared between documents and is not counted.
+  def getApproximateWeight: Long = {
+
+    val instancesWeight =
+      (allModels flatMap (_.getInstances.asScala) map (_.approximateWeight)).sum
+
+    val controlsWeight =
+      Option(getControls) flatMap (c ⇒ Option(c.getCurrentControlTree)) map
+        (_.effectiveIdsToControls.size * ControlWeight) getOrElse 0L
+
+    val lastAjaxResponseWeight =
+      Option(getLastAjaxResponse) map (_.getApproximateSize) getOrElse 0L
+
+    instancesWeight + controlsWeight + lastAjaxResponseWeight
+  }
+}
+
 trait ContainingDocumentMisc {
 
   self: XBLContainer ⇒
@@ -423,11 +454,19 @@ trait ContainingDocumentLogging {
 
 trait ContainingDocumentRequestStats {
 
-  private var _requestStats = RequestStatsImpl()
-  def getRequestStats = _requestStats
+  self: ContainingDocumentRequest ⇒
+
+  // Created on first use, once request information is available, and cleared after each request
+  private var _requestStats: RequestStats = null
+
+  def getRequestStats = {
+    if (_requestStats eq null)
+      _requestStats = RequestStatsImpl(getRequestPath, getRequestParameters)
+    _requestStats
+  }
 
   def clearRequestStats(): Unit =
-    _requestStats = RequestStatsImpl()
+    _requestStats = null
 }
 
 trait ContainingDocumentRequest {
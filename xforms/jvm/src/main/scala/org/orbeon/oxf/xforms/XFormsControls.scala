@@ -177,47 +177,49 @@ class XFormsControls(val containingDocument: XFormsContainingDocument) {
       refreshDone()
     } else {
       withDebug("controls: performing refresh") {
+        containingDocument.getRequestStats.withRefresh {
 
-        // Notify dependencies
-        refreshStart()
+          // Notify dependencies
+          refreshStart()
 
-        // Focused control before updating bindings
-        val focusedBeforeOpt = focusedControlOpt
+          // Focused control before updating bindings
+          val focusedBeforeOpt = focusedControlOpt
 
-        val resultOpt =
-          try {
+          val resultOpt =
+            try {
 
-            // Update control bindings
-            // NOTE: During this process, ideally, no events are dispatched. However, at this point, the code
-            // can an dispatch, upon removed repeat iterations, xforms-disabled, DOMFocusOut and possibly events
-            // arising from updating the binding of nested XBL controls.
-            // This unfortunately means that side effects can take place. This should be fixed, maybe by simply
-            // detaching removed iterations first, and then dispatching events after all bindings have been
-            // updated as part of dispatchRefreshEvents() below. This requires that controls are able to kind of
-            // stay alive in detached mode, and then that the index is also available while these events are
-            // dispatched.
+              // Update control bindings
+              // NOTE: During this process, ideally, no events are dispatched. However, at this point, the code
+              // can an dispatch, upon removed repeat iterations, xforms-disabled, DOMFocusOut and possibly events
+              // arising from updating the binding of nested XBL controls.
+              // This unfortunately means that side effects can take place. This should be fixed, maybe by simply
+              // detaching removed iterations first, and then dispatching events after all bindings have been
+              // updated as part of dispatchRefreshEvents() below. This requires that controls are able to kind of
+              // stay alive in detached mode, and then that the index is also available while these events are
+              // dispatched.
 
-            // `None` if bindings are clean
+              // `None` if bindings are clean
 
-            for {
-              updater ← updateControlBindings()
-            } yield
-              (updater, gatherControlsForRefresh)
+              for {
+                updater ← updateControlBindings()
+              } yield
+                (updater, gatherControlsForRefresh)
 
-          } finally {
+            } finally {
 
-            // TODO: Why a `finally` block here? If an exception happened, do we really need to do a `refreshDone()`?
+              // TODO: Why a `finally` block here? If an exception happened, do we really need to do a `refreshDone()`?
 
-            // "Actions that directly invoke rebuild, recalculate, revalidate, or refresh always have an immediate
-            // effect, and clear the corresponding flag."
-            refreshDone()
-          }
+              // "Actions that directly invoke rebuild, recalculate, revalidate, or refresh always have an immediate
+              // effect, and clear the corresponding flag."
+              refreshDone()
+            }
 
-        resultOpt foreach { case (updater, controlsEffectiveIds) ⇒
-          // Dispatch events
-          currentControlTree.dispatchRefreshEvents(controlsEffectiveIds)
-          // Handle focus changes
-          Focus.updateFocusWithEvents(focusedBeforeOpt, updater.partialFocusRepeat)(containingDocument)
+          resultOpt foreach { case (updater, controlsEffectiveIds) ⇒
+            // Dispatch events
+            currentControlTree.dispatchRefreshEvents(controlsEffectiveIds)
+            // Handle focus changes
+            Focus.updateFocusWithEvents(focusedBeforeOpt, updater.partialFocusRepeat)(containingDocument)
+          }
         }
       }
     }
@@ -13,13 +13,21 @@
  */
 package org.orbeon.oxf.xforms
 
+import java.util.concurrent.{ConcurrentHashMap, TimeoutException}
+
 import org.orbeon.oxf.cache.{InternalCacheKey, ObjectCache}
+import org.orbeon.oxf.properties.Properties
 import org.orbeon.oxf.util.IndentedLogger
 import org.orbeon.oxf.xforms.analysis.model.Instance
 import org.orbeon.oxf.xforms.model.InstanceCaching
 import org.orbeon.oxf.xforms.model.XFormsInstance._
 import org.orbeon.saxon.om.{DocumentInfo, VirtualNode}
 
+import scala.concurrent.duration._
+import scala.concurrent.{Await, Promise}
+import scala.util.control.NonFatal
+import scala.util.{Failure, Success}
+
 /**
  * Cache for shared and immutable XForms instances.
  */
@@ -40,49 +48,113 @@ object XFormsServerSharedInstancesCache {
       indentedLogger  : IndentedLogger
   ): DocumentInfo =
     find(instanceCaching)(indentedLogger) map
-      (wrapDocumentInfo(_, readonly, instance.exposeXPathTypes)) orNull
+      (cacheEntry ⇒ wrapDocumentInfo(cacheEntry.instanceContent.documentInfo, readonly, instance.exposeXPathTypes)) orNull
 
   // Try to find instance content in the cache or load it
+  //
+  // Concurrent loads of the same instance are coalesced: only one thread calls `loader.load()` while other threads
+  // wait for its result, including its failure. If a cached entry is about to expire, the first thread to notice
+  // reloads it while other threads keep using the cached content.
   def findContentOrLoad(
       instance        : Instance,
       instanceCaching : InstanceCaching,
       readonly        : Boolean,
       loader          : Loader)(implicit
       indentedLogger  : IndentedLogger
+  ): DocumentInfo =
+    wrapDocumentInfo(
+      findDocumentOrLoad(instanceCaching, loader, loadTimeout, refreshAheadDelay),
+      readonly,
+      instance.exposeXPathTypes
+    )
+
+  private[xforms] def findDocumentOrLoad(
+      instanceCaching   : InstanceCaching,
+      loader            : Loader,
+      loadTimeout       : Long,
+      refreshAheadDelay : Long)(implicit
+      indentedLogger    : IndentedLogger
   ): DocumentInfo = {
 
-    // Add an entry to the cache
-    def add(instanceContent: InstanceContent, timeToLive: Long) = {
-
-      debug("adding instance", instanceCaching.debugPairs)
-
-      val cache = ObjectCache.instance(XFormsSharedInstancesCacheName, XFormsSharedInstancesCacheDefaultSize)
-      val cacheKey = createCacheKey(instanceCaching)
-
-      cache.add(cacheKey, ConstantValidity, CacheEntry(instanceContent, timeToLive))
-    }
+    val cacheKey = createCacheKey(instanceCaching)
 
     // Load and cache new instance content
-    def loadAndCache() = {
-      // Note that this method is not synchronized. Scenario: if the method is synchronized, the resource URI may
-      // reach an XForms page which itself needs to load a shared resource. The result would be a deadlock.
-      // Without synchronization, what can happen is that two concurrent requests load the same URI at the same
-      // time. In the worst case scenario, the results will be different, and the two requesting XForms instances
-      // will be different. The instance that is retrieved first will be stored in the cache for a very short
-      // amount of time, and the one retrieved last will win and be stored in the cache for a longer time.
+    def loadAndCache(): DocumentInfo = {
       debug("loading instance into cache", instanceCaching.debugPairs)
 
       val instanceContent = loader.load(instanceCaching.pathOrAbsoluteURI, instanceCaching.handleXInclude)
       // NOTE: load() must always returns a TinyTree because we don't want to put in cache a mutable document
       assert(! instanceContent.isInstanceOf[VirtualNode], "load() must return a TinyTree")
 
-      add(InstanceContent(instanceContent), instanceCaching.timeToLive)
-      Some(instanceContent)
+      debug("adding instance", instanceCaching.debugPairs)
+      cache.add(cacheKey, ConstantValidity, CacheEntry(InstanceContent(instanceContent), instanceCaching.timeToLive))
+
+      instanceContent
+    }
+
+    // Load unless another thread is already loading the same instance, in which case wait for its result
+    def loadOnce(): DocumentInfo = {
+      val newLoad = new InFlightLoad
+      Option(inFlightLoads.putIfAbsent(cacheKey, newLoad)) match {
+        case None ⇒
+          runLoad(newLoad)
+        case Some(existingLoad) if existingLoad.thread eq Thread.currentThread ⇒
+          // Reentrant load from the same thread: waiting would deadlock
+          loadAndCache()
+        case Some(existingLoad) ⇒
+          // Don't wait forever: the load might be waiting on a request which itself needs this instance, in which
+          // case we fall back to loading independently as we did before loads were coalesced.
+          debug("waiting for concurrent load of instance", instanceCaching.debugPairs)
+          val future = existingLoad.promise.future
+          try Await.ready(future, loadTimeout.milliseconds) catch { case _: TimeoutException ⇒ }
+          future.value match {
+            case Some(Success(documentInfo)) ⇒
+              documentInfo
+            case Some(Failure(t)) ⇒
+              // Loading again right away would most likely fail the same way
+              debug("concurrent load of instance failed", instanceCaching.debugPairs)
+              throw t
+            case None ⇒
+              debug("concurrent load of instance timed out, loading", instanceCaching.debugPairs)
+              loadAndCache()
+          }
+      }
+    }
+
+    def runLoad(load: InFlightLoad): DocumentInfo =
+      try {
+        val documentInfo = loadAndCache()
+        load.promise.success(documentInfo)
+        documentInfo
+      } catch {
+        case NonFatal(t) ⇒
+          load.promise.failure(t)
+          throw t
+      } finally
+        inFlightLoads.remove(cacheKey, load)
+
+    // Reload if no other thread is doing so, otherwise use the content which is still valid
+    def refreshAhead(cacheEntry: CacheEntry): DocumentInfo = {
+      val newLoad = new InFlightLoad
+      if (inFlightLoads.putIfAbsent(cacheKey, newLoad) eq null) {
+        debug("refreshing cached instance ahead of expiration", instanceCaching.debugPairs)
+        try
+          runLoad(newLoad)
+        catch {
+          case NonFatal(t) ⇒
+            // The cached content has not expired yet so keep using it
+            warn("error refreshing cached instance ahead of expiration", instanceCaching.debugPairs :+ ("error" → t.getMessage))
+            cacheEntry.instanceContent.documentInfo
+        }
+      } else
+        cacheEntry.instanceContent.documentInfo
     }
 
-    find(instanceCaching) orElse
-      loadAndCache map
-      (wrapDocumentInfo(_, readonly, instance.exposeXPathTypes)) get
+    find(instanceCaching) match {
+      case Some(cacheEntry) if isRefreshAheadDue(cacheEntry, refreshAheadDelay) ⇒ refreshAhead(cacheEntry)
+      case Some(cacheEntry)                                                    ⇒ cacheEntry.instanceContent.documentInfo
+      case None                                                                ⇒ loadOnce()
+    }
   }
 
   // Remove the given entry from the cache if present
@@ -94,14 +166,12 @@ object XFormsServerSharedInstancesCache {
   ): Unit = {
     debug("removing instance", List("URI" → instanceSourceURI, "request hash" → requestBodyHash))
 
-    val cache = ObjectCache.instance(XFormsSharedInstancesCacheName, XFormsSharedInstancesCacheDefaultSize)
     val cacheKey = createCacheKey(instanceSourceURI, handleXInclude, Option(requestBodyHash))
     cache.remove(cacheKey)
   }
 
   // Empty the cache
   def removeAll(implicit indentedLogger: IndentedLogger): Unit = {
-    val cache = ObjectCache.instance(XFormsSharedInstancesCacheName, XFormsSharedInstancesCacheDefaultSize)
     val count = cache.removeAll()
 
     debug("removed all instances", List("count" → count.toString))
@@ -114,13 +184,40 @@ object XFormsServerSharedInstancesCache {
     val ConstantValidity                      = 0L
     val SharedInstanceKeyType                 = XFormsSharedInstancesCacheName
 
+    val LoadTimeoutProperty                   = "oxf." + XFormsSharedInstancesCacheName + ".load-timeout"
+    val RefreshAheadProperty                  = "oxf." + XFormsSharedInstancesCacheName + ".refresh-ahead"
+    val DefaultLoadTimeout                    = 10000
+    val DefaultRefreshAhead                   = 0
+
+    def cache = ObjectCache.instance(XFormsSharedInstancesCacheName, XFormsSharedInstancesCacheDefaultSize)
+
+    private def properties = Properties.instance.getPropertySet
+
+    // How long to wait for another thread loading the same instance before loading independently
+    def loadTimeout: Long = properties.getInteger(LoadTimeoutProperty, DefaultLoadTimeout).longValue
+
+    // How long before expiration to reload an instance, or 0 to disable refresh-ahead
+    def refreshAheadDelay: Long = properties.getInteger(RefreshAheadProperty, DefaultRefreshAhead).longValue
+
+    // Loads in progress, so that concurrent requests for the same instance can wait instead of loading again
+    class InFlightLoad {
+      val thread  = Thread.currentThread
+      val promise = Promise[DocumentInfo]()
+    }
+
+    val inFlightLoads = new ConcurrentHashMap[InternalCacheKey, InFlightLoad]
+
+    def isRefreshAheadDue(cacheEntry: CacheEntry, refreshAheadDelay: Long) =
+      refreshAheadDelay > 0 &&
+        cacheEntry.timeToLive >= 0 &&
+        cacheEntry.timestamp + cacheEntry.timeToLive - refreshAheadDelay < System.currentTimeMillis
+
     case class InstanceContent(documentInfo: DocumentInfo) { require(! documentInfo.isInstanceOf[VirtualNode]) }
     case class CacheEntry(instanceContent: InstanceContent, timeToLive: Long, timestamp: Long = System.currentTimeMillis)
 
     // Find instance content in cache
-    def find(instanceCaching: InstanceCaching)(implicit logger: IndentedLogger) = {
+    def find(instanceCaching: InstanceCaching)(implicit logger: IndentedLogger): Option[CacheEntry] = {
 
-      val cache = ObjectCache.instance(XFormsSharedInstancesCacheName, XFormsSharedInstancesCacheDefaultSize)
       val cacheKey = createCacheKey(instanceCaching)
 
       def isExpired(cacheEntry: CacheEntry) =
@@ -135,7 +232,7 @@ object XFormsServerSharedInstancesCache {
         case Some(cacheEntry) ⇒
           // Instance was found
           debug("found cached instance", instanceCaching.debugPairs)
-          Some(cacheEntry.instanceContent.documentInfo)
+          Some(cacheEntry)
         case _ ⇒
           // Not found
           debug("cached instance not found", instanceCaching.debugPairs)
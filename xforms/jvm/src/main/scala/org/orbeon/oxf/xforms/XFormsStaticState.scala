@@ -16,6 +16,7 @@ package org.orbeon.oxf.xforms
 import org.orbeon.datatypes.MaximumSize
 import org.orbeon.oxf.util.IndentedLogger
 import org.orbeon.oxf.util.XPath.CompiledExpression
+import org.orbeon.oxf.xforms.analysis.PathIds
 import org.orbeon.oxf.xforms.state.AnnotatedTemplate
 import org.orbeon.oxf.xml.XMLReceiverHelper
 import org.orbeon.saxon.functions.FunctionLibrary
@@ -39,6 +40,7 @@ trait XFormsStaticState {
   def isCalculateDependencies                 : Boolean
 
   def functionLibrary                         : FunctionLibrary
+  def pathIds                                 : PathIds
   def sanitizeInput                           : String ⇒ String
   def assets                                  : XFormsAssets
   def uploadMaxSize                           : MaximumSize
@@ -85,6 +85,9 @@ class XFormsStaticStateImpl(
     excludesProp.splitTo[List]().foldLeft(XFormsAssets.fromJSONProperty)(update)
   }
 
+  // Ids of the paths of the XPath analysis, used during analysis as well
+  lazy val pathIds = new PathIds
+
   // This is a bit tricky because during analysis, XPath expression require the function library. This means this
   // property cannot use `nonDefaultPropertiesOnly` below, which collects all non-default properties and attempts to
   // evaluates AVT properties, which themselves require finding the default model, which is not yet ready! So we
@@ -147,7 +147,7 @@ object XFormsAction {
                   functionContext    = contextStack.getFunctionContext(actionInterpreter.getSourceEffectiveId(element)),
                   baseURI            = null,
                   locationData       = element.getData.asInstanceOf[LocationData],
-                  reporter           = actionInterpreter.containingDocument.getRequestStats.addXPathStat
+                  reporter           = actionInterpreter.containingDocument.getRequestStats.getReporter
                 ).asScala
               )
 
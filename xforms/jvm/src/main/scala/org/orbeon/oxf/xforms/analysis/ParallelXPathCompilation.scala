@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xforms.analysis
+
+import java.util.concurrent.{Callable, ForkJoinPool}
+
+import org.orbeon.oxf.properties.Properties
+import org.orbeon.oxf.util.XPath.CompiledExpression
+import org.orbeon.oxf.util.{DynamicVariable, IndentedLogger, XPath}
+import org.orbeon.oxf.xforms.analysis.controls.{AttributeControl, ValueTrait}
+import org.orbeon.oxf.xml.NamespaceMapping
+
+import scala.collection.JavaConverters._
+import scala.collection.mutable
+import scala.util.control.NonFatal
+
+// Compile the XPath expressions of the static analysis of a part in parallel, before the XPath analysis proper.
+//
+// The XPath analysis of an element depends on the analysis of its ancestors and of the variables in scope, so it runs
+// in document order. But compiling expressions, which is a large part of the cost, only depends on the expression and
+// its namespaces, so it can happen ahead of time on a fork-join pool. `ParallelXPathCompilationBenchmark` reports the
+// share of compilation in the analysis. The analysis then takes compiled expressions instead of compiling them, and
+// produces the same result as without parallel compilation:
+//
+// - Each use of an expression gets its own compiled expression, as without parallel compilation.
+// - Expressions which fail to compile are left out and compiled, and reported, by the analysis as before.
+object ParallelXPathCompilation {
+
+  val ParallelismProperty = "oxf.xforms.static-analysis.parallelism"
+  val ParallelismDefault  = 4
+
+  // Below this, the analysis doesn't benefit from parallelism
+  private val MinExpressions = 50
+
+  private lazy val parallelism =
+    Properties.instance.getPropertySet.getInteger(ParallelismProperty, ParallelismDefault).toInt
+
+  private lazy val pool = new ForkJoinPool(parallelism max 1)
+
+  // Override the parallelism of the analysis, for tests and benchmarks
+  private val parallelismDyn = new DynamicVariable[Int]
+
+  private[analysis] def withParallelism[T](parallelism: Int)(thunk: ⇒ T): T =
+    parallelismDyn.withValue(parallelism)(thunk)
+
+  case class ExpressionKey(xpathString: String, namespaceMappingHash: String, avt: Boolean)
+
+  private case class Candidate(key: ExpressionKey, namespaceMapping: NamespaceMapping, element: SimpleElementAnalysis)
+
+  // Compiled expressions, taken by the XPath analysis in document order
+  class CompiledExpressions private[ParallelXPathCompilation] (
+    expressions: mutable.Map[ExpressionKey, List[CompiledExpression]]
+  ) {
+
+    def size = expressions.valuesIterator.map(_.size).sum
+
+    def take(xpathString: String, namespaceMapping: NamespaceMapping, avt: Boolean): Option[CompiledExpression] = {
+      val key = ExpressionKey(xpathString, (Option(namespaceMapping) map (_.hash)).orNull, avt)
+      expressions.get(key) match {
+        case Some(head :: tail) ⇒
+          if (tail.isEmpty) expressions -= key else expressions += key → tail
+          Some(head)
+        case _ ⇒
+          None
+      }
+    }
+  }
+
+  val Empty = new CompiledExpressions(mutable.Map.empty)
+
+  def compileAll(part: PartAnalysisImpl, elements: Iterable[ElementAnalysis])(implicit logger: IndentedLogger): CompiledExpressions = {
+
+    val candidates = elements.iterator.flatMap(candidatesForElement).toList
+
+    if ((parallelismDyn.value getOrElse parallelism) <= 1 || candidates.size < MinExpressions)
+      Empty
+    else
+      gather(pool.invokeAll(compileTasks(part, candidates).asJava).asScala map (_.get))
+  }
+
+  // Compile the same expressions as `compileAll()` on this thread, to measure the cost of compilation alone
+  private[analysis] def compileSequentially(part: PartAnalysisImpl, elements: Iterable[ElementAnalysis]): CompiledExpressions =
+    gather(compileTasks(part, elements.iterator.flatMap(candidatesForElement).toList) map (_.call()))
+
+  private def compileTasks(part: PartAnalysisImpl, candidates: List[Candidate]) = {
+
+    val functionLibrary = part.staticState.functionLibrary
+
+    candidates map { candidate ⇒
+      new Callable[Option[(ExpressionKey, CompiledExpression)]] {
+        def call() =
+          try
+            Some(
+              candidate.key →
+                XPath.compileExpression(
+                  xpathString      = candidate.key.xpathString,
+                  namespaceMapping = candidate.namespaceMapping,
+                  locationData     = candidate.element.locationData,
+                  functionLibrary  = functionLibrary,
+                  avt              = candidate.key.avt
+                )
+            )
+          catch {
+            case NonFatal(_) ⇒ None
+          }
+      }
+    }
+  }
+
+  // Results are gathered on this thread, so the analysis doesn't need any synchronization. Each list is in document
+  // order, so that the analysis takes the expression compiled with the location of the element it analyzes.
+  private[analysis] def gather(results: Iterable[Option[(ExpressionKey, CompiledExpression)]]): CompiledExpressions = {
+    val expressions = mutable.Map[ExpressionKey, List[CompiledExpression]]()
+    for (result ← results; (key, compiledExpression) ← result)
+      expressions += key → (compiledExpression :: expressions.getOrElse(key, Nil))
+
+    new CompiledExpressions(expressions transform ((_, reversed) ⇒ reversed.reverse))
+  }
+
+  // Expressions which `analyzeXPath()` compiles for the element, following `SimpleElementAnalysis` and subclasses
+  private def candidatesForElement(element: ElementAnalysis): List[Candidate] =
+    element match {
+      case e: SimpleElementAnalysis if e.namespaceMapping ne null ⇒
+
+        val namespaceMapping = e.namespaceMapping
+
+        def candidate(xpathString: String, avt: Boolean = false) =
+          Candidate(ExpressionKey(xpathString, namespaceMapping.hash, avt), namespaceMapping, e)
+
+        val binding = (e.context.toList ++ (if (e.bind.isEmpty) e.ref.toList else Nil)) map (candidate(_))
+
+        val value =
+          e match {
+            case v: ValueTrait       ⇒ List(candidate(v.value map ("string((" + _ + ")[1])") getOrElse "string(.)"))
+            case a: AttributeControl ⇒ Option(a.attributeValue).toList map (candidate(_, avt = true))
+            case v: VariableAnalysisTrait if VariableAnalysis.valueOrSequenceElement(v.element).isEmpty ⇒
+              VariableAnalysis.valueOrSelectAttribute(v.element).toList map (candidate(_))
+            case _ ⇒ Nil
+          }
+
+        binding ++ value
+      case _ ⇒
+        Nil
+    }
+}
@@ -64,6 +64,12 @@ class PartAnalysisImpl(
 
   def getIndentedLogger = staticState.getIndentedLogger
 
+  // Expressions compiled ahead of the XPath analysis, see ParallelXPathCompilation
+  private var compiledExpressions = ParallelXPathCompilation.Empty
+
+  def takeCompiledExpression(xpathString: String, namespaceMapping: NamespaceMapping, avt: Boolean) =
+    compiledExpressions.take(xpathString, namespaceMapping, avt)
+
   private def iterator(start: Option[PartAnalysis]): Iterator[PartAnalysis] = new Iterator[PartAnalysis] {
 
     private[this] var theNext = start
@@ -187,6 +193,16 @@ class PartAnalysisImpl(
 
       initializeScopes()
 
+      // Time spent in each phase, for the debug log
+      val timings = Buffer[(String, String)]()
+      var phaseStartTime = System.currentTimeMillis
+
+      def endPhase(phase: String): Unit = {
+        val currentTime = System.currentTimeMillis
+        timings += (phase + "-ms") → (currentTime - phaseStartTime).toString
+        phaseStartTime = currentTime
+      }
+
       // Global lists LHHA and handlers
       val lhhas         = Buffer[LHHAAnalysis]()
       val eventHandlers = Buffer[EventHandlerImpl]()
@@ -229,6 +245,8 @@ class PartAnalysisImpl(
       } else if (xblBindings.allGlobals.nonEmpty)
         warn(s"There are ${xblBindings.allGlobals.size} xxbl:global in a child part. Those won't be processed.")
 
+      endPhase("build")
+
       // Attach LHHA
       for (lhha ← lhhas)
         lhha.attachToControl()
@@ -243,17 +261,26 @@ class PartAnalysisImpl(
       // Some controls need special processing
       analyzeCustomControls(attributes)
 
+      endPhase("index")
+
       // NOTE: For now, we don't analyze the XPath of nested (dynamic) parts
       if (isTopLevel && staticState.isXPathAnalysis) {
+        // Compile expressions in parallel, as the analysis itself must follow document order
+        compiledExpressions = ParallelXPathCompilation.compileAll(this, controlAnalysisMap.values)
+        timings += "compiled-expressions" → compiledExpressions.size.toString
+        endPhase("xpath-compilation")
         // Analyze root control XPath first as nested models might ask for its context
         rootControlAnalysis.analyzeXPath()
         // Analyze all models XPath
         analyzeModelsXPath()
+        endPhase("xpath-models")
         // Analyze controls XPath
         analyzeControlsXPath()
+        endPhase("xpath-controls")
+        compiledExpressions = ParallelXPathCompilation.Empty
       }
 
-      debugResults(Seq("controls" → controlAnalysisMap.size.toString))
+      debugResults(Seq("controls" → controlAnalysisMap.size.toString) ++ timings)
     }
 
     // Log if needed
@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xforms.analysis
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+import java.{util ⇒ ju}
+
+import org.orbeon.oxf.xforms.MapSet
+
+// Interning of internal paths (as produced by `PathMapXPathAnalysis`) into small integer ids.
+//
+// Each static state has its own table, so that the table goes away with the static state. Paths are interned during
+// static analysis only. At runtime, a changed path which is not yet interned can't match any analyzed expression, so
+// lookups never add to the table.
+//
+// Sets of ids are sorted arrays rather than bit sets, so that their size depends on the number of paths only.
+class PathIds {
+
+  private val idsByPath = new ConcurrentHashMap[String, Integer]
+  private val nextId    = new AtomicInteger
+
+  def intern(path: String): Int = {
+    val existing = idsByPath.get(path)
+    if (existing ne null)
+      existing.intValue
+    else {
+      val newId    = Integer.valueOf(nextId.getAndIncrement)
+      val previous = idsByPath.putIfAbsent(path, newId)
+      if (previous ne null) previous.intValue else newId.intValue
+    }
+  }
+
+  // Return -1 if the path has not been interned
+  def find(path: String): Int = {
+    val existing = idsByPath.get(path)
+    if (existing ne null) existing.intValue else -1
+  }
+
+  // Convert instance prefixed id → paths into instance prefixed id → sorted path ids
+  def internAll(mapSet: MapSet[String, String]): collection.Map[String, Array[Int]] =
+    if (mapSet.map.isEmpty)
+      Map.empty
+    else
+      mapSet.map map { case (instancePrefixedId, paths) ⇒
+        instancePrefixedId → (paths.iterator map intern).toArray.sorted.distinct
+      }
+}
+
+object PathIds {
+
+  // Whether two sorted arrays of ids have an id in common
+  def intersects(ids1: Array[Int], length1: Int, ids2: Array[Int], length2: Int): Boolean = {
+    var i = 0
+    var j = 0
+    while (i < length1 && j < length2) {
+      val id1 = ids1(i)
+      val id2 = ids2(j)
+      if (id1 == id2)
+        return true
+      else if (id1 < id2)
+        i += 1
+      else
+        j += 1
+    }
+    false
+  }
+
+  // Growable set of ids, sorted only when compared
+  class IdSet {
+
+    private var ids    = new Array[Int](8)
+    private var length = 0
+    private var sorted = true
+
+    def +=(id: Int): Unit = {
+      if (length == ids.length)
+        ids = ju.Arrays.copyOf(ids, length * 2)
+      if (length > 0 && id <= ids(length - 1))
+        sorted = false
+      ids(length) = id
+      length += 1
+    }
+
+    def size = { sort(); length }
+
+    def intersects(sortedIds: Array[Int]): Boolean = {
+      sort()
+      PathIds.intersects(ids, length, sortedIds, sortedIds.length)
+    }
+
+    private def sort(): Unit =
+      if (! sorted) {
+        ju.Arrays.sort(ids, 0, length)
+        // Remove duplicates
+        var last = 0
+        for (i ← 1 until length)
+          if (ids(i) != ids(last)) {
+            last += 1
+            ids(last) = ids(i)
+          }
+        length = last + 1
+        sorted = true
+      }
+  }
+}
@@ -45,9 +45,14 @@ class PathMapXPathAnalysis(
   val valueDependentPaths    : MapSet[String, String],
   val returnablePaths        : MapSet[String, String],
   val dependentModels        : collection.Set[String],
-  val dependentInstances     : collection.Set[String]
+  val dependentInstances     : collection.Set[String],
+  pathIds                    : PathIds
 )  extends XPathAnalysis {
 
+  // Intern paths now so that runtime dependency checks only need to intersect sorted ids
+  val valueDependentPathIds = pathIds.internAll(valueDependentPaths)
+  val returnablePathIds     = pathIds.internAll(returnablePaths)
+
   // If `values` is false, the other analysis just adds to the dependencies of the current analysis, but no new
   // returnable values are added.
   def combine(other: XPathAnalysis): XPathAnalysis =
@@ -72,7 +77,8 @@ class PathMapXPathAnalysis(
             valueDependentPaths combine other.valueDependentPaths,
             returnablePaths combine other.returnablePaths,
             dependentModels ++ other.dependentModels,
-            dependentInstances ++ other.dependentInstances)
+            dependentInstances ++ other.dependentInstances,
+            pathIds)
         case _ ⇒
           throw new IllegalStateException // should not happen
       }
@@ -85,7 +91,8 @@ class PathMapXPathAnalysis(
       valueDependentPaths combine returnablePaths,
       MapSet.empty[String, String],
       dependentModels,
-      dependentInstances
+      dependentInstances,
+      pathIds
     )
 
   def toXML(helper: XMLReceiverHelper): Unit = {
@@ -324,7 +331,8 @@ object PathMapXPathAnalysis {
               valueDependentPaths,
               returnablePaths,
               dependentModels,
-              dependentInstances
+              dependentInstances,
+              partAnalysis.staticState.pathIds
             )
           else
             // Failure
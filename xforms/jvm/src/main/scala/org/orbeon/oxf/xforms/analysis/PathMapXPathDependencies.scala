@@ -40,6 +40,9 @@ class PathMapXPathDependencies(
 
   private implicit val logger = containingDocument.getIndentedLogger("dependencies")
 
+  // Changed paths are looked up in the paths interned by the analysis of the static state
+  private lazy val pathIds = containingDocument.getStaticState.pathIds
+
   // Represent the state of changes to a model
   private class ModelState(val modelKey: ModelOrInstanceKey, val model: XFormsModel) {
 
@@ -49,8 +52,8 @@ class PathMapXPathDependencies(
     var validateMIPsEvaluatedOnce  = false  // start dirty
 
     // Meaning of a change: "the string value of the node has changed"
-    var recalculateChangeset = new MapSet[ModelOrInstanceKey, String]   // changeset for recalculate MIPs
-    var revalidateChangeset  = recalculateChangeset                     // changeset for revalidate MIPs
+    var recalculateChangeset = new PathChangeset(pathIds)    // changeset for recalculate MIPs
+    var revalidateChangeset  = recalculateChangeset // changeset for revalidate MIPs
 
     def markValueChangedForTests(instance: XFormsInstance, path: String): Unit = {
       if (! hasStructuralChanges) {
@@ -138,14 +141,14 @@ class PathMapXPathDependencies(
 
     // Return an empty changeset, trying to point to the empty right changeset if possible
     // This is so that we can try to avoid adding changes to both changesets later
-    private def clearChangeset(left: MapSet[ModelOrInstanceKey, String], right: MapSet[ModelOrInstanceKey, String]) =
+    private def clearChangeset(left: PathChangeset, right: PathChangeset) =
       if (right isEmpty)
         right
       else if (left ne right) {
         left.clear()
         left
       } else
-        new MapSet[ModelOrInstanceKey, String]
+        new PathChangeset(pathIds)
 
     def refreshDone() = ()
 
@@ -171,7 +174,7 @@ class PathMapXPathDependencies(
     val structuralChangeModelKeys = new m.HashSet[ModelOrInstanceKey]
 
     // Modified paths by instance key
-    val refreshChangeset = new MapSet[ModelOrInstanceKey, String]
+    val refreshChangeset = new PathChangeset(pathIds)
     val instancesByKey   = m.Map[ModelOrInstanceKey, XFormsInstance]()
 
     // Caches to speedup checks on repeated items
@@ -198,23 +201,17 @@ class PathMapXPathDependencies(
         }
       }
 
-    private def setsHaveIntersection(
-      first  : collection.Set[String],
-      second : collection.Set[String]
-    ) =
-      first exists (second contains)
-
     private def searchMatchesForInstances(
       controlEffectiveId     : String,
-      firstWithPrefixedIds   : MapSet[String, String],
-      secondWithInstanceKeys : MapSet[ModelOrInstanceKey, String]
+      firstWithPrefixedIds   : collection.Map[String, Array[Int]],
+      secondWithInstanceKeys : PathChangeset
     ) = {
 
       val controlIndexes        = XFormsId.getEffectiveIdSuffixParts(controlEffectiveId)
       val controlIsWithinRepeat = controlIndexes.nonEmpty
 
       compareWithPredicate(
-        firstWithPrefixedIds.map.keys,
+        firstWithPrefixedIds.keys,
         secondWithInstanceKeys.map.keys,
         instanceKey ⇒ {
 
@@ -222,11 +219,9 @@ class PathMapXPathDependencies(
             ! controlIsWithinRepeat ||
             controlIndexes.startsWith(XFormsId.getEffectiveIdSuffixParts(instancesByKey(instanceKey).getEffectiveId))
 
+          // Intersection of interned paths
           matchesRepeatIterations &&
-            setsHaveIntersection(
-              firstWithPrefixedIds.map(instanceKey.prefixedId),
-              secondWithInstanceKeys.map(instanceKey)
-            )
+            secondWithInstanceKeys.map(instanceKey).intersects(firstWithPrefixedIds(instanceKey.prefixedId))
         }
       )
     }
@@ -256,23 +251,23 @@ class PathMapXPathDependencies(
     def intersectsBinding(
       controlEffectiveId : String,
       bindingAnalysis    : XPathAnalysis,
-      changes            : MapSet[ModelOrInstanceKey, String]
+      changes            : PathChangeset
     ) =
       searchMatchesForInstances(
         controlEffectiveId,
-        bindingAnalysis.valueDependentPaths,
+        bindingAnalysis.valueDependentPathIds,
         changes
       )
 
     def intersectsValue(
       controlEffectiveId : String,
       bindingAnalysis    : XPathAnalysis,
-      changes            : MapSet[ModelOrInstanceKey, String]
+      changes            : PathChangeset
     ) =
       intersectsBinding(controlEffectiveId, bindingAnalysis, refreshChangeset) ||
         searchMatchesForInstances(
           controlEffectiveId,
-          bindingAnalysis.returnablePaths,
+          bindingAnalysis.returnablePathIds,
           changes
         )
 
@@ -739,6 +734,23 @@ private object PathMapXPathDependencies {
 
   case class RepeatCacheKey(prefixedId: String, commonIndexes: List[Int])
 
+  // Changed paths by model or instance, with paths interned as ids, see `PathIds`
+  class PathChangeset(pathIds: PathIds) {
+
+    val map = new m.LinkedHashMap[ModelOrInstanceKey, PathIds.IdSet]
+
+    // Paths which were not interned during static analysis can't intersect with any analysis so are ignored
+    def +=(instancePath: (ModelOrInstanceKey, String)): this.type = {
+      val pathId = pathIds.find(instancePath._2)
+      if (pathId >= 0)
+        map.getOrElseUpdate(instancePath._1, new PathIds.IdSet) += pathId
+      this
+    }
+
+    def isEmpty = map.isEmpty
+    def clear(): Unit = map.clear()
+  }
+
   // We use this custom key because we cannot index by effective id as effective ids can be updated when
   // iterations move. The sequence number on the other hand doesn't change for a concrete model or instance
   // for its lifetime.
@@ -139,9 +139,16 @@ class SimpleElementAnalysis(
   protected def analyzeXPath(contextAnalysis: Option[XPathAnalysis], inScopeVariables: Map[String, VariableTrait], xpathString: String, avt: Boolean): XPathAnalysis = {
 
     val defaultInstancePrefixedId = model flatMap (_.defaultInstancePrefixedId)
+    val namespaceMapping          = part.metadata.getNamespaceMapping(prefixedId)
 
-    PathMapXPathAnalysis(part, xpathString, part.metadata.getNamespaceMapping(prefixedId),
-      contextAnalysis, inScopeVariables, new SimplePathMapContext, scope, defaultInstancePrefixedId, locationData, element, avt)
+    // Use the expression if it was compiled ahead of time
+    part.takeCompiledExpression(xpathString, namespaceMapping, avt) match {
+      case Some(compiledExpression) ⇒
+        PathMapXPathAnalysis(part, compiledExpression, contextAnalysis, inScopeVariables, new SimplePathMapContext, scope, defaultInstancePrefixedId, element)
+      case None ⇒
+        PathMapXPathAnalysis(part, xpathString, namespaceMapping,
+          contextAnalysis, inScopeVariables, new SimplePathMapContext, scope, defaultInstancePrefixedId, locationData, element, avt)
+    }
   }
 
   // For callers with a CompiledExpression
@@ -28,6 +28,10 @@ abstract class XPathAnalysis extends DebugXML  {
   val valueDependentPaths: MapSet[String, String] // instance prefixed id → paths
   val returnablePaths: MapSet[String, String]     // instance prefixed id → paths
 
+  // Same as above but with paths interned as sorted ids, see `PathIds`
+  val valueDependentPathIds: collection.Map[String, Array[Int]]
+  val returnablePathIds: collection.Map[String, Array[Int]]
+
   val dependentModels: collection.Set[String]
   val dependentInstances: collection.Set[String]
 
@@ -60,6 +64,8 @@ object XPathAnalysis {
     val dependentModels = Set.empty[String]
     val returnablePaths = MapSet.empty[String, String]
     val valueDependentPaths = MapSet.empty[String, String]
+    val returnablePathIds = Map.empty[String, Array[Int]]
+    val valueDependentPathIds = Map.empty[String, Array[Int]]
 
     def makeValuesDependencies = this
 
@@ -25,7 +25,7 @@ import org.orbeon.oxf.xforms._
 import org.orbeon.oxf.xforms.analysis.ControlAnalysisFactory.InputValueControl
 import org.orbeon.oxf.xforms.analysis._
 import org.orbeon.oxf.xforms.control.LHHAValue
-import org.orbeon.oxf.xforms.itemset.{Item, ItemContainer, Itemset}
+import org.orbeon.oxf.xforms.itemset.{Item, ItemContainer, Itemset, SharedItemsets}
 import org.orbeon.oxf.xml.XMLReceiverHelper
 import org.orbeon.oxf.xml.dom4j.Dom4jUtils
 
@@ -73,6 +73,10 @@ extends InputValueControl
   val isNorefresh      = element.attributeValue(XXFORMS_REFRESH_ITEMS_QNAME) == "false"
   val mustEncodeValues = Option(element.attributeValue(ENCRYPT_ITEM_VALUES)) map (_.toBoolean)
 
+  // Id of the shared instance the itemset only depends on, if any, so that the itemset can be shared between documents
+  lazy val sharedItemsetInstanceId =
+    if (hasStaticItemset || isNorefresh) None else SharedItemsets.findSharedInstanceId(element)
+
   private var itemsetAnalysis: Option[XPathAnalysis] = None
   private var _itemsetAnalyzed = false
   def itemsetAnalyzed = _itemsetAnalyzed
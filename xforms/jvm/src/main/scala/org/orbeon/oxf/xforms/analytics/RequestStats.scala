@@ -13,22 +13,33 @@
  */
 package org.orbeon.oxf.xforms.analytics
 
-import collection.mutable
+import org.orbeon.oxf.util.LoggerFactory
 import org.orbeon.oxf.xforms.XFormsProperties
+import org.orbeon.oxf.xforms.analytics.XFormsStatistics.{Bind, Refresh, XPath, formName, record}
+
+import scala.collection.mutable
 
 // Gather request statistics
-// For now, only support XPath statistics
+// For now, support XPath, bind and refresh statistics
 trait RequestStats {
   def afterInitialResponse()
   def afterUpdateResponse()
   def addXPathStat(expr: String, time: Long)
+  def addBindStat(expr: String, time: Long)
   def withXPath[T](expr: ⇒ String)(body: ⇒ T): T
+  def withRefresh[T](body: ⇒ T): T
 
   // For Java callers
+  // NOTE: `null` when statistics are not gathered, so that XPath evaluations are not timed at all.
   def getReporter: (String, Long) ⇒ Unit = addXPathStat
+  def getBindReporter: (String, Long) ⇒ Unit = addBindStat
 }
 
-class RequestStatsImpl extends RequestStats {
+// Statistics for a sampled request
+//
+// - Times are recorded with `XFormsStatistics`, aggregated over requests.
+// - With `oxf.xforms.debug.log-request-stats`, the top XPath expressions of the request are also logged.
+class RequestStatsImpl(form: String, isSampled: Boolean, isLogged: Boolean) extends RequestStats {
 
   private class XPathStats(val expr: String) {
     private var _count = 0
@@ -49,8 +60,19 @@ class RequestStatsImpl extends RequestStats {
 
   private val xpathStats = mutable.Map[String, XPathStats]()
 
-  def addXPathStat(expr: String, time: Long) =
-    xpathStats.getOrElseUpdate(expr, new XPathStats(expr)).addStat(time)
+  def addXPathStat(expr: String, time: Long): Unit = {
+    if (isSampled)
+      record(form, XPath, expr, time)
+    if (isLogged)
+      xpathStats.getOrElseUpdate(expr, new XPathStats(expr)).addStat(time)
+  }
+
+  def addBindStat(expr: String, time: Long): Unit = {
+    if (isSampled)
+      record(form, Bind, expr, time)
+    if (isLogged)
+      xpathStats.getOrElseUpdate(expr, new XPathStats(expr)).addStat(time)
+  }
 
   private def topXPath(n: Int, f: XPathStats ⇒ Long) =
     xpathStats.values.toSeq sortBy f takeRight n reverse
@@ -60,17 +82,20 @@ class RequestStatsImpl extends RequestStats {
   def afterInitialResponse(): Unit =
     afterUpdateResponse()
 
-  def afterUpdateResponse(): Unit = {
-    println("afterResponse:")
-    println(" distinct XPath: " + distinctXPath)
-    println(" total time in XPath: " + (xpathStats.values map (_.totalTime) sum))
-    println(" top XPath by mean time: ")
-    for ((topXPath, i) ← topXPath(10, _.meanTime).zipWithIndex)
-      println("  " + (i + 1) + ": " + topXPath.toString)
-    println(" top XPath by total time: ")
-    for ((topXPath, i) ← topXPath(10, _.totalTime).zipWithIndex)
-      println("  " + (i + 1) + ": " + topXPath.toString)
-  }
+  def afterUpdateResponse(): Unit =
+    if (isLogged) {
+      val Logger = RequestStatsImpl.Logger
+
+      Logger.info("after response for form `" + form + "`:")
+      Logger.info(" distinct XPath: " + distinctXPath)
+      Logger.info(" total time in XPath: " + (xpathStats.values map (_.totalTime) sum))
+      Logger.info(" top XPath by mean time: ")
+      for ((topXPath, i) ← topXPath(10, _.meanTime).zipWithIndex)
+        Logger.info("  " + (i + 1) + ": " + topXPath.toString)
+      Logger.info(" top XPath by total time: ")
+      for ((topXPath, i) ← topXPath(10, _.totalTime).zipWithIndex)
+        Logger.info("  " + (i + 1) + ": " + topXPath.toString)
+    }
 
   def withXPath[T](expr: ⇒ String)(body: ⇒ T): T = {
     val startTime = System.nanoTime
@@ -83,19 +108,43 @@ class RequestStatsImpl extends RequestStats {
 
     result
   }
+
+  def withRefresh[T](body: ⇒ T): T = {
+    val startTime = System.nanoTime
+
+    val result = body
+
+    if (isSampled)
+      record(form, Refresh, "", (System.nanoTime - startTime) / 1000)
+
+    result
+  }
 }
 
 object NOPRequestStats extends RequestStats {
   def afterInitialResponse() = ()
   def afterUpdateResponse() = ()
   def addXPathStat(expr: String, time: Long) = ()
+  def addBindStat(expr: String, time: Long) = ()
   def withXPath[T](expr: ⇒ String)(body: ⇒ T) = body
+  def withRefresh[T](body: ⇒ T) = body
+
+  override def getReporter = null
+  override def getBindReporter = null
 }
 
 object RequestStatsImpl {
-  def apply(): RequestStats =
-    if (XFormsProperties.isRequestStats)
-      new RequestStatsImpl()
+
+  private val Logger = LoggerFactory.createLogger(classOf[RequestStatsImpl])
+
+  def apply(requestPath: String, requestParameters: Map[String, List[String]]): RequestStats = {
+
+    val isSampled = XFormsStatistics.isSampled
+    val isLogged  = XFormsProperties.isRequestStats
+
+    if (isSampled || isLogged)
+      new RequestStatsImpl(formName(requestPath, requestParameters), isSampled, isLogged)
     else
       NOPRequestStats
-}
\ No newline at end of file
+  }
+}
@@ -0,0 +1,211 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xforms.analytics
+
+import java.util.concurrent.atomic.{AtomicLong, AtomicLongArray}
+import java.util.concurrent.{ConcurrentHashMap, ThreadLocalRandom}
+
+import org.orbeon.oxf.pipeline.api.PipelineContext
+import org.orbeon.oxf.processor.{BinaryTextSupport, ProcessorImpl, ProcessorInputOutputInfo, ProcessorOutputImpl}
+import org.orbeon.oxf.properties.Properties
+import org.orbeon.oxf.util.JMX
+import org.orbeon.oxf.xml.XMLReceiver
+import spray.json._
+
+import scala.collection.JavaConverters._
+
+// Statistics exposed over JMX
+trait XFormsStatisticsMBean {
+  def isEnabled: Boolean
+  def setEnabled(enabled: Boolean): Unit
+  def getSampling: Int
+  def setSampling(sampling: Int): Unit
+  def reset(): Unit
+  def getTopExpressions: Array[String]
+  def getStatisticsJson: String
+}
+
+// Statistics about the time spent evaluating XPath expressions, binds and control refreshes, per form, aggregated
+// over requests.
+//
+// - Statistics are enabled by default, and one request out of `oxf.xforms.statistics.sampling` is measured, so that
+//   statistics are always available in production at a low cost. Requests which are not sampled don't measure
+//   anything.
+// - Times are recorded in histograms with power of two buckets, updated without locks.
+// - Forms are identified by Form Runner app, form and version if available, and otherwise by request path.
+object XFormsStatistics extends XFormsStatisticsMBean {
+
+  val EnabledProperty  = "oxf.xforms.statistics.enabled"
+  val SamplingProperty = "oxf.xforms.statistics.sampling"
+
+  val XPath   = "xpath"
+  val Bind    = "bind"
+  val Refresh = "refresh"
+
+  // Bound the memory used when forms have many distinct expressions
+  private val MaxEntries = 10000
+
+  @volatile private var enabled  = true
+  @volatile private var sampling = 100
+
+  private val histograms = new ConcurrentHashMap[StatisticsKey, Histogram]
+
+  // Properties are read the first time a request asks whether it is sampled
+  private lazy val init: Unit = {
+    val propertySet = Properties.instance.getPropertySet
+    enabled  = propertySet.getBoolean(EnabledProperty, enabled)
+    sampling = propertySet.getInteger(SamplingProperty, sampling).toInt
+    JMX.registerMBean(this, classOf[XFormsStatisticsMBean], "org.orbeon:type=XFormsStatistics")
+  }
+
+  def isEnabled = { init; enabled }
+  def setEnabled(enabled: Boolean): Unit = { init; this.enabled = enabled }
+
+  def getSampling = { init; sampling }
+  def setSampling(sampling: Int): Unit = { init; this.sampling = sampling }
+
+  def reset(): Unit = histograms.clear()
+
+  // Whether statistics must be gathered for a new request
+  def isSampled: Boolean =
+    isEnabled && (sampling <= 1 || ThreadLocalRandom.current.nextInt(sampling) == 0)
+
+  def record(form: String, category: String, expression: String, micros: Long): Unit = {
+
+    val key = StatisticsKey(form, category, expression)
+
+    val histogram =
+      histograms.get(key) match {
+        case null if histograms.size >= MaxEntries ⇒
+          null
+        case null ⇒
+          val newHistogram = new Histogram
+          Option(histograms.putIfAbsent(key, newHistogram)) getOrElse newHistogram
+        case existing ⇒
+          existing
+      }
+
+    if (histogram ne null)
+      histogram.add(micros)
+  }
+
+  // Identify the form by Form Runner app, form and version, or by request path
+  def formName(requestPath: String, requestParameters: Map[String, List[String]]): String = {
+
+    val FormRunnerPath = """/fr/(?:service/)?([^/]+)/([^/]+)(?:/.*)?""".r
+
+    Option(requestPath) match {
+      case Some(FormRunnerPath(app, form)) ⇒
+        val versionOpt = Option(requestParameters) flatMap (_.get("form-version")) flatMap (_.headOption)
+        app :: form :: versionOpt.toList mkString "/"
+      case Some(path) ⇒
+        path
+      case None ⇒
+        "unknown"
+    }
+  }
+
+  // Statistics with the most total time first
+  def allStatistics: List[(StatisticsKey, Histogram)] =
+    histograms.asScala.toList sortBy (- _._2.totalMicros.get)
+
+  def getTopExpressions =
+    (allStatistics take 100 map { case (key, histogram) ⇒ s"$key: $histogram" }).toArray
+
+  def getStatisticsJson = toJson.compactPrint
+
+  def toJson: JsValue =
+    JsArray(
+      allStatistics.toVector map { case (key, histogram) ⇒
+        JsObject(
+          "form"         → JsString(key.form),
+          "category"     → JsString(key.category),
+          "expression"   → JsString(key.expression),
+          "count"        → JsNumber(histogram.count.get),
+          "total-micros" → JsNumber(histogram.totalMicros.get),
+          "mean-micros"  → JsNumber(histogram.meanMicros),
+          "max-micros"   → JsNumber(histogram.maxMicros.get),
+          "p50-micros"   → JsNumber(histogram.percentile(0.5)),
+          "p90-micros"   → JsNumber(histogram.percentile(0.9)),
+          "p99-micros"   → JsNumber(histogram.percentile(0.99))
+        )
+      }
+    )
+}
+
+case class StatisticsKey(form: String, category: String, expression: String) {
+  override def toString = s"$form, $category, $expression"
+}
+
+// Histogram of times in microseconds, where bucket `i` counts times smaller than 2^i µs
+class Histogram {
+
+  import Histogram._
+
+  val count       = new AtomicLong
+  val totalMicros = new AtomicLong
+  val maxMicros   = new AtomicLong
+
+  private val buckets = new AtomicLongArray(BucketCount)
+
+  def add(micros: Long): Unit = {
+    count.incrementAndGet()
+    totalMicros.addAndGet(micros)
+    buckets.incrementAndGet(bucketIndex(micros))
+
+    var max = maxMicros.get
+    while (micros > max && ! maxMicros.compareAndSet(max, micros))
+      max = maxMicros.get
+  }
+
+  def meanMicros = {
+    val currentCount = count.get
+    if (currentCount == 0) 0L else totalMicros.get / currentCount
+  }
+
+  // Upper bound of the bucket containing the given percentile
+  def percentile(p: Double): Long = {
+
+    val counts = 0 until BucketCount map buckets.get
+    val target = math.ceil(counts.sum * p).toLong max 1
+
+    val index = counts.scanLeft(0L)(_ + _).tail indexWhere (_ >= target)
+    if (index == -1) 0L else (1L << index) min maxMicros.get
+  }
+
+  override def toString =
+    s"count=${count.get}, total-micros=${totalMicros.get}, mean-micros=$meanMicros, p90-micros=${percentile(0.9)}, max-micros=${maxMicros.get}"
+}
+
+object Histogram {
+
+  val BucketCount = 40
+
+  def bucketIndex(micros: Long) =
+    (64 - java.lang.Long.numberOfLeadingZeros(micros max 0L)) min (BucketCount - 1)
+}
+
+// Output the statistics as JSON, for example for a monitoring page
+class XFormsStatisticsGenerator extends ProcessorImpl {
+
+  import ProcessorImpl._
+
+  addOutputInfo(new ProcessorInputOutputInfo(OUTPUT_DATA))
+
+  override def createOutput(name: String) =
+    addOutput(name, new ProcessorOutputImpl(XFormsStatisticsGenerator.this, name) {
+      def readImpl(context: PipelineContext, xmlReceiver: XMLReceiver): Unit =
+        BinaryTextSupport.readText(XFormsStatistics.toJson.prettyPrint, xmlReceiver, "application/json", null)
+    })
+}
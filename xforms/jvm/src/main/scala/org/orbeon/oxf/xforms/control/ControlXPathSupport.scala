@@ -65,7 +65,7 @@ trait ControlXPathSupport {
             newFunctionContext,
             null,
             getLocationData,
-            containingDocument.getRequestStats.addXPathStat
+            containingDocument.getRequestStats.getReporter
           )
         catch {
           case NonFatal(t) ⇒
@@ -105,7 +105,7 @@ trait ControlXPathSupport {
             newFunctionContext,
             null,
             getLocationData,
-            containingDocument.getRequestStats.addXPathStat
+            containingDocument.getRequestStats.getReporter
           )
         )
       catch {
@@ -138,7 +138,7 @@ trait ControlXPathSupport {
               newFunctionContext,
               null,
               getLocationData,
-              containingDocument.getRequestStats.addXPathStat
+              containingDocument.getRequestStats.getReporter
             )
           )
         catch {
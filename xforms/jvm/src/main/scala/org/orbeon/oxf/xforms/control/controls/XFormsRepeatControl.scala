@@ -31,7 +31,9 @@ import org.orbeon.oxf.xforms.state.ControlState
 import org.orbeon.oxf.xforms.xbl.XBLContainer
 import org.orbeon.oxf.xforms.{BindingContext, ControlTree, XFormsContainingDocument}
 import org.orbeon.oxf.xml.SaxonUtils
+import org.orbeon.saxon.`type`.Type
 import org.orbeon.saxon.om.{Item, NodeInfo}
+import org.orbeon.saxon.value.StringValue
 
 import scala.collection.JavaConverters._
 import scala.collection.mutable.{ArrayBuffer, ListBuffer}
@@ -588,14 +590,6 @@ class XFormsRepeatControl(
       }
     }
 
-  private def findNodeIndexes(nodeset1: Seq[Item], nodeset2: Seq[Item]) = {
-
-    def indexOfItem(otherItem: Item) =
-      nodeset2 indexWhere (SaxonUtils.compareItems(_, otherItem))
-
-    nodeset1 map indexOfItem toArray
-  }
-
   // Serialize index
   override def serializeLocal: ju.Map[String, String] =
     ju.Collections.singletonMap("index", Integer.toString(getIndex))
@@ -653,6 +647,41 @@ object XFormsRepeatControl {
     oldRepeatIndex: Int
   )
 
+  // For each item of `nodeset1`, the index of the first item of `nodeset2` which is the same item, or -1.
+  //
+  // Repeats can have thousands of iterations, so nodes and strings, which are matched by identity and value, are
+  // looked up in a hash map, for a time linear in the size of both sequences. Other items are compared with
+  // `SaxonUtils.compareItems()`, as `AtomicValue.equals()` may throw.
+  def findNodeIndexes(nodeset1: Seq[Item], nodeset2: Seq[Item]): Array[Int] = {
+
+    val indexesByKey  = new ju.HashMap[AnyRef, Integer]
+    var hasOtherItems = false
+
+    for ((item, index) ← nodeset2.iterator.zipWithIndex)
+      hashKey(item) match {
+        case Some(key) ⇒ if (! indexesByKey.containsKey(key)) indexesByKey.put(key, index)
+        case None      ⇒ hasOtherItems = true
+      }
+
+    def indexOfItem(item: Item) =
+      hashKey(item) match {
+        case Some(key)             ⇒ Option(indexesByKey.get(key)) map (_.intValue) getOrElse -1
+        case None if hasOtherItems ⇒ nodeset2 indexWhere (SaxonUtils.compareItems(_, item))
+        case None                  ⇒ -1
+      }
+
+    nodeset1.iterator map indexOfItem toArray
+  }
+
+  // Key consistent with `SaxonUtils.compareItems()`
+  // NOTE: `NodeWrapper.hashCode()` is not consistent with `equals()` for namespace nodes.
+  private def hashKey(item: Item): Option[AnyRef] =
+    item match {
+      case v: StringValue                                 ⇒ Some(v.getStringValue)
+      case n: NodeInfo if n.getNodeKind != Type.NAMESPACE ⇒ Some(n)
+      case _                                              ⇒ None
+    }
+
   // Find the initial repeat indexes for the given doc
   def initialIndexes(doc: XFormsContainingDocument) =
     findIndexes(
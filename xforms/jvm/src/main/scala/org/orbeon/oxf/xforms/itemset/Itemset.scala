@@ -43,8 +43,27 @@ class Itemset(multiple: Boolean) extends ItemContainer {
   def selectedItems(value: String): List[Item] =
     allItemsIterator filter (item ⇒ isSelected(multiple, value, item.value)) toList
 
+  // Whether this itemset is shared between documents, in which case it must not be modified
+  @volatile private var _shared = false
+  def shared = _shared
+  def markShared(): Unit = _shared = true
+
+  // JSON without selection of a shared itemset, by value of `encode`
+  @volatile private var sharedJSON: Map[Boolean, String] = Map.empty
+
   // Return the list of items as a JSON tree with hierarchical information
-  def asJSON(controlValue: String, encode: Boolean, locationData: LocationData): String = {
+  def asJSON(controlValue: String, encode: Boolean, locationData: LocationData): String =
+    if (_shared && ! (allItemsIterator exists (item ⇒ isSelected(multiple, controlValue, Option(item.value) getOrElse "")))) {
+      // The JSON doesn't depend on the control value, so reuse it across documents
+      sharedJSON.getOrElse(encode, {
+        val json = buildJSON(null, encode, locationData)
+        sharedJSON += encode → json
+        json
+      })
+    } else
+      buildJSON(controlValue, encode, locationData)
+
+  private def buildJSON(controlValue: String, encode: Boolean, locationData: LocationData): String = {
     val sb = new StringBuilder
     // Array of top-level items
     sb.append("[")
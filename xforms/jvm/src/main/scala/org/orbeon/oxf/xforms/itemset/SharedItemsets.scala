@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xforms.itemset
+
+import org.orbeon.dom.Element
+import org.orbeon.oxf.cache.{InternalCacheKey, ObjectCache}
+import org.orbeon.oxf.xforms.XFormsConstants._
+import org.orbeon.oxf.xforms.control.controls.XFormsSelect1Control
+import org.orbeon.oxf.xml.Dom4j
+
+import scala.collection.JavaConverters._
+
+// Itemsets which only depend on a shared instance, i.e. an instance with `xxf:cache="true"` and
+// `xxf:readonly="true"`, are the same for all documents using the same form and the same instance content. They are
+// evaluated once and shared, immutable, between documents, controls and repeat iterations.
+//
+// - Static analysis detects such itemsets conservatively: a single `xf:itemset` pointing to `instance('id')`, with
+//   nested expressions which only depend on the context item. Expressions using variables, AVTs, binds or functions
+//   which might depend on anything else, such as the current language, are not shared.
+// - At runtime, the instance must be a shared instance. The version of its content is the identity of the cached
+//   document, so a reloaded or replaced instance gets new itemsets.
+object SharedItemsets {
+
+  private val CacheName        = "xforms.cache.shared-itemsets"
+  private val CacheDefaultSize = 50
+  private val ConstantValidity = 0L
+
+  private def cache = ObjectCache.instance(CacheName, CacheDefaultSize)
+
+  // Return the id of the instance the itemset of the given selection control depends on, if it only depends on that
+  // instance and can be shared
+  def findSharedInstanceId(selectionElement: Element): Option[String] = {
+
+    val itemElements =
+      Dom4j.elements(selectionElement) filter
+        (e ⇒ e.getQName == XFORMS_ITEMSET_QNAME || e.getQName == XFORMS_ITEM_QNAME || e.getQName == XFORMS_CHOICES_QNAME)
+
+    itemElements match {
+      case Seq(itemsetElement) if itemsetElement.getQName == XFORMS_ITEMSET_QNAME ⇒
+
+        val refOpt = Option(itemsetElement.attributeValue(REF_QNAME)) orElse Option(itemsetElement.attributeValue(NODESET_QNAME))
+
+        refOpt collect {
+          case InstanceRef(instanceId, path) if dependsOnContextOnly(path) && nestedDependOnContextOnly(itemsetElement) ⇒
+            instanceId
+        }
+      case _ ⇒
+        None
+    }
+  }
+
+  // Find the shared itemset for the control, or evaluate it and share it
+  def findOrEvaluate(control: XFormsSelect1Control, instanceId: String): Itemset =
+    sharedInstanceVersion(control, instanceId) match {
+      case Some(version) ⇒
+
+        val key =
+          new InternalCacheKey(
+            CacheName,
+            control.containingDocument.getStaticState.digest + '|' + control.getPrefixedId + '|' + version
+          )
+
+        Option(cache.findValid(key, ConstantValidity).asInstanceOf[Itemset]) getOrElse {
+          val itemset = XFormsItemUtils.evaluateItemset(control, useShared = false)
+          itemset.markShared()
+          cache.add(key, ConstantValidity, itemset)
+          itemset
+        }
+      case None ⇒
+        XFormsItemUtils.evaluateItemset(control, useShared = false)
+    }
+
+  private def sharedInstanceVersion(control: XFormsSelect1Control, instanceId: String): Option[Int] =
+    control.container.findInstance(instanceId) collect {
+      case instance if instance.readonly && instance.instanceCaching.isDefined ⇒
+        instance.documentInfo.getDocumentNumber
+    }
+
+  private val InstanceRef = """(?s)\s*(?:xxf:)?instance\(\s*'([^']+)'\s*\)(.*)""".r
+  private val FunctionCall = """([\w.:-]+)\s*\(""".r
+
+  // Functions and node tests which only depend on their arguments and on the context
+  private val ContextOnlyFunctions = Set(
+    "text", "node", "string", "normalize-space", "concat", "substring", "substring-before", "substring-after",
+    "translate", "upper-case", "lower-case", "name", "local-name", "position", "last", "count", "not", "true",
+    "false", "boolean", "number", "string-join", "exists", "empty"
+  )
+
+  private def dependsOnContextOnly(expression: String) =
+    ! expression.contains("$") &&
+      (FunctionCall findAllMatchIn expression forall (m ⇒ ContextOnlyFunctions(m.group(1))))
+
+  private val ExpressionAttributes = Set(REF_QNAME, NODESET_QNAME, CONTEXT_QNAME, VALUE_QNAME)
+  private val VariableElements     = Set(XFORMS_VAR_QNAME, XFORMS_VARIABLE_QNAME, XXFORMS_VAR_QNAME, XXFORMS_VARIABLE_QNAME, EXFORMS_VARIABLE_QNAME)
+
+  private def nestedDependOnContextOnly(itemsetElement: Element): Boolean = {
+
+    def descendants(e: Element): Iterator[Element] =
+      Dom4j.elements(e).iterator flatMap (child ⇒ Iterator(child) ++ descendants(child))
+
+    descendants(itemsetElement) forall { e ⇒
+      ! VariableElements(e.getQName) &&
+        (e.attributes.asScala forall { att ⇒
+          att.getQName != BIND_QNAME &&
+            ! att.getValue.contains("{") &&
+            (! ExpressionAttributes(att.getQName) || dependsOnContextOnly(att.getValue))
+        })
+    }
+  }
+}
@@ -70,13 +70,15 @@ object XFormsItemUtils {
     * @param select1Control control to evaluate
     * @return Itemset
     */
-  def evaluateItemset(select1Control: XFormsSelect1Control): Itemset = {
+  def evaluateItemset(select1Control: XFormsSelect1Control, useShared: Boolean = true): Itemset = {
 
     val staticControl = select1Control.staticControl
 
     staticControl.staticItemset match {
       case Some(staticItemset) ⇒
         staticItemset
+      case None if useShared && staticControl.sharedItemsetInstanceId.isDefined ⇒
+        SharedItemsets.findOrEvaluate(select1Control, staticControl.sharedItemsetInstanceId.get)
       case None ⇒
 
         val isMultiple = staticControl.isMultiple
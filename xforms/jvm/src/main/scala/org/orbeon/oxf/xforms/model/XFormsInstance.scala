@@ -26,10 +26,11 @@ import org.orbeon.oxf.xforms.analysis.model.Instance
 import org.orbeon.oxf.xforms.control.controls.XFormsRepeatControl
 import org.orbeon.oxf.xforms.event._
 import org.orbeon.oxf.xforms.event.events._
-import org.orbeon.oxf.xforms.state.InstanceState
+import org.orbeon.oxf.xforms.state.{BinaryInstanceContent, InstanceContent, InstanceEncoding, InstanceState, XMLInstanceContent}
 import org.orbeon.oxf.xml.dom4j.{Dom4jUtils, LocationData}
 import org.orbeon.oxf.xml.{TransformerUtils, XMLReceiver}
 import org.orbeon.saxon.om.{DocumentInfo, NodeInfo, VirtualNode}
+import org.orbeon.saxon.tinytree.{TinyDocumentImpl, TinyTree}
 import org.orbeon.scaxon.NodeConversions._
 import org.orbeon.xforms.XFormsId
 
@@ -271,6 +272,17 @@ class XFormsInstance(
       case _                        ⇒ None
     }
 
+  // Rough estimate of the memory retained by the instance document, in bytes
+  // A readonly instance coming from the shared instances cache is retained by that cache, so it doesn't count.
+  def approximateWeight: Long =
+    if (_readonly && _instanceCaching.isDefined)
+      0L
+    else
+      _documentInfo match {
+        case tinyDocument: TinyDocumentImpl ⇒ XFormsInstance.tinyTreeWeight(tinyDocument.getTree)
+        case _                              ⇒ underlyingDocumentOpt map (d ⇒ XFormsInstance.elementWeight(d.getRootElement)) getOrElse 0L
+      }
+
   // LATER: Measure performance of Dom4jUtils.domToString(instance.getDocument)
   def contentAsString =
     underlyingDocumentOpt map
@@ -500,6 +512,37 @@ object XFormsInstance extends Logging {
 
   import Instance._
 
+  // Approximate per-node costs, including the node objects, their containers and, for mutable instances, the
+  // `InstanceData` holding MIPs
+  private val TinyNodeWeight      = 20L
+  private val TinyAttributeWeight = 60L
+  private val DomElementWeight    = 150L
+  private val DomAttributeWeight  = 80L
+  private val DomNodeWeight       = 60L
+
+  private def tinyTreeWeight(tree: TinyTree): Long =
+    tree.getNumberOfNodes * TinyNodeWeight + tree.getNumberOfAttributes * TinyAttributeWeight + tree.getCharacterBuffer.length * 2L
+
+  private def elementWeight(element: Element): Long = {
+
+    var weight = DomElementWeight
+
+    val attributesIt = element.attributes.iterator
+    while (attributesIt.hasNext)
+      weight += DomAttributeWeight + attributesIt.next().getValue.length * 2L
+
+    val contentIt = element.content.iterator
+    while (contentIt.hasNext)
+      weight += (
+        contentIt.next() match {
+          case child: Element ⇒ elementWeight(child)
+          case other          ⇒ DomNodeWeight + Option(other.getText).map(_.length * 2L).getOrElse(0L)
+        }
+      )
+
+    weight
+  }
+
   // Create an initial instance without caching information
   def apply(model: XFormsModel, instance: Instance, documentInfo: DocumentInfo): XFormsInstance =
     new XFormsInstance(
@@ -529,6 +572,16 @@ object XFormsInstance extends Logging {
     else
       wrapDocument(Dom4jUtils.readDom4j(xmlString), exposeXPathTypes)
 
+  def createDocumentInfo(content: InstanceContent, readonly: Boolean, exposeXPathTypes: Boolean): DocumentInfo =
+    content match {
+      case XMLInstanceContent(xmlString) ⇒
+        createDocumentInfo(xmlString, readonly, exposeXPathTypes)
+      case BinaryInstanceContent(bytes) if readonly ⇒
+        InstanceEncoding.decodeToTinyTree(XPath.GlobalConfiguration, bytes)
+      case BinaryInstanceContent(bytes) ⇒
+        wrapDocument(InstanceEncoding.decodeToDom4j(bytes), exposeXPathTypes)
+    }
+
   // Take a non-wrapped DocumentInfo and wrap it if needed
   def wrapDocumentInfo(documentInfo: DocumentInfo, readonly: Boolean, exposeXPathTypes: Boolean): DocumentInfo = {
     assert(
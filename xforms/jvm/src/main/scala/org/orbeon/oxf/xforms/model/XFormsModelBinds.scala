@@ -46,7 +46,7 @@ class XFormsModelBinds(protected val model: XFormsModel)
   protected val staticModel        = model.getStaticModel
 
   protected implicit def logger = model.getIndentedLogger
-  protected implicit def reporter: XPath.Reporter = containingDocument.getRequestStats.addXPathStat
+  protected implicit def reporter: XPath.Reporter = containingDocument.getRequestStats.getBindReporter
 
   // Support for `xxf:evaluate-bind-property` function
   def evaluateBindByType(bind: RuntimeBind, position: Int, mipType: QName): Option[AtomicValue] = {
@@ -0,0 +1,237 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xforms.processor
+
+import java.net.URLEncoder
+
+import org.orbeon.oxf.cache.{InternalCacheKey, ObjectCache}
+import org.orbeon.oxf.externalcontext.ExternalContext
+import org.orbeon.oxf.http.{Headers, HttpMethod}
+import org.orbeon.oxf.servlet.OrbeonXFormsFilter
+import org.orbeon.oxf.util.CoreUtils._
+import org.orbeon.oxf.util.{IndentedLogger, SecureUtils}
+import org.orbeon.oxf.xforms.XFormsProperties.INITIAL_RESPONSE_CACHE_PROPERTY
+import org.orbeon.oxf.xforms.action.XFormsAPI
+import org.orbeon.oxf.xforms.state.{DynamicState, XFormsState, XFormsStateManager, XFormsStaticStateCache}
+import org.orbeon.oxf.xforms.XFormsConstants.DeploymentType
+import org.orbeon.oxf.xforms.XFormsContainingDocument
+import org.orbeon.oxf.xml.{ForwardingXMLReceiver, SAXStore, XMLReceiver}
+import org.xml.sax.Attributes
+import org.xml.sax.helpers.AttributesImpl
+
+import scala.collection.JavaConverters._
+import scala.util.control.NonFatal
+
+// Cache of the initial response of forms which enable the `xxf:initial-response-cache` property, so that new form
+// sessions for such forms don't run the XForms initialization.
+//
+// - Entries are keyed by the static state digest, the request path and the request parameters. The form author
+//   enables the property when the initial state of the form depends on nothing else, for example not on the user,
+//   on other request headers, or on the current time.
+// - An entry holds the initial XHTML and the initial dynamic state, without request information. A new document is
+//   restored from the dynamic state with a new UUID, taking request information from the current request, and the
+//   XHTML is replayed with the new UUID.
+// - Only documents with server-side state, in a servlet and not embedded, and without anything pending after
+//   initialization, such as asynchronous submissions or delayed events, are cached.
+object InitialResponseCache {
+
+  private case class Entry(uuid: String, response: SAXStore, dynamicState: DynamicState)
+
+  private val CacheName        = "xforms.cache.initial-responses"
+  private val CacheDefaultSize = 20
+  private val ConstantValidity = 0L
+
+  private lazy val cache = ObjectCache.instance(CacheName, CacheDefaultSize)
+
+  // Whether the response for the given document, just initialized, can be cached
+  def isCacheable(containingDocument: XFormsContainingDocument, outputName: String): Boolean = {
+
+    val staticState = containingDocument.getStaticState
+
+    outputName == "document"                                             &&
+      staticState.staticBooleanProperty(INITIAL_RESPONSE_CACHE_PROPERTY) &&
+      staticState.isServerStateHandling                                  &&
+      ! containingDocument.isNoUpdates                                   &&
+      containingDocument.getDeploymentType == DeploymentType.standalone  &&
+      ! containingDocument.isEmbedded                                    &&
+      ! containingDocument.isGotSubmissionReplaceAll                     &&
+      containingDocument.getLoadsToRun.isEmpty                           &&
+      containingDocument.delayedEvents.isEmpty                           &&
+      ! hasPendingAsynchronousSubmissions(containingDocument)
+  }
+
+  // Store the response produced for a document which is cacheable
+  def store(
+    staticStateDigest  : String,
+    externalContext    : ExternalContext,
+    containingDocument : XFormsContainingDocument,
+    response           : SAXStore
+  ): Unit =
+    cacheKey(staticStateDigest, externalContext.getRequest) foreach { key ⇒
+
+      val dynamicState =
+        XFormsAPI.withContainingDocument(containingDocument) {
+          DynamicState(containingDocument)
+        }
+
+      // Don't keep information about the request which created the entry
+      val dynamicStateWithoutRequest =
+        dynamicState.copy(
+          deploymentType     = None,
+          requestContextPath = None,
+          requestPath        = None,
+          requestHeaders     = Nil,
+          requestParameters  = Nil,
+          containerType      = None,
+          containerNamespace = None
+        )
+
+      cache.add(key, ConstantValidity, Entry(containingDocument.getUUID, response, dynamicStateWithoutRequest))
+    }
+
+  // Create a new document from a cached response and replay that response, or return `false`
+  def findAndReplay(
+    staticStateDigest : String,
+    externalContext   : ExternalContext,
+    xmlReceiver       : XMLReceiver)(implicit
+    indentedLogger    : IndentedLogger
+  ): Boolean = {
+
+    val entryOpt =
+      for {
+        key         ← cacheKey(staticStateDigest, externalContext.getRequest)
+        staticState ← XFormsStaticStateCache.findDocument(staticStateDigest)
+        if staticState.topLevelPart.metadata.bindingsIncludesAreUpToDate
+        entry       ← Option(cache.findValid(key, ConstantValidity).asInstanceOf[Entry])
+      } yield
+        key → entry
+
+    entryOpt exists { case (key, entry) ⇒
+
+      val newUUID = SecureUtils.randomHexId
+
+      val containingDocumentOpt =
+        try
+          Some(
+            new XFormsContainingDocument(
+              XFormsState(Some(staticStateDigest), None, Some(entry.dynamicState.copy(uuid = newUUID))),
+              false,
+              false
+            )
+          )
+        catch {
+          case NonFatal(t) ⇒
+            indentedLogger.logWarning("", "cannot restore cached initial response, initializing document", t)
+            cache.remove(key)
+            None
+        }
+
+      containingDocumentOpt foreach { containingDocument ⇒
+
+        indentedLogger.logDebug("", "replaying cached initial response", "uuid", newUUID)
+
+        entry.response.replay(new ReplaceUUIDXMLReceiver(xmlReceiver, entry.uuid, newUUID))
+
+        XFormsAPI.withContainingDocument(containingDocument) {
+          XFormsStateManager.afterInitialResponse(containingDocument, disableDocumentCache = false)
+        }
+      }
+
+      containingDocumentOpt.isDefined
+    }
+  }
+
+  private def cacheKey(staticStateDigest: String, request: ExternalContext.Request): Option[InternalCacheKey] = {
+
+    def isPlainRequest =
+      request.getMethod == HttpMethod.GET                                                          &&
+        request.getContainerType == "servlet"                                                     &&
+        ! request.getAttributesMap.containsKey(OrbeonXFormsFilter.RendererDeploymentAttributeName) &&
+        request.getFirstHeader(Headers.OrbeonClientLower).isEmpty
+
+    def parameters =
+      request.getParameterMap.asScala.toList map { case (name, values) ⇒
+        name → (values map (_.toString)).toList
+      }
+
+    isPlainRequest option
+      new InternalCacheKey(CacheName, cacheKeyString(staticStateDigest, request.getRequestPath, parameters))
+  }
+
+  // All parts are encoded so that separators can't appear in them, and different requests can't produce the same key
+  private[processor] def cacheKeyString(
+    staticStateDigest : String,
+    requestPath       : String,
+    parameters        : List[(String, List[String])]
+  ): String = {
+
+    def encode(s: String) = URLEncoder.encode(s, "UTF-8")
+
+    val encodedParameters =
+      parameters sortBy (_._1) map { case (name, values) ⇒
+        encode(name) + "=" + (values map encode mkString ",")
+      }
+
+    staticStateDigest + "|" + encode(requestPath) + "|" + (encodedParameters mkString "&")
+  }
+
+  private def hasPendingAsynchronousSubmissions(containingDocument: XFormsContainingDocument) =
+    Option(containingDocument.getAsynchronousSubmissionManager(false)) exists (_.hasPendingAsynchronousSubmissions)
+
+  // The UUID is found in attributes, such as the value of the `$uuid` field, and possibly in scripts. Adjacent
+  // character events are gathered before replacing, as the UUID can be split between events.
+  private[processor] class ReplaceUUIDXMLReceiver(xmlReceiver: XMLReceiver, oldUUID: String, newUUID: String)
+    extends ForwardingXMLReceiver(xmlReceiver) {
+
+    private val text = new java.lang.StringBuilder
+
+    private def flushText(): Unit =
+      if (text.length > 0) {
+        val newText = text.toString.replace(oldUUID, newUUID).toCharArray
+        text.setLength(0)
+        super.characters(newText, 0, newText.length)
+      }
+
+    override def characters(chars: Array[Char], start: Int, length: Int): Unit =
+      text.append(chars, start, length)
+
+    override def startElement(uri: String, localname: String, qName: String, attributes: Attributes): Unit = {
+
+      flushText()
+
+      val hasUUID = (0 until attributes.getLength) exists (i ⇒ attributes.getValue(i).contains(oldUUID))
+
+      if (hasUUID) {
+        val newAttributes = new AttributesImpl(attributes)
+        for (i ← 0 until newAttributes.getLength)
+          newAttributes.setValue(i, newAttributes.getValue(i).replace(oldUUID, newUUID))
+        super.startElement(uri, localname, qName, newAttributes)
+      } else
+        super.startElement(uri, localname, qName, attributes)
+    }
+
+    override def endElement(uri: String, localname: String, qName: String): Unit = { flushText(); super.endElement(uri, localname, qName) }
+    override def endDocument(): Unit = { flushText(); super.endDocument() }
+    override def startPrefixMapping(prefix: String, uri: String): Unit = { flushText(); super.startPrefixMapping(prefix, uri) }
+    override def endPrefixMapping(prefix: String): Unit = { flushText(); super.endPrefixMapping(prefix) }
+    override def ignorableWhitespace(chars: Array[Char], start: Int, length: Int): Unit = { flushText(); super.ignorableWhitespace(chars, start, length) }
+    override def processingInstruction(target: String, data: String): Unit = { flushText(); super.processingInstruction(target, data) }
+    override def skippedEntity(name: String): Unit = { flushText(); super.skippedEntity(name) }
+    override def comment(chars: Array[Char], start: Int, length: Int): Unit = { flushText(); super.comment(chars, start, length) }
+    override def startCDATA(): Unit = { flushText(); super.startCDATA() }
+    override def endCDATA(): Unit = { flushText(); super.endCDATA() }
+    override def startEntity(name: String): Unit = { flushText(); super.startEntity(name) }
+    override def endEntity(name: String): Unit = { flushText(); super.endEntity(name) }
+  }
+}
@@ -124,7 +124,7 @@ case class DynamicState(
 
           instanceState.cachingOrContent match {
             case Left(caching)  ⇒ caching.writeAttributes(att)
-            case Right(content) ⇒ instanceElement.addText(content)
+            case Right(content) ⇒ instanceElement.addText(content.contentAsString)
 
           }
 
@@ -198,7 +198,7 @@ case class ControlState(
 case class InstanceState(
   effectiveId      : String,
   modelEffectiveId : String,
-  cachingOrContent : InstanceCaching Either String,
+  cachingOrContent : InstanceCaching Either InstanceContent,
   readonly         : Boolean,
   modified         : Boolean,
   valid            : Boolean
@@ -208,12 +208,35 @@ case class InstanceState(
     this(
       instance.getEffectiveId,
       instance.parent.getEffectiveId,
-      instance.instanceCaching.toLeft(instance.contentAsString),
+      instance.instanceCaching.toLeft(BinaryInstanceContent(InstanceEncoding.encode(instance.documentInfo))),
       instance.readonly,
       instance.modified,
       instance.valid)
 }
 
+// Content of an instance which is not cached
+sealed trait InstanceContent {
+  def contentAsString: String
+}
+
+// Instance serialized as XML text, as written by versions which don't support the binary encoding
+case class XMLInstanceContent(xmlString: String) extends InstanceContent {
+  def contentAsString = xmlString
+}
+
+// Instance encoded with `InstanceEncoding`
+case class BinaryInstanceContent(bytes: Array[Byte]) extends InstanceContent {
+
+  def contentAsString = TransformerUtils.dom4jToString(InstanceEncoding.decodeToDom4j(bytes), false)
+
+  override def equals(other: Any) = other match {
+    case BinaryInstanceContent(otherBytes) ⇒ java.util.Arrays.equals(bytes, otherBytes)
+    case _                                 ⇒ false
+  }
+
+  override def hashCode = java.util.Arrays.hashCode(bytes)
+}
+
 case class InstancesControls(instances: List[InstanceState], controls: Map[String, ControlState]) {
   def instancesJava = instances.asJava
 }
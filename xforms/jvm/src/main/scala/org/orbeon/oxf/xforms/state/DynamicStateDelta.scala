@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xforms.state
+
+import org.orbeon.oxf.xforms.state.XFormsOperations._
+import org.orbeon.oxf.xforms.state.XFormsProtocols._
+import sbinary.Format
+
+// Dynamic state stored as the difference with a base dynamic state, namely the initial state of the same document.
+//
+// - The base is stored under its own key, and the delta only refers to it, so it must be resolved against the base
+//   when read.
+// - Instances and controls, which make up most of the dynamic state, only include entries which differ from the
+//   base. The other parts of the dynamic state are small and are kept in full in `state`.
+case class DynamicStateDelta(
+  baseKey          : String,       // key of the initial state of the document
+  state            : DynamicState, // current state without instances and controls
+  instanceIds      : List[String], // effective ids of all the instances, in order
+  changedInstances : Seq[Byte],    // `List[InstanceState]` of instances which are new or differ from the base
+  controlIds       : List[String], // effective ids of all the controls, in order
+  changedControls  : Seq[Byte]     // `List[ControlState]` of controls which are new or differ from the base
+) {
+
+  def size = changedInstances.size + changedControls.size
+
+  def resolve(base: DynamicState): DynamicState = {
+
+    import DynamicStateDelta._
+
+    state.copy(
+      instances = merge(base.instances, changedInstances, instanceIds)(_.effectiveId),
+      controls  = merge(base.controls,  changedControls,  controlIds)(_.effectiveId)
+    )
+  }
+}
+
+object DynamicStateDelta {
+
+  def diff(baseKey: String, base: DynamicState, current: DynamicState): DynamicStateDelta = {
+
+    val (instanceIds, changedInstances) = changed[InstanceState](base.instances, current.instances)(_.effectiveId)
+    val (controlIds,  changedControls)  = changed[ControlState](base.controls, current.controls)(_.effectiveId)
+
+    DynamicStateDelta(
+      baseKey          = baseKey,
+      state            = current.copy(instances = NoEntries, controls = NoEntries),
+      instanceIds      = instanceIds,
+      changedInstances = changedInstances,
+      controlIds       = controlIds,
+      changedControls  = changedControls
+    )
+  }
+
+  // An empty list is encoded the same way whatever the type of its elements
+  private val NoEntries = toByteSeq(List.empty[InstanceState])
+
+  // Ids of the current entries, and current entries which are new or differ from the base
+  private def changed[T: Format](base: Seq[Byte], current: Seq[Byte])(id: T ⇒ String): (List[String], Seq[Byte]) = {
+
+    val currentEntries = fromByteSeq[List[T]](current)
+    val currentIds     = currentEntries map id
+
+    // Don't decode the base when nothing changed
+    if (base == current)
+      (currentIds, toByteSeq(List.empty[T]))
+    else {
+      val baseById = fromByteSeq[List[T]](base).map(t ⇒ id(t) → t).toMap
+      (currentIds, toByteSeq(currentEntries filterNot (t ⇒ baseById.get(id(t)) contains t)))
+    }
+  }
+
+  private def merge[T: Format](base: Seq[Byte], changed: Seq[Byte], ids: List[String])(id: T ⇒ String): Seq[Byte] = {
+    val byId = (fromByteSeq[List[T]](base) ++ fromByteSeq[List[T]](changed)).map(t ⇒ id(t) → t).toMap // changed entries replace base entries
+    toByteSeq(ids map byId)
+  }
+}
@@ -13,10 +13,15 @@
  */
 package org.orbeon.oxf.xforms.state
 
-import net.sf.ehcache.{Element ⇒ EhElement}
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream, ObjectOutputStream}
+
+import net.sf.ehcache.event.CacheEventListenerAdapter
+import net.sf.ehcache.{Ehcache, Element ⇒ EhElement}
 import org.orbeon.oxf.externalcontext.ExternalContext
 import org.orbeon.oxf.logging.LifecycleLogger
-import org.orbeon.oxf.util.{IndentedLogger, SecureUtils}
+import org.orbeon.oxf.util.CoreUtils._
+import org.orbeon.oxf.util.IOUtils._
+import org.orbeon.oxf.util.{IndentedLogger, SecureUtils, WhitelistObjectInputStream}
 import org.orbeon.oxf.xforms._
 import org.orbeon.oxf.util.Logging._
 
@@ -40,21 +45,33 @@ object EhcacheStateStore {
     withDebug("storing document state", List(
       "document UUID"             → documentUUID,
       "store size before storing" → getCurrentSize.toString,
-      "replication"               → XFormsProperties.isReplication.toString
+      "replication"               → XFormsProperties.isReplication.toString,
+      "off-heap used bytes"       → getOffHeapUsedBytes.map(_.toString).orNull
     )) {
       val staticStateDigest = document.getStaticState.digest
       val dynamicStateKey   = createDynamicStateKey(documentUUID, isInitialState)
       val sequence          = document.getSequence
 
-      def addOrReplaceOne(key: String, value: java.io.Serializable): Unit =
-        Caches.stateCache.put(new EhElement(key, value, sequence))
+      def addOrReplaceOne(key: String, value: java.io.Serializable, offHeap: Boolean): Unit =
+        Caches.stateCache.put(new EhElement(key, if (offHeap) storeOffHeapIfEnabled(key, value) else value, sequence))
 
       // Mapping (UUID → static state key : dynamic state key
-      addOrReplaceOne(documentUUID, staticStateDigest + ":" + dynamicStateKey)
+      addOrReplaceOne(documentUUID, staticStateDigest + ":" + dynamicStateKey, offHeap = false)
 
       // Static and dynamic states
-      addOrReplaceOne(staticStateDigest, document.getStaticState.encodedState) // XXX Q: is there a cost to replacing static state? value will be the same!
-      addOrReplaceOne(dynamicStateKey, DynamicState(document))
+      addOrReplaceOne(staticStateDigest, document.getStaticState.encodedState, offHeap = false) // XXX Q: is there a cost to replacing static state? value will be the same!
+
+      val dynamicState = DynamicState(document)
+
+      // The initial state stays stored under its own key, and a delta only refers to it
+      val deltaOpt =
+        findDeltaBase(documentUUID, isInitialState) flatMap {
+          case (baseKey, base) ⇒ smallEnoughDelta(baseKey, base, dynamicState)
+        }
+
+      val dynamicStateOrDelta: java.io.Serializable = deltaOpt getOrElse dynamicState
+
+      addOrReplaceOne(dynamicStateKey, dynamicStateOrDelta, offHeap = ! isInitialState)
     }
   }
 
@@ -77,8 +94,6 @@ object EhcacheStateStore {
 
       debug(s"store size before finding: $getCurrentSize entries.")
 
-      def findOne(key: String) = Option(Caches.stateCache.get(key)) map (_.getObjectValue)
-
       findOne(documentUUID) match {
         case Some(keyString: String) ⇒
 
@@ -89,15 +104,22 @@ object EhcacheStateStore {
           assert(parts(0).length == SecureUtils.HexIdLength)   // static state key is an hex hash
 
           // If isInitialState == true, force finding the initial state. Otherwise, use current state stored in mapping.
-          val dynamicStateKey = if (isInitialState) createDynamicStateKey(documentUUID, isInitialState = true) else parts(1)
-
-          // Gather values from cache for both keys and return state only if both are non-null
-          Stream(parts(0), dynamicStateKey) flatMap findOne filter (_ ne null) match {
-            case Stream(staticState: String, dynamicState: DynamicState) ⇒
-              Some(XFormsState(Some(parts(0)), Some(staticState), Some(dynamicState)))
-            case _ ⇒
-              None
-          }
+          val dynamicStateOpt =
+            if (isInitialState)
+              findInitialDynamicState(documentUUID)
+            else
+              findOne(parts(1)) flatMap {
+                case dynamicState: DynamicState ⇒ Some(dynamicState)
+                case delta: DynamicStateDelta   ⇒ findDynamicState(delta.baseKey) map delta.resolve
+                case _                          ⇒ None
+              }
+
+          // Return state only if both are found
+          for {
+            staticState  ← findOne(parts(0)) collect { case staticState: String ⇒ staticState }
+            dynamicState ← dynamicStateOpt
+          } yield
+            XFormsState(Some(parts(0)), Some(staticState), Some(dynamicState))
 
         case _ ⇒
           None
@@ -106,19 +128,117 @@ object EhcacheStateStore {
 
   // NOTE: Don't remove the static state as it might be in use by other form sessions.
   def removeDynamicState(documentUUID: String): Unit = {
+
+    val dynamicStateKeys =
+      List(createDynamicStateKey(documentUUID, isInitialState = true), createDynamicStateKey(documentUUID, isInitialState = false))
+
     Caches.stateCache.remove(documentUUID)
-    Caches.stateCache.remove(createDynamicStateKey(documentUUID, isInitialState = true))
-    Caches.stateCache.remove(createDynamicStateKey(documentUUID, isInitialState = false))
+    dynamicStateKeys foreach removeOne
   }
 
   def getMaxSize     : Long = Caches.stateCache.getCacheConfiguration.getMaxEntriesLocalHeap
   def getCurrentSize : Long = Caches.stateCache.getMemoryStoreSize
 
+  // Statistics for the off-heap tier, if enabled
+  def getOffHeapCurrentSize   : Option[Int]  = offHeapStoreOpt map (_.getCurrentSize)
+  def getOffHeapUsedBytes     : Option[Long] = offHeapStoreOpt map (_.getUsedBytes)
+  def getOffHeapEvictionCount : Option[Long] = offHeapStoreOpt map (_.getEvictionCount)
+
+  // Placeholder stored in Ehcache for a value held by the off-heap tier
+  case object OffHeapReference
+
+  // Remove values from the off-heap tier when Ehcache expires or evicts their placeholder, as the tier would otherwise
+  // keep them until it needs room
+  private[state] class OffHeapCleanupListener(offHeapStore: OffHeapStore) extends CacheEventListenerAdapter {
+
+    override def notifyElementExpired(cache: Ehcache, element: EhElement): Unit = removeOffHeap(element)
+    override def notifyElementEvicted(cache: Ehcache, element: EhElement): Unit = removeOffHeap(element)
+
+    private def removeOffHeap(element: EhElement): Unit =
+      (element.getObjectKey, element.getObjectValue) match {
+        case (key: String, OffHeapReference) ⇒ offHeapStore.remove(key)
+        case _                               ⇒
+      }
+  }
+
   private object Private {
 
     implicit val logger: IndentedLogger = XFormsStateManager.Logger
 
     def createDynamicStateKey(documentUUID: String, isInitialState: Boolean) =
       documentUUID + (if (isInitialState) "-I" else "-C") // key is different for initial vs. subsequent state
+
+    def findOne(key: String): Option[AnyRef] =
+      Option(Caches.stateCache.get(key)) map (_.getObjectValue) flatMap {
+        case OffHeapReference ⇒ offHeapStoreOpt flatMap (_.get(key)) map deserialize // `None` if dropped by the tier
+        case value            ⇒ Option(value)
+      }
+
+    def removeOne(key: String): Unit = {
+      Caches.stateCache.remove(key)
+      offHeapStoreOpt foreach (_.remove(key))
+    }
+
+    def findDynamicState(key: String): Option[DynamicState] =
+      findOne(key) collect { case dynamicState: DynamicState ⇒ dynamicState }
+
+    def findInitialDynamicState(documentUUID: String): Option[DynamicState] =
+      findDynamicState(createDynamicStateKey(documentUUID, isInitialState = true))
+
+    // Optional tier keeping serialized current dynamic states outside of the Java heap. Ehcache then only holds
+    // `OffHeapReference` placeholders for these values, and still handles expiration of the mapping entries. The
+    // tier is local to this node, so it is not used with replication.
+    //
+    // The tier drops least recently used values when full, which loses the state of their document only. So static
+    // states, which are shared by documents, and initial states, which back/reload and deltas need, are not stored
+    // in the tier and stay in Ehcache.
+    lazy val offHeapStoreOpt: Option[OffHeapStore] = {
+      val sizeMB = XFormsProperties.getStateOffHeapSizeMB
+      sizeMB > 0 && ! XFormsProperties.isReplication option {
+        val offHeapStore =
+          new OffHeapStore(sizeMB * 1024L * 1024L, OffHeapStore.DefaultPageSize, XFormsProperties.isStateOffHeapMappedFile)
+        Caches.stateCache.getCacheEventNotificationService.registerListener(new OffHeapCleanupListener(offHeapStore))
+        offHeapStore
+      }
+    }
+
+    def storeOffHeapIfEnabled(key: String, value: java.io.Serializable): java.io.Serializable =
+      offHeapStoreOpt match {
+        case Some(offHeapStore) if offHeapStore.put(key, serialize(value)) ⇒ OffHeapReference
+        case _                                                             ⇒ value
+      }
+
+    def serialize(value: java.io.Serializable): Array[Byte] = {
+      val os = new ByteArrayOutputStream
+      useAndClose(new ObjectOutputStream(os))(_.writeObject(value))
+      os.toByteArray
+    }
+
+    def deserialize(bytes: Array[Byte]): AnyRef =
+      useAndClose(WhitelistObjectInputStream(new ByteArrayInputStream(bytes), classOf[DynamicState], classOf[DynamicStateDelta]))(_.readObject)
+
+    // Store subsequent states as a delta against the initial state, unless the delta is too large compared with the
+    // full state. Deltas are always computed against the initial state and never against each other, so storing the
+    // full state in that case is enough to compact it.
+    def findDeltaBase(documentUUID: String, isInitialState: Boolean): Option[(String, DynamicState)] =
+      if (isInitialState || XFormsProperties.getStateDeltaThreshold <= 0)
+        None
+      else {
+        val initialStateKey = createDynamicStateKey(documentUUID, isInitialState = true)
+        findDynamicState(initialStateKey) map (initialStateKey → _)
+      }
+
+    def smallEnoughDelta(baseKey: String, base: DynamicState, dynamicState: DynamicState): Option[DynamicStateDelta] = {
+
+      val delta    = DynamicStateDelta.diff(baseKey, base, dynamicState)
+      val fullSize = dynamicState.instances.size + dynamicState.controls.size
+
+      debug("computed dynamic state delta", List(
+        "delta size" → delta.size.toString,
+        "full size"  → fullSize.toString
+      ))
+
+      delta.size.toLong * 100 <= fullSize.toLong * XFormsProperties.getStateDeltaThreshold option delta
+    }
   }
 }
\ No newline at end of file
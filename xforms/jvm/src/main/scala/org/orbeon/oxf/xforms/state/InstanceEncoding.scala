@@ -0,0 +1,370 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xforms.state
+
+import java.io.ByteArrayOutputStream
+import java.{util ⇒ ju}
+
+import org.orbeon.dom.{Document, DocumentFactory, Element, Namespace, QName}
+import org.orbeon.oxf.common.OXFException
+import org.orbeon.saxon.Configuration
+import org.orbeon.saxon.event.{NamespaceReducer, Receiver}
+import org.orbeon.saxon.om.{Axis, DocumentInfo, NodeInfo, StandardNames}
+import org.orbeon.saxon.tinytree.TinyBuilder
+import org.orbeon.saxon.`type`.Type
+
+import scala.collection.mutable
+
+// Compact binary encoding of instance documents for the dynamic state.
+//
+// Compared with serializing instances to XML text and parsing them back:
+//
+// - element and attribute names are written once and then referred to by index
+// - namespace URIs, prefixes, and short attribute and text values are shared through a string table
+// - decoding builds the Orbeon DOM or the TinyTree directly, without going through a parser, and allocates each
+//   distinct name in the `NamePool` only once
+//
+// The encoding starts with a version byte so that the format can evolve while older state still decodes.
+object InstanceEncoding {
+
+  val FormatVersion = 1
+
+  // Node tags
+  private val EndTag     = 0
+  private val ElementTag = 1
+  private val TextTag    = 2
+  private val CommentTag = 3
+  private val PITag      = 4
+
+  // Values longer than this are written inline and not added to the string table
+  private val MaxSharedValueLength = 32
+
+  def encode(document: DocumentInfo): Array[Byte] = {
+    val encoder = new Encoder
+    encoder.writeVarInt(FormatVersion)
+    encoder.writeChildren(document)
+    encoder.writeVarInt(EndTag)
+    encoder.toByteArray
+  }
+
+  def decodeToDom4j(bytes: Array[Byte]): Document = {
+    val builder = new Dom4jTreeBuilder
+    new Decoder(bytes, builder).decodeDocument()
+    builder.document
+  }
+
+  def decodeToTinyTree(configuration: Configuration, bytes: Array[Byte]): DocumentInfo = {
+    val builder = new TinyTreeBuilder(configuration)
+    new Decoder(bytes, builder).decodeDocument()
+    builder.document
+  }
+
+  private class Encoder extends ByteArrayOutputStream(8 * 1024) {
+
+    private val stringIndexes = new ju.HashMap[String, Integer]
+    private val nameIndexes   = new ju.HashMap[(String, String, String), Integer]
+
+    private var namespaceCodes = new Array[Int](8)
+
+    def writeVarInt(value: Int): Unit = {
+      var v = value
+      while ((v & ~0x7f) != 0) {
+        write((v & 0x7f) | 0x80)
+        v >>>= 7
+      }
+      write(v)
+    }
+
+    // 0: inline string, which is not added to the table
+    // n <= table size: string previously added to the table at index n - 1
+    // n = table size + 1: new string, which is added to the table
+    def writeString(s: String, share: Boolean): Unit =
+      if (share) {
+        val existing = stringIndexes.get(s)
+        if (existing ne null) {
+          writeVarInt(existing.intValue + 1)
+        } else {
+          val index = stringIndexes.size
+          stringIndexes.put(s, index)
+          writeVarInt(index + 1)
+          writeRawString(s)
+        }
+      } else {
+        writeVarInt(0)
+        writeRawString(s)
+      }
+
+    private def writeRawString(s: String): Unit = {
+      val bytes = s.getBytes("UTF-8")
+      writeVarInt(bytes.length)
+      write(bytes, 0, bytes.length)
+    }
+
+    // Same scheme as for strings, except that all names are shared
+    private def writeName(prefix: String, uri: String, localName: String): Unit = {
+      val key = (prefix, uri, localName)
+      val existing = nameIndexes.get(key)
+      if (existing ne null) {
+        writeVarInt(existing.intValue)
+      } else {
+        val index = nameIndexes.size
+        nameIndexes.put(key, index)
+        writeVarInt(index)
+        writeString(prefix,    share = true)
+        writeString(uri,       share = true)
+        writeString(localName, share = true)
+      }
+    }
+
+    private def writeValue(value: String): Unit =
+      writeString(value, share = value.length <= MaxSharedValueLength)
+
+    def writeChildren(node: NodeInfo): Unit = {
+      val children = node.iterateAxis(Axis.CHILD)
+      var child = children.next().asInstanceOf[NodeInfo]
+      while (child ne null) {
+        writeNode(child)
+        child = children.next().asInstanceOf[NodeInfo]
+      }
+    }
+
+    private def writeNode(node: NodeInfo): Unit =
+      node.getNodeKind match {
+        case Type.ELEMENT ⇒
+          writeVarInt(ElementTag)
+          writeName(node.getPrefix, node.getURI, node.getLocalPart)
+
+          // Namespace declarations
+          val pool = node.getNamePool
+          namespaceCodes = Option(node.getDeclaredNamespaces(namespaceCodes)) getOrElse NodeInfo.EMPTY_NAMESPACE_LIST
+          val namespaceCount = {
+            var i = 0
+            while (i < namespaceCodes.length && namespaceCodes(i) != -1)
+              i += 1
+            i
+          }
+          writeVarInt(namespaceCount)
+          for (i ← 0 until namespaceCount) {
+            val code = namespaceCodes(i)
+            writeString(pool.getPrefixFromNamespaceCode(code), share = true)
+            writeString(pool.getURIFromNamespaceCode(code),    share = true)
+          }
+
+          // Attributes
+          val attributes = mutable.ArrayBuffer[NodeInfo]()
+          val attributesIt = node.iterateAxis(Axis.ATTRIBUTE)
+          var attribute = attributesIt.next().asInstanceOf[NodeInfo]
+          while (attribute ne null) {
+            attributes += attribute
+            attribute = attributesIt.next().asInstanceOf[NodeInfo]
+          }
+          writeVarInt(attributes.size)
+          for (attribute ← attributes) {
+            writeName(attribute.getPrefix, attribute.getURI, attribute.getLocalPart)
+            writeValue(attribute.getStringValue)
+          }
+
+          writeChildren(node)
+          writeVarInt(EndTag)
+        case Type.TEXT ⇒
+          writeVarInt(TextTag)
+          writeValue(node.getStringValue)
+        case Type.COMMENT ⇒
+          writeVarInt(CommentTag)
+          writeString(node.getStringValue, share = false)
+        case Type.PROCESSING_INSTRUCTION ⇒
+          writeVarInt(PITag)
+          writeString(node.getLocalPart,   share = true)
+          writeString(node.getStringValue, share = false)
+        case _ ⇒ // NOP: other node kinds are not returned by the child axis
+      }
+  }
+
+  // Receives decoded nodes, with names already resolved to the builder's representation
+  private trait TreeBuilder {
+    type Name
+    def name(prefix: String, uri: String, localName: String): Name
+    def startElement(name: Name): Unit
+    def namespace(prefix: String, uri: String): Unit
+    def attribute(name: Name, value: String): Unit
+    def startContent(): Unit
+    def endElement(): Unit
+    def text(value: String): Unit
+    def comment(value: String): Unit
+    def processingInstruction(target: String, data: String): Unit
+    def startDocument(): Unit
+    def endDocument(): Unit
+  }
+
+  private class Decoder(bytes: Array[Byte], val builder: TreeBuilder) {
+
+    private var position = 0
+
+    private val strings = mutable.ArrayBuffer[String]()
+    private val names   = mutable.ArrayBuffer[builder.Name]()
+
+    private def readVarInt(): Int = {
+      var result = 0
+      var shift  = 0
+      var b      = 0
+      do {
+        b = bytes(position) & 0xff
+        position += 1
+        result |= (b & 0x7f) << shift
+        shift += 7
+      } while ((b & 0x80) != 0)
+      result
+    }
+
+    private def readRawString(): String = {
+      val length = readVarInt()
+      val result = new String(bytes, position, length, "UTF-8")
+      position += length
+      result
+    }
+
+    private def readString(): String =
+      readVarInt() match {
+        case 0                              ⇒ readRawString()
+        case index if index <= strings.size ⇒ strings(index - 1)
+        case _                              ⇒ val s = readRawString(); strings += s; s
+      }
+
+    private def readName(): builder.Name = {
+      val index = readVarInt()
+      if (index < names.size)
+        names(index)
+      else {
+        val name = builder.name(readString(), readString(), readString())
+        names += name
+        name
+      }
+    }
+
+    def decodeDocument(): Unit = {
+      val version = readVarInt()
+      if (version != FormatVersion)
+        throw new OXFException(s"Unsupported instance encoding version: $version")
+
+      builder.startDocument()
+      decodeChildren()
+      builder.endDocument()
+    }
+
+    private def decodeChildren(): Unit = {
+      var tag = readVarInt()
+      while (tag != EndTag) {
+        tag match {
+          case ElementTag ⇒
+            builder.startElement(readName())
+            for (_ ← 1 to readVarInt())
+              builder.namespace(readString(), readString())
+            for (_ ← 1 to readVarInt())
+              builder.attribute(readName(), readString())
+            builder.startContent()
+            decodeChildren()
+            builder.endElement()
+          case TextTag ⇒
+            builder.text(readString())
+          case CommentTag ⇒
+            builder.comment(readString())
+          case PITag ⇒
+            builder.processingInstruction(readString(), readString())
+          case other ⇒
+            throw new OXFException(s"Invalid instance encoding tag: $other")
+        }
+        tag = readVarInt()
+      }
+    }
+  }
+
+  private class Dom4jTreeBuilder extends TreeBuilder {
+
+    type Name = QName
+
+    val document = DocumentFactory.createDocument
+
+    private var currentElement: Element = null
+
+    def name(prefix: String, uri: String, localName: String) = QName(localName, Namespace(prefix, uri))
+
+    def startElement(name: QName): Unit = {
+      val element = DocumentFactory.createElement(name)
+      if (currentElement eq null)
+        document.setRootElement(element)
+      else
+        currentElement.add(element)
+      currentElement = element
+    }
+
+    def namespace(prefix: String, uri: String) = currentElement.addNamespace(prefix, uri)
+    def attribute(name: QName, value: String)  = currentElement.addAttribute(name, value)
+    def startContent()                         = ()
+    def endElement()                           = currentElement = currentElement.getParent
+
+    def text(value: String) = currentElement.addText(value)
+
+    def comment(value: String) =
+      if (currentElement eq null) document.addComment(value) else currentElement.addComment(value)
+
+    def processingInstruction(target: String, data: String) =
+      if (currentElement eq null) document.addProcessingInstruction(target, data) else currentElement.addProcessingInstruction(target, data)
+
+    def startDocument() = ()
+    def endDocument()   = ()
+  }
+
+  private class TinyTreeBuilder(configuration: Configuration) extends TreeBuilder {
+
+    type Name = Int
+
+    private val pool           = configuration.getNamePool
+    private val pipelineConfig = configuration.makePipelineConfiguration
+    private val tinyBuilder    = new TinyBuilder
+
+    tinyBuilder.setPipelineConfiguration(pipelineConfig)
+
+    // The encoding only contains namespace declarations, so let the reducer add any missing ones and remove duplicates
+    private val receiver: Receiver = {
+      val reducer = new NamespaceReducer
+      reducer.setUnderlyingReceiver(tinyBuilder)
+      reducer.setPipelineConfiguration(pipelineConfig)
+      reducer
+    }
+
+    def document = tinyBuilder.getCurrentRoot.asInstanceOf[DocumentInfo]
+
+    def name(prefix: String, uri: String, localName: String) = pool.allocate(prefix, uri, localName)
+
+    def startElement(nameCode: Int)             = receiver.startElement(nameCode, StandardNames.XS_UNTYPED, 0, 0)
+    def namespace(prefix: String, uri: String)  = receiver.namespace(pool.allocateNamespaceCode(prefix, uri), 0)
+    def attribute(nameCode: Int, value: String) = receiver.attribute(nameCode, StandardNames.XS_UNTYPED_ATOMIC, value, 0, 0)
+    def startContent()                          = receiver.startContent()
+    def endElement()                            = receiver.endElement()
+
+    def text(value: String)                                 = receiver.characters(value, 0, 0)
+    def comment(value: String)                              = receiver.comment(value, 0, 0)
+    def processingInstruction(target: String, data: String) = receiver.processingInstruction(target, data, 0, 0)
+
+    def startDocument(): Unit = {
+      receiver.open()
+      receiver.startDocument(0)
+    }
+
+    def endDocument(): Unit = {
+      receiver.endDocument()
+      receiver.close()
+    }
+  }
+}
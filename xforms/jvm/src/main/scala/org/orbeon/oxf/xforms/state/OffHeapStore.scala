@@ -0,0 +1,142 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xforms.state
+
+import java.io.{File, RandomAccessFile}
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.{util ⇒ ju}
+
+// Store for serialized state outside of the Java heap.
+//
+// - All the memory is reserved upfront, either as direct buffers or as a memory-mapped temporary file, and divided
+//   into fixed-size pages. So the store has no cost for the garbage collector, besides one small object per entry.
+// - Each entry takes as many pages as needed, which don't need to be contiguous.
+// - When there are not enough free pages, the least recently used entries are dropped. Callers must handle values
+//   disappearing, as they would with any other cache.
+class OffHeapStore(capacity: Long, pageSize: Int, mappedFile: Boolean) {
+
+  import OffHeapStore._
+
+  require(pageSize > 0 && pageSize <= MaxBufferSize)
+
+  private val pageCount      = (capacity / pageSize).toInt
+  private val pagesPerBuffer = MaxBufferSize / pageSize
+
+  private val buffers: Array[ByteBuffer] = {
+
+    val bufferCount = (pageCount + pagesPerBuffer - 1) / pagesPerBuffer
+    def bufferSize(index: Int) = (pageCount - index * pagesPerBuffer).min(pagesPerBuffer).toLong * pageSize
+
+    if (mappedFile) {
+      val file = File.createTempFile("orbeon-state-", ".bin")
+      file.deleteOnExit()
+      val raf = new RandomAccessFile(file, "rw")
+      try {
+        raf.setLength(pageCount.toLong * pageSize)
+        // Mappings remain valid after the channel is closed
+        Array.tabulate(bufferCount)(i ⇒
+          raf.getChannel.map(FileChannel.MapMode.READ_WRITE, i.toLong * pagesPerBuffer * pageSize, bufferSize(i))
+        )
+      } finally {
+        raf.close()
+      }
+    } else
+      Array.tabulate(bufferCount)(i ⇒ ByteBuffer.allocateDirect(bufferSize(i).toInt))
+  }
+
+  private class Entry(val pages: Array[Int], val length: Int)
+
+  // Access order, so that iteration starts with the least recently used entry
+  private val entries = new ju.LinkedHashMap[String, Entry](16, 0.75f, true)
+
+  private val freePages = Array.tabulate(pageCount)(identity)
+  private var freeCount = pageCount
+
+  private var evictionCount = 0L
+
+  // Return `false` if the value can't fit in the store at all
+  def put(key: String, bytes: Array[Byte]): Boolean = synchronized {
+
+    removeEntry(key)
+
+    val neededPages = (bytes.length + pageSize - 1) / pageSize
+
+    if (neededPages > pageCount)
+      false
+    else {
+      while (freeCount < neededPages) {
+        val eldest = entries.entrySet.iterator.next()
+        removeEntry(eldest.getKey)
+        evictionCount += 1
+      }
+
+      val pages = new Array[Int](neededPages)
+      var offset = 0
+      for (i ← 0 until neededPages) {
+        freeCount -= 1
+        pages(i) = freePages(freeCount)
+
+        val length = (bytes.length - offset).min(pageSize)
+        pageBuffer(pages(i)).put(bytes, offset, length)
+        offset += length
+      }
+
+      entries.put(key, new Entry(pages, bytes.length))
+      true
+    }
+  }
+
+  def get(key: String): Option[Array[Byte]] = synchronized {
+    Option(entries.get(key)) map { entry ⇒
+      val bytes = new Array[Byte](entry.length)
+      var offset = 0
+      for (page ← entry.pages) {
+        val length = (entry.length - offset).min(pageSize)
+        pageBuffer(page).get(bytes, offset, length)
+        offset += length
+      }
+      bytes
+    }
+  }
+
+  def remove(key: String): Unit = synchronized {
+    removeEntry(key)
+  }
+
+  def getCurrentSize   : Int  = synchronized { entries.size }
+  def getUsedBytes     : Long = synchronized { (pageCount - freeCount).toLong * pageSize }
+  def getCapacity      : Long = pageCount.toLong * pageSize
+  def getEvictionCount : Long = synchronized { evictionCount }
+
+  private def removeEntry(key: String): Unit =
+    Option(entries.remove(key)) foreach { entry ⇒
+      for (page ← entry.pages) {
+        freePages(freeCount) = page
+        freeCount += 1
+      }
+    }
+
+  // Return a view positioned at the start of the page, so that buffers' own positions are never changed
+  private def pageBuffer(page: Int): ByteBuffer = {
+    val buffer = buffers(page / pagesPerBuffer).duplicate()
+    buffer.position((page % pagesPerBuffer) * pageSize)
+    buffer
+  }
+}
+
+object OffHeapStore {
+  val DefaultPageSize = 8 * 1024
+  val MaxBufferSize   = 1 << 30
+}
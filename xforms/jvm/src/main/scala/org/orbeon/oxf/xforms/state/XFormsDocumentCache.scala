@@ -36,8 +36,11 @@ object XFormsDocumentCache {
   def remove(uuid: String): Unit =
     cache.remove(createCacheKey(uuid))
 
-  def getCurrentSize : Int = cache.getCurrentSize
-  def getMaxSize     : Int = cache.getMaxSize
+  def getCurrentSize   : Int  = cache.getCurrentSize
+  def getMaxSize       : Int  = cache.getMaxSize
+  def getCurrentWeight : Long = cache.getCurrentWeight
+  def getMaxWeight     : Long = cache.getMaxWeight
+  def getEvictionCount : Long = cache.getEvictionCount
 
   private object Private {
 
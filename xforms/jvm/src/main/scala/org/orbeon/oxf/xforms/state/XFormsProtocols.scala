@@ -111,8 +111,9 @@ object XFormsProtocols extends StandardTypes with StandardPrimitives with JavaLo
       write(output, instance.effectiveId)
       write(output, instance.modelEffectiveId)
       instance.cachingOrContent match {
-        case Left(caching)  ⇒ write[Byte](output, 0); write(output, caching)
-        case Right(content) ⇒ write[Byte](output, 1); write(output, content)
+        case Left(caching)                        ⇒ write[Byte](output, 0); write(output, caching)
+        case Right(XMLInstanceContent(xmlString)) ⇒ write[Byte](output, 1); write(output, xmlString)
+        case Right(BinaryInstanceContent(bytes))  ⇒ write[Byte](output, 2); write(output, bytes.length); output.writeAll(bytes, 0, bytes.length)
       }
       write(output, instance.readonly)
       write(output, instance.modified)
@@ -121,9 +122,14 @@ object XFormsProtocols extends StandardTypes with StandardPrimitives with JavaLo
 
     def reads(in: Input) = {
 
+      // Tag 1 is the XML text representation written by older versions
       def readCachingOrContent = read[Byte](in) match {
         case 0 ⇒ Left(read[InstanceCaching](in))
-        case 1 ⇒ Right(read[String](in))
+        case 1 ⇒ Right(XMLInstanceContent(read[String](in)))
+        case 2 ⇒
+          val bytes = new Array[Byte](read[Int](in))
+          in.readFully(bytes, 0, bytes.length)
+          Right(BinaryInstanceContent(bytes))
       }
 
       InstanceState(
@@ -329,8 +329,10 @@ object XFormsStateManager extends XFormsStateLifecycle {
         "xforms",
         "after cacheOrStore",
         List(
-          "document cache current size" → XFormsDocumentCache.getCurrentSize.toString,
-          "document cache max size"     → XFormsDocumentCache.getMaxSize.toString
+          "document cache current size"   → XFormsDocumentCache.getCurrentSize.toString,
+          "document cache max size"       → XFormsDocumentCache.getMaxSize.toString,
+          "document cache current weight" → XFormsDocumentCache.getCurrentWeight.toString,
+          "document cache evictions"      → XFormsDocumentCache.getEvictionCount.toString
         )
       )
     }
@@ -25,17 +25,37 @@ object XFormsStaticStateCache {
     def staticStateStatus(found: Boolean, digest: String)
   }
 
-  def storeDocument(staticState: XFormsStaticState): Unit =
+  def storeDocument(staticState: XFormsStaticState): Unit = {
     cache.add(createCacheKey(staticState.digest), ConstantValidity, staticState)
+    XFormsStaticStatePersistentStore.store(staticState)
+  }
 
   def getDocumentJava(digest: String) =
     findDocument(digest).orNull
 
-  def findDocument(digest: String) =
+  def findDocument(digest: String) = {
+    preloadPersistentDocuments()
     Option(cache.findValid(createCacheKey(digest), ConstantValidity).asInstanceOf[XFormsStaticState])
+  }
+
+  // Also look in the persistent store, for callers which would otherwise need to read the form to create the
+  // static state
+  def getOrRestoreDocumentJava(digest: String) =
+    (findDocument(digest) orElse {
+      XFormsStaticStatePersistentStore.find(digest) map { staticState ⇒
+        cache.add(createCacheKey(digest), ConstantValidity, staticState)
+        staticState
+      }
+    }).orNull
 
   private object Private {
 
+    def preloadPersistentDocuments() =
+      XFormsStaticStatePersistentStore.preloadOnce(
+        add      = staticState ⇒ cache.add(createCacheKey(staticState.digest), ConstantValidity, staticState),
+        isLoaded = digest ⇒ cache.findValid(createCacheKey(digest), ConstantValidity) ne null
+      )
+
     def createCacheKey(digest: String) =
       new InternalCacheKey(ContainingDocumentKeyType, digest ensuring (_ ne null))
 
@@ -0,0 +1,225 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xforms.state
+
+import java.nio.charset.StandardCharsets.UTF_8
+import java.nio.file.{Files, Path, Paths, StandardCopyOption}
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.{Executor, Executors, ThreadFactory}
+
+import org.orbeon.oxf.common.Version
+import org.orbeon.oxf.properties.Properties
+import org.orbeon.oxf.resources.ResourceManagerWrapper
+import org.orbeon.oxf.util.LoggerFactory
+import org.orbeon.oxf.xforms.{XFormsStaticState, XFormsStaticStateImpl}
+import spray.json._
+
+import scala.collection.JavaConverters._
+import scala.util.control.NonFatal
+import scala.util.{Failure, Success, Try}
+
+// Optional store of static states in a local directory, so that static states survive restarts.
+//
+// - Entries are keyed by static state digest, and hold the encoded static state, the Orbeon Forms version, and the
+//   last modification time of the XBL files the static state depends on. The form itself is covered by the digest.
+// - Entries are written in the background when a static state is added to the in-memory cache.
+// - The most recent entries are loaded and analyzed in the background the first time the in-memory cache is used,
+//   so that first requests after a restart don't run the static analysis. Entries which are out of date or can't be
+//   parsed are removed, while entries which fail to load for other reasons are kept.
+// - Loading an entry by digest also saves reading and annotating the form when the digest is already known.
+object XFormsStaticStatePersistentStore {
+
+  val DirectoryProperty = "oxf.xforms.cache.static-state.directory"
+  val PreloadProperty   = "oxf.xforms.cache.static-state.preload"
+  val PreloadDefault    = 20
+
+  private val Logger = LoggerFactory.createLogger(XFormsStaticStatePersistentStore.getClass)
+
+  private lazy val storeOpt: Option[DirectoryStore] =
+    Properties.instance.getPropertySet.getNonBlankString(DirectoryProperty) flatMap { directory ⇒
+      try {
+        Some(new DirectoryStore(Files.createDirectories(Paths.get(directory)), executor))
+      } catch {
+        case NonFatal(t) ⇒
+          Logger.warn(s"cannot use directory `$directory` for static states", t)
+          None
+      }
+    }
+
+  // Single thread, so that writes and loads don't compete with requests for more than one core
+  private lazy val executor =
+    Executors.newSingleThreadExecutor(new ThreadFactory {
+      def newThread(runnable: Runnable) = {
+        val thread = new Thread(runnable, "orbeon-static-state-store")
+        thread.setDaemon(true)
+        thread
+      }
+    })
+
+  private val PreloadStarted = new AtomicBoolean(false)
+
+  def isEnabled = storeOpt.isDefined
+
+  // Write the static state unless it is already stored
+  def store(staticState: XFormsStaticState): Unit =
+    storeOpt foreach (_.store(staticState))
+
+  // Load and analyze the static state with the given digest, if stored and up to date
+  def find(digest: String): Option[XFormsStaticState] =
+    storeOpt flatMap (_.find(digest))
+
+  // Load the most recent entries in the background, once
+  def preloadOnce(add: XFormsStaticState ⇒ Unit, isLoaded: String ⇒ Boolean): Unit =
+    storeOpt foreach { store ⇒
+      if (PreloadStarted.compareAndSet(false, true))
+        executor.execute(new Runnable {
+          def run(): Unit = {
+
+            val count     = Properties.instance.getPropertySet.getInteger(PreloadProperty, PreloadDefault).toInt
+            val startTime = System.currentTimeMillis
+
+            val loaded = store.loadRecent(count, isLoaded, add)
+
+            if (loaded.nonEmpty)
+              Logger.info(s"loaded ${loaded.size} static states in ${System.currentTimeMillis - startTime} ms")
+          }
+        })
+    }
+
+  // Entries in a given directory, written with the given executor
+  private[state] class DirectoryStore(directory: Path, executor: Executor) {
+
+    private val MaxFiles = 1000
+    private val Suffix   = ".json"
+
+    def store(staticState: XFormsStaticState): Unit = {
+
+      val digest  = staticState.digest
+      val file    = entryFile(digest)
+
+      if (! Files.exists(file)) {
+
+        // Read last modification times now, as the static state was created from these files
+        val includes = xblLastModified(staticState.topLevelPart.metadata.getBindingIncludesJava.asScala)
+
+        executor.execute(new Runnable {
+          def run(): Unit =
+            try {
+              val json =
+                JsObject(
+                  "version"       → JsString(Version.VersionString),
+                  "digest"        → JsString(digest),
+                  "includes"      → JsObject((includes map { case (path, lastModified) ⇒ path → JsNumber(lastModified) }).toMap),
+                  "encoded-state" → JsString(staticState.encodedState)
+                )
+
+              // Write to a temporary file first so that readers never see a partial entry
+              val tempFile = Files.createTempFile(directory, digest, ".tmp")
+              Files.write(tempFile, json.compactPrint.getBytes(UTF_8))
+              Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+
+              Logger.debug(s"stored static state `$digest`")
+
+              removeOldestFiles()
+            } catch {
+              case NonFatal(t) ⇒ Logger.warn(s"cannot store static state `$digest`", t)
+            }
+        })
+      }
+    }
+
+    def find(digest: String): Option[XFormsStaticState] = {
+      val file = entryFile(digest)
+      if (Files.exists(file)) load(file, digest) else None
+    }
+
+    // Load up to `count` of the most recent entries which are not loaded yet, and return their digests
+    def loadRecent(count: Int, isLoaded: String ⇒ Boolean, add: XFormsStaticState ⇒ Unit): List[String] =
+      for {
+        file   ← entryFiles take count
+        digest = file.getFileName.toString.stripSuffix(Suffix)
+        if ! isLoaded(digest)
+        staticState ← load(file, digest)
+      } yield {
+        add(staticState)
+        digest
+      }
+
+    def entryFile(digest: String) = directory.resolve(digest + Suffix)
+
+    private def load(file: Path, digest: String): Option[XFormsStaticState] = {
+
+      def remove(reason: String): None.type = {
+        Logger.debug(s"removing static state `$digest`: $reason")
+        try Files.deleteIfExists(file) catch {
+          case NonFatal(t) ⇒ Logger.warn(s"cannot remove static state `$digest`", t)
+        }
+        None
+      }
+
+      try {
+        val text = new String(Files.readAllBytes(file), UTF_8)
+
+        Try(text.parseJson.asJsObject.fields) match {
+          case Failure(_) ⇒
+            remove("entry can't be parsed")
+          case Success(fields) ⇒
+
+            def string(name: String) = fields.get(name) collect { case JsString(value) ⇒ value }
+
+            val includes =
+              fields.get("includes").toList collect { case JsObject(values) ⇒ values } flatMap (_.toList) collect {
+                case (path, JsNumber(lastModified)) ⇒ path → lastModified.toLong
+              } sortBy (_._1)
+
+            val isUpToDate =
+              string("version").contains(Version.VersionString) &&
+              string("digest").contains(digest)                 &&
+              (includes forall (_._2 != -1L))                   &&
+              xblLastModified(includes map (_._1)) == includes
+
+            if (! isUpToDate)
+              remove("entry is out of date")
+            else
+              string("encoded-state") match {
+                case Some(encodedState) ⇒ Some(XFormsStaticStateImpl.restore(Some(digest), encodedState, forceEncryption = false))
+                case None               ⇒ remove("entry has no encoded state")
+              }
+        }
+      } catch {
+        case NonFatal(t) ⇒
+          // The entry might still be good, for example if the error is temporary
+          Logger.warn(s"cannot load static state `$digest`", t)
+          None
+      }
+    }
+
+    // Entries, most recent first
+    private def entryFiles: List[Path] = {
+      val stream = Files.newDirectoryStream(directory, "*" + Suffix)
+      try
+        stream.asScala.toList sortBy (file ⇒ - Files.getLastModifiedTime(file).toMillis)
+      finally
+        stream.close()
+    }
+
+    private def removeOldestFiles(): Unit =
+      entryFiles drop MaxFiles foreach (Files.deleteIfExists(_))
+  }
+
+  private def xblLastModified(paths: Iterable[String]): List[(String, Long)] = {
+    val rm = ResourceManagerWrapper.instance
+    paths.toList.sorted map (path ⇒ path → rm.lastModified(path, true))
+  }
+}
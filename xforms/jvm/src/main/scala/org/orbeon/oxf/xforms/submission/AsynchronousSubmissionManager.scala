@@ -15,6 +15,8 @@ package org.orbeon.oxf.xforms.submission
 
 import java.io.{Externalizable, ObjectInput, ObjectOutput}
 import java.util.concurrent._
+import java.util.concurrent.atomic.AtomicInteger
+import java.{util ⇒ ju}
 import javax.enterprise.concurrent.ManagedExecutorService
 import javax.naming.{InitialContext, NamingException}
 
@@ -23,9 +25,11 @@ import org.orbeon.oxf.pipeline.InitUtils._
 import org.orbeon.oxf.pipeline.api.PipelineContext
 import org.orbeon.oxf.util.Logging._
 import org.orbeon.oxf.util.{IndentedLogger, NetUtils}
-import org.orbeon.oxf.xforms.XFormsContainingDocument
+import org.orbeon.oxf.xforms.{XFormsContainingDocument, XFormsProperties}
 import org.orbeon.oxf.xforms.event.XFormsEvents
 
+import scala.util.control.NonFatal
+
 /**
   * Handle asynchronous submissions.
   *
@@ -182,7 +186,8 @@ class AsynchronousSubmissionManager(val containingDocument: XFormsContainingDocu
             List(
               "processed" → processedCount.toString,
               "pending"  → asynchronousSubmissions.pendingCount.toString
-            )
+            ) ++
+              AsynchronousSubmissionStats.asList.map { case (name, value) ⇒ s"global $name" → value }
           )
       }
     }
@@ -194,7 +199,66 @@ private object AsynchronousSubmissionManager {
   val AsyncSubmissionsSessionKeyPrefix = "oxf.xforms.state.async-submissions."
 
   // Global thread pool if none provided by the app server
-  private lazy val threadPool = Executors.newCachedThreadPool
+  private lazy val threadPool: ExecutorService =
+    if (XFormsProperties.isAsynchronousSubmissionVirtualThreads)
+      virtualThreadExecutorOpt getOrElse boundedThreadPool
+    else
+      boundedThreadPool
+
+  // Threads are bounded, and so is the queue of submissions waiting for a thread. Beyond that, the rejection policy
+  // either runs the submission in the requesting thread, which slows down the client making too many submissions,
+  // or fails the submission.
+  private def boundedThreadPool: ExecutorService = {
+
+    val maxThreads = XFormsProperties.getAsynchronousSubmissionMaxThreads max 1
+    val queueSize  = XFormsProperties.getAsynchronousSubmissionQueueSize
+
+    val rejectionPolicy =
+      XFormsProperties.getAsynchronousSubmissionRejectionPolicy match {
+        case "abort" ⇒ new ThreadPoolExecutor.AbortPolicy
+        case _       ⇒ new ThreadPoolExecutor.CallerRunsPolicy
+      }
+
+    val threadCount = new AtomicInteger
+
+    val pool =
+      new ThreadPoolExecutor(
+        maxThreads,
+        maxThreads,
+        60L,
+        TimeUnit.SECONDS,
+        if (queueSize > 0) new LinkedBlockingQueue[Runnable](queueSize) else new SynchronousQueue[Runnable],
+        new ThreadFactory {
+          def newThread(r: Runnable) = {
+            val thread = new Thread(r, "orbeon-async-submission-" + threadCount.incrementAndGet())
+            thread.setDaemon(true)
+            thread
+          }
+        },
+        new RejectedExecutionHandler {
+          def rejectedExecution(r: Runnable, executor: ThreadPoolExecutor) = {
+            AsynchronousSubmissionStats.submissionRejected()
+            rejectionPolicy.rejectedExecution(r, executor)
+          }
+        }
+      )
+
+    pool.allowCoreThreadTimeOut(true)
+    pool
+  }
+
+  // Virtual threads are cheap, so this executor is not bounded, but per-document limits still apply
+  private def virtualThreadExecutorOpt: Option[ExecutorService] =
+    try
+      Some(classOf[Executors].getMethod("newVirtualThreadPerTaskExecutor").invoke(null).asInstanceOf[ExecutorService])
+    catch {
+      case _: NoSuchMethodException ⇒
+        XFormsModelSubmission.logger.warn("virtual threads are not supported by this JVM, using a thread pool instead")
+        None
+      case NonFatal(t) ⇒
+        XFormsModelSubmission.logger.warn("cannot create virtual thread executor, using a thread pool instead", t)
+        None
+    }
 
   private def getExecutorService: ExecutorService =
     try {
@@ -223,33 +287,96 @@ private object AsynchronousSubmissionManager {
     }
   }
 
+  // Like an `ExecutorCompletionService`, except that at most `max-per-document` submissions run at the same time.
+  // Further submissions wait here, and not in the executor, until a running submission completes.
   class AsynchronousSubmissions extends Externalizable {
 
-    private val completionService = new ExecutorCompletionService[SubmissionResult](getExecutorService)
+    private val executor        = getExecutorService
+    private val maxRunning      = XFormsProperties.getAsynchronousSubmissionMaxPerDocument
+    private val completionQueue = new LinkedBlockingQueue[Future[SubmissionResult]]
+
+    // Guarded by `this`, as tasks complete in other threads
+    private val waitingTasks = new ju.ArrayDeque[SubmissionTask]
+    private var runningCount = 0
 
     private var _pendingCount = 0
     def pendingCount = _pendingCount
 
+    private class SubmissionTask(task: () ⇒ SubmissionResult)
+      extends FutureTask[SubmissionResult](new Callable[SubmissionResult] { def call() = task() }) {
+
+      private val submittedAt = System.currentTimeMillis
+      @volatile private var started = false
+
+      override def run(): Unit = {
+        started = true
+        AsynchronousSubmissionStats.submissionStarted()
+        super.run()
+      }
+
+      // Called when the task completes, including with an exception
+      override def done(): Unit = {
+        AsynchronousSubmissionStats.submissionCompleted(System.currentTimeMillis - submittedAt, started)
+        completionQueue.add(this)
+        startNextWaitingTask()
+      }
+
+      def fail(t: Throwable): Unit = setException(t)
+    }
+
     def submit(task: () ⇒ SubmissionResult): Future[SubmissionResult] = {
 
-      val future = completionService.submit(
-        new Callable[SubmissionResult]() {
-          def call() = task()
+      val submissionTask = new SubmissionTask(task)
+
+      val mustWait = synchronized {
+        val mustWait = maxRunning > 0 && runningCount >= maxRunning
+        if (mustWait)
+          waitingTasks.add(submissionTask)
+        else
+          runningCount += 1
+        mustWait
+      }
+
+      AsynchronousSubmissionStats.submissionQueued()
+
+      if (! mustWait)
+        try executor.execute(submissionTask)
+        catch {
+          case e: RejectedExecutionException ⇒
+            // Let the caller fail the submission
+            synchronized { runningCount -= 1 }
+            AsynchronousSubmissionStats.submissionDropped()
+            throw e
         }
-      )
 
       _pendingCount += 1
-      future
+      submissionTask
+    }
+
+    // Called from the thread of the completed task, so rejection can't be reported to the caller of `submit()`
+    private def startNextWaitingTask(): Unit = {
+
+      val nextOpt = synchronized {
+        val next = Option(waitingTasks.poll())
+        if (next.isEmpty)
+          runningCount -= 1
+        next
+      }
+
+      nextOpt foreach { next ⇒
+        try executor.execute(next)
+        catch { case e: RejectedExecutionException ⇒ next.fail(e) }
+      }
     }
 
     def poll(): Option[Future[SubmissionResult]] =
-      Option(completionService.poll()) map { f ⇒
+      Option(completionQueue.poll()) map { f ⇒
         _pendingCount -= 1
         f
       }
 
     def take(): Future[SubmissionResult] = {
-      val f = completionService.take()
+      val f = completionQueue.take()
       _pendingCount -= 1
       f
     }
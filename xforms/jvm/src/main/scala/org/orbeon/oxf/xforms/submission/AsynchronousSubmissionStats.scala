@@ -0,0 +1,90 @@
+/**
+  * Copyright (C) 2017 Orbeon, Inc.
+  *
+  * This program is free software; you can redistribute it and/or modify it under the terms of the
+  * GNU Lesser General Public License as published by the Free Software Foundation; either version
+  * 2.1 of the License, or (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+  * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+  * See the GNU Lesser General Public License for more details.
+  *
+  * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+  */
+package org.orbeon.oxf.xforms.submission
+
+import java.util.concurrent.atomic.{AtomicLong, AtomicLongArray}
+
+import org.orbeon.oxf.util.JMX
+
+// Statistics exposed over JMX
+trait AsynchronousSubmissionStatsMBean {
+  def getQueued: Long
+  def getRunning: Long
+  def getCompleted: Long
+  def getRejected: Long
+  def getLatencyHistogram: Array[String]
+}
+
+// Global statistics for asynchronous submissions
+object AsynchronousSubmissionStats extends AsynchronousSubmissionStatsMBean {
+
+  // Upper bounds of the latency histogram buckets, in milliseconds
+  val LatencyBucketBounds = Array(10L, 50L, 100L, 250L, 500L, 1000L, 2500L, 5000L, 10000L, Long.MaxValue)
+
+  private val _queued    = new AtomicLong
+  private val _running   = new AtomicLong
+  private val _completed = new AtomicLong
+  private val _rejected  = new AtomicLong
+  private val _latencies = new AtomicLongArray(LatencyBucketBounds.length)
+
+  // Submissions waiting for a thread or for another submission of the same document to complete
+  def queued    = _queued.get
+  def running   = _running.get
+  def completed = _completed.get
+  // Submissions which found all threads busy and the queue full, whether they then ran in the caller's thread or failed
+  def rejected  = _rejected.get
+
+  // Number of submissions per latency bucket, from submission to completion, as (upper bound in ms, count)
+  def latencyHistogram: List[(Long, Long)] =
+    LatencyBucketBounds.toList.zipWithIndex map { case (bound, index) ⇒ bound → _latencies.get(index) }
+
+  def getQueued    = queued
+  def getRunning   = running
+  def getCompleted = completed
+  def getRejected  = rejected
+
+  def getLatencyHistogram =
+    latencyHistogram.toArray map {
+      case (Long.MaxValue, count) ⇒ s"> ${LatencyBucketBounds(LatencyBucketBounds.length - 2)} ms: $count"
+      case (bound, count)         ⇒ s"<= $bound ms: $count"
+    }
+
+  def asList: List[(String, String)] =
+    List(
+      "queued"    → queued.toString,
+      "running"   → running.toString,
+      "completed" → completed.toString,
+      "rejected"  → rejected.toString
+    )
+
+  private[submission] def submissionQueued()   = _queued.incrementAndGet()
+  private[submission] def submissionRejected() = _rejected.incrementAndGet()
+  private[submission] def submissionDropped()  = _queued.decrementAndGet()
+
+  private[submission] def submissionStarted(): Unit = {
+    _queued.decrementAndGet()
+    _running.incrementAndGet()
+  }
+
+  private[submission] def submissionCompleted(latencyMillis: Long, started: Boolean): Unit = {
+    if (started)
+      _running.decrementAndGet()
+    else
+      _queued.decrementAndGet()
+    _completed.incrementAndGet()
+    _latencies.incrementAndGet(LatencyBucketBounds indexWhere (latencyMillis <= _))
+  }
+
+  JMX.registerMBean(this, classOf[AsynchronousSubmissionStatsMBean], "org.orbeon:type=AsynchronousSubmissionStats")
+}
@@ -100,7 +100,7 @@ class TextReplacer(submission: XFormsModelSubmission, containingDocument: XForms
             xpathContext = p.refContext.xpathContext,
             contextItem  = p.refContext.refNodeInfo,
             xpathString  = targetRef,
-            reporter     = containingDocument.getRequestStats.addXPathStat
+            reporter     = containingDocument.getRequestStats.getReporter
           ) match {
             case n: NodeInfo ⇒ n
             case _           ⇒ throwSubmissionException("""targetref attribute doesn't point to a node for replace="text".""")
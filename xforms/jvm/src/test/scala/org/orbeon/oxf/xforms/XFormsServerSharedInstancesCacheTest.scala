@@ -0,0 +1,165 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xforms
+
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.{Callable, CountDownLatch, Executors}
+
+import org.junit.Test
+import org.orbeon.oxf.test.{ResourceManagerSupport, ResourceManagerTestBase}
+import org.orbeon.oxf.util.{IndentedLogger, XPath}
+import org.orbeon.oxf.xforms.XFormsServerSharedInstancesCache.Loader
+import org.orbeon.oxf.xforms.model.InstanceCaching
+import org.orbeon.oxf.xml.TransformerUtils
+import org.orbeon.saxon.om.DocumentInfo
+import org.scalatest.junit.AssertionsForJUnit
+
+import scala.util.Try
+
+class XFormsServerSharedInstancesCacheTest extends ResourceManagerTestBase with AssertionsForJUnit {
+
+  val LongTimeout = 10000L
+  val Threads     = 4
+
+  // Sources unique to each test, as the cache is global
+  def instanceCaching(name: String, timeToLive: Long = -1) =
+    InstanceCaching(timeToLive, handleXInclude = false, "/XFormsServerSharedInstancesCacheTest/" + name, None)
+
+  def newDocument: DocumentInfo =
+    TransformerUtils.stringToTinyTree(XPath.GlobalConfiguration, "<instance/>", false, false)
+
+  // `IndentedLogger` is not thread-safe
+  def findDocumentOrLoad(instanceCaching: InstanceCaching, loader: Loader, loadTimeout: Long = LongTimeout, refreshAheadDelay: Long = 0) =
+    XFormsServerSharedInstancesCache.findDocumentOrLoad(instanceCaching, loader, loadTimeout, refreshAheadDelay)(
+      new IndentedLogger(ResourceManagerSupport.logger)
+    )
+
+  // Loader which blocks until released and counts its loads
+  class BlockingLoader(result: ⇒ DocumentInfo) extends Loader {
+
+    val loads   = new AtomicInteger
+    val loading = new CountDownLatch(1)
+    val release = new CountDownLatch(1)
+
+    def load(instanceSourceURI: String, handleXInclude: Boolean): DocumentInfo = {
+      loads.incrementAndGet()
+      loading.countDown()
+      release.await()
+      result
+    }
+  }
+
+  // Start a first load, then concurrent loads once the first load is in progress
+  def loadConcurrently(instanceCaching: InstanceCaching, loader: BlockingLoader): List[Try[DocumentInfo]] = {
+
+    val executor = Executors.newFixedThreadPool(Threads)
+    try {
+      def submit() =
+        executor.submit(new Callable[Try[DocumentInfo]] {
+          def call() = Try(findDocumentOrLoad(instanceCaching, loader))
+        })
+
+      val first = submit()
+      loader.loading.await()
+
+      val others = List.fill(Threads - 1)(submit())
+
+      // Let the other loads reach the point where they wait for the first one
+      Thread.sleep(200)
+      loader.release.countDown()
+
+      (first :: others) map (_.get)
+    } finally
+      executor.shutdown()
+  }
+
+  @Test def concurrentMissesLoadOnce(): Unit = {
+
+    val document = newDocument
+    val loader   = new BlockingLoader(document)
+    val results  = loadConcurrently(instanceCaching("concurrent-misses"), loader)
+
+    assert(loader.loads.get === 1)
+    assert(results forall (result ⇒ result.isSuccess && (result.get eq document)))
+  }
+
+  @Test def concurrentMissesShareFailure(): Unit = {
+
+    val error   = new IllegalStateException("load failed")
+    val loader  = new BlockingLoader(throw error)
+    val results = loadConcurrently(instanceCaching("concurrent-failure"), loader)
+
+    assert(loader.loads.get === 1)
+    assert(results forall (result ⇒ result.isFailure && (result.failed.get eq error)))
+  }
+
+  @Test def loadIndependentlyAfterTimeout(): Unit = {
+
+    val caching       = instanceCaching("timeout")
+    val firstDocument = newDocument
+    val firstLoader   = new BlockingLoader(firstDocument)
+
+    val executor = Executors.newSingleThreadExecutor
+    try {
+      val first =
+        executor.submit(new Callable[DocumentInfo] {
+          def call() = findDocumentOrLoad(caching, firstLoader)
+        })
+
+      firstLoader.loading.await()
+
+      // The first load is stuck, so load independently once the timeout has passed
+      val secondDocument = newDocument
+      val secondLoader   = new Loader {
+        def load(instanceSourceURI: String, handleXInclude: Boolean) = secondDocument
+      }
+
+      assert(findDocumentOrLoad(caching, secondLoader, loadTimeout = 50) eq secondDocument)
+
+      firstLoader.release.countDown()
+      assert(first.get eq firstDocument)
+    } finally
+      executor.shutdown()
+  }
+
+  @Test def refreshAhead(): Unit = {
+
+    val caching   = instanceCaching("refresh-ahead", timeToLive = LongTimeout)
+    val documents = List.fill(2)(newDocument)
+    val loads     = new AtomicInteger
+
+    // Return new documents, then fail
+    val loader = new Loader {
+      def load(instanceSourceURI: String, handleXInclude: Boolean) =
+        documents.lift(loads.getAndIncrement()) getOrElse (throw new IllegalStateException("load failed"))
+    }
+
+    assert(findDocumentOrLoad(caching, loader) eq documents(0))
+
+    // Not yet due
+    assert(findDocumentOrLoad(caching, loader, refreshAheadDelay = 0)               eq documents(0))
+    assert(findDocumentOrLoad(caching, loader, refreshAheadDelay = LongTimeout / 2) eq documents(0))
+    assert(loads.get === 1)
+
+    // Due as the time to live is entirely within the refresh-ahead delay
+    Thread.sleep(5)
+    assert(findDocumentOrLoad(caching, loader, refreshAheadDelay = LongTimeout) eq documents(1))
+    assert(loads.get === 2)
+
+    // A failed refresh keeps the cached content, which has not expired
+    Thread.sleep(5)
+    assert(findDocumentOrLoad(caching, loader, refreshAheadDelay = LongTimeout) eq documents(1))
+    assert(loads.get === 3)
+  }
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xforms.analysis
+
+import org.junit.{Assume, Test}
+import org.orbeon.dom.Document
+import org.orbeon.oxf.common.Version
+import org.orbeon.oxf.util.XPath.CompiledExpression
+import org.orbeon.oxf.test.{ResourceManagerSupport, ResourceManagerTestBase}
+import org.orbeon.oxf.xforms.XFormsStaticStateImpl
+import org.orbeon.oxf.xml.Dom4j.elemToDocument
+import org.orbeon.oxf.xforms.analysis.ParallelXPathCompilation.ExpressionKey
+import org.orbeon.oxf.xml.dom4j.{Dom4jUtils, LocationData}
+import org.scalatest.junit.AssertionsForJUnit
+
+object ParallelXPathCompilationTest {
+
+  // Form with about 5 expressions per item
+  def form(items: Int): Document =
+    <xh:html xmlns:xf="http://www.w3.org/2002/xforms"
+         xmlns:xh="http://www.w3.org/1999/xhtml"
+         xmlns:xxf="http://orbeon.org/oxf/xml/xforms"
+         xxf:xpath-analysis="true">
+      <xh:head>
+        <xf:model id="model">
+          <xf:instance id="instance">
+            <items>{1 to items map (i ⇒ <item>{i}</item>)}</items>
+          </xf:instance>
+        </xf:model>
+      </xh:head>
+      <xh:body>
+        <xf:var name="total" value="sum(item)"/>
+        {
+          1 to items map { i ⇒
+            <xf:group ref={s"item[$i]"}>
+              <xf:input ref=".">
+                <xf:label value={s"concat('Item $i of ', $$total)"}/>
+              </xf:input>
+              <xf:output value={s". * $i"}/>
+            </xf:group>
+          }
+        }
+        <xf:repeat ref="item">
+          <xf:output value="position()"/>
+        </xf:repeat>
+      </xh:body>
+    </xh:html>
+
+  def analyze(form: Document, parallelism: Int): PartAnalysisImpl =
+    ParallelXPathCompilation.withParallelism(parallelism) {
+      XFormsStaticStateImpl.createFromDocument(form).asInstanceOf[XFormsStaticStateImpl].topLevelPart
+    }
+}
+
+class ParallelXPathCompilationTest extends ResourceManagerTestBase with AssertionsForJUnit {
+
+  import ParallelXPathCompilationTest._
+
+  @Test def sameAnalysisWithParallelism(): Unit = {
+
+    Assume.assumeTrue(Version.isPE)
+
+    val formDocument = form(20)
+
+    def analysisXML(part: PartAnalysisImpl) =
+      Dom4jUtils.domToPrettyString(Dom4jUtils.createDocument(part))
+
+    val sequentialPart = analyze(formDocument, parallelism = 1)
+    val parallelPart   = analyze(formDocument, parallelism = 4)
+
+    // Enough expressions for compilation to run in parallel
+    assert(ParallelXPathCompilation.compileSequentially(parallelPart, parallelPart.iterateControls.toList).size > 50)
+
+    assert(analysisXML(parallelPart) === analysisXML(sequentialPart))
+  }
+
+  @Test def expressionsTakenInDocumentOrder(): Unit = {
+
+    def compiled(xpathString: String, line: Int) =
+      Some(ExpressionKey(xpathString, null, avt = false) → CompiledExpression(null, xpathString, LocationData("form.xhtml", line, 1)))
+
+    // Results in document order, as returned by the tasks
+    val expressions =
+      ParallelXPathCompilation.gather(
+        List(
+          compiled(".",  1),
+          None,
+          compiled("..", 2),
+          compiled(".",  3),
+          compiled(".",  4)
+        )
+      )
+
+    def takeLine(xpathString: String) =
+      expressions.take(xpathString, null, avt = false) map (_.locationData.line)
+
+    assert(expressions.size === 4)
+    assert(List.fill(4)(takeLine(".")) === List(Some(1), Some(3), Some(4), None))
+    assert(takeLine("..") === Some(2))
+    assert(expressions.size === 0)
+  }
+
+  @Test def expressionsHaveTheLocationOfTheirElement(): Unit = {
+
+    Assume.assumeTrue(Version.isPE)
+
+    val part     = analyze(form(5), parallelism = 1)
+    val elements = part.iterateControls.toList
+    val inputs   = elements collect { case e: SimpleElementAnalysis if e.ref.contains(".") ⇒ e }
+
+    assert(inputs.size === 5)
+
+    val expressions = ParallelXPathCompilation.compileSequentially(part, elements)
+
+    for (input ← inputs)
+      assert(expressions.take(".", input.namespaceMapping, avt = false).map(_.locationData) === Some(input.locationData))
+  }
+}
+
+// Report the time of the static analysis with and without parallel compilation, and the time spent compiling
+// expressions, which is the part of the analysis which runs in parallel. Run with:
+//
+//   ParallelXPathCompilationBenchmark [items] [parallelism] [iterations]
+object ParallelXPathCompilationBenchmark {
+
+  import ParallelXPathCompilationTest._
+
+  def main(args: Array[String]): Unit = {
+
+    ResourceManagerSupport.initializeJava()
+
+    val items       = args.headOption map (_.toInt) getOrElse 500
+    val parallelism = args.lift(1) map (_.toInt) getOrElse 4
+    val iterations  = args.lift(2) map (_.toInt) getOrElse 20
+
+    val formDocument = form(items)
+
+    def time[T](name: String)(body: ⇒ T): T = {
+      var result: Any = null
+      // Warm up
+      for (_ ← 1 to iterations) result = body
+      val start = System.nanoTime
+      for (_ ← 1 to iterations) result = body
+      println(f"$name%-22s ${(System.nanoTime - start) / iterations / 1000000.0}%8.2f ms")
+      result.asInstanceOf[T]
+    }
+
+    val part     = time("sequential analysis")(analyze(formDocument, parallelism = 1))
+    val elements = part.iterateControls.toList
+
+    time(s"parallel analysis ($parallelism)")(analyze(formDocument, parallelism))
+
+    val compiled = time("compilation alone")(ParallelXPathCompilation.compileSequentially(part, elements))
+
+    println(s"expressions: ${compiled.size}")
+  }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xforms.analysis
+
+import org.junit.Test
+import org.orbeon.oxf.xforms.MapSet
+import org.orbeon.oxf.xforms.analysis.PathMapXPathDependencies.{ModelOrInstanceKey, PathChangeset}
+import org.scalatest.junit.AssertionsForJUnit
+
+class PathIdsTest extends AssertionsForJUnit {
+
+  def path(name: String) = "PathIdsTest/" + name
+
+  @Test def interning(): Unit = {
+    val pathIds = new PathIds
+    val id      = pathIds.intern(path("a"))
+    assert(pathIds.intern(path("a")) === id)
+    assert(pathIds.find(path("a"))   === id)
+    assert(pathIds.find(path("never-interned")) === -1)
+  }
+
+  @Test def separateTables(): Unit = {
+    val pathIds1 = new PathIds
+    val pathIds2 = new PathIds
+
+    pathIds1.intern(path("a"))
+
+    // Paths interned by the analysis of another static state are not found
+    assert(pathIds2.find(path("a")) === -1)
+  }
+
+  @Test def sortedDistinctIds(): Unit = {
+
+    val mapSet = new MapSet[String, String]
+    List("c", "a", "b", "a") foreach (name ⇒ mapSet.put("instance", path(name)))
+
+    val pathIds = new PathIds
+    val ids     = pathIds.internAll(mapSet)("instance")
+
+    assert(ids.toList === List("a", "b", "c").map(name ⇒ pathIds.intern(path(name))).sorted)
+  }
+
+  @Test def idSet(): Unit = {
+    val set = new PathIds.IdSet
+    List(30, 10, 20, 10, 30) foreach (set += _)
+
+    assert(set.size === 3)
+    assert(  set.intersects(Array(1, 20, 100)))
+    assert(  set.intersects(Array(30)))
+    assert(! set.intersects(Array(11, 21, 31)))
+    assert(! set.intersects(Array.empty[Int]))
+    assert(! new PathIds.IdSet().intersects(Array(10)))
+  }
+
+  @Test def changesetMatching(): Unit = {
+
+    val analysisPaths = new MapSet[String, String]
+    analysisPaths.put("instance", path("name"))
+    analysisPaths.put("instance", path("address/city"))
+
+    val pathIds     = new PathIds
+    val analysisIds = pathIds.internAll(analysisPaths)("instance")
+    val instanceKey = ModelOrInstanceKey("instance", 1)
+
+    // Analyzed by another expression
+    pathIds.intern(path("other"))
+
+    def changeset(paths: String*) = {
+      val changeset = new PathChangeset(pathIds)
+      paths foreach (p ⇒ changeset += instanceKey → p)
+      changeset
+    }
+
+    // Changed paths which were never analyzed are dropped
+    assert(changeset(path("not-analyzed")).isEmpty)
+
+    assert(  changeset(path("address/city")).map(instanceKey).intersects(analysisIds))
+    assert(  changeset(path("name"), path("other")).map(instanceKey).intersects(analysisIds))
+    assert(! changeset(path("other")).map(instanceKey).intersects(analysisIds))
+  }
+}
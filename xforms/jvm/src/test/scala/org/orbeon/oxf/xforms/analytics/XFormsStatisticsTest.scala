@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xforms.analytics
+
+import org.junit.Test
+import org.scalatest.junit.AssertionsForJUnit
+
+class XFormsStatisticsTest extends AssertionsForJUnit {
+
+  @Test def histogram(): Unit = {
+
+    val histogram = new Histogram
+
+    for (micros ← 1 to 100)
+      histogram.add(micros)
+
+    assert(histogram.count.get === 100)
+    assert(histogram.totalMicros.get === 5050)
+    assert(histogram.meanMicros === 50)
+    assert(histogram.maxMicros.get === 100)
+
+    // Upper bounds of the power of two buckets
+    assert(histogram.percentile(0.01) === 2)
+    assert(histogram.percentile(0.5)  === 64)
+    assert(histogram.percentile(0.9)  === 100)
+  }
+
+  @Test def bucketIndex(): Unit = {
+    assert(Histogram.bucketIndex(0)             === 0)
+    assert(Histogram.bucketIndex(1)             === 1)
+    assert(Histogram.bucketIndex(1023)          === 10)
+    assert(Histogram.bucketIndex(1024)          === 11)
+    assert(Histogram.bucketIndex(Long.MaxValue) === Histogram.BucketCount - 1)
+  }
+
+  @Test def formName(): Unit = {
+    assert(XFormsStatistics.formName("/fr/acme/order/new", Map.empty)                            === "acme/order")
+    assert(XFormsStatistics.formName("/fr/acme/order/edit/123", Map("form-version" → List("2"))) === "acme/order/2")
+    assert(XFormsStatistics.formName("/xforms-sandbox/sample/test", Map.empty)                   === "/xforms-sandbox/sample/test")
+    assert(XFormsStatistics.formName(null, null)                                                 === "unknown")
+  }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xforms.control.controls
+
+import org.junit.Test
+import org.orbeon.oxf.xforms.control.controls.XFormsRepeatControl.findNodeIndexes
+import org.orbeon.oxf.xml.SaxonUtils
+import org.orbeon.saxon.om.{Item, NodeInfo}
+import org.orbeon.saxon.value.{Int64Value, StringValue}
+import org.orbeon.scaxon.NodeConversions._
+import org.orbeon.scaxon.SimplePath._
+import org.scalatest.junit.AssertionsForJUnit
+
+class XFormsRepeatControlTest extends AssertionsForJUnit {
+
+  import XFormsRepeatControlTest._
+
+  @Test def nodesByIdentity(): Unit = {
+
+    val nodes    = items(10)
+    val newNodes = (nodes.reverse take 5) ++ items(2)
+
+    assert(findNodeIndexes(nodes, newNodes).toList === List(-1, -1, -1, -1, -1, 4, 3, 2, 1, 0))
+    assert(findNodeIndexes(newNodes, nodes).toList === List(9, 8, 7, 6, 5, -1, -1))
+  }
+
+  @Test def atomicValues(): Unit = {
+
+    val values1 = List[Item](StringValue.makeStringValue("a"), new Int64Value(1), StringValue.makeStringValue("b"), new Int64Value(2))
+    val values2 = List[Item](new Int64Value(2), StringValue.makeStringValue("b"), StringValue.makeStringValue("b"), StringValue.makeStringValue("1"))
+
+    assert(findNodeIndexes(values1, values2).toList === findNodeIndexesLinearSearch(values1, values2).toList)
+    assert(findNodeIndexes(values1, values2).toList === List(-1, -1, 1, 0))
+  }
+
+  @Test def largeRepeat(): Unit = {
+
+    val nodes        = items(10000)
+    val insertedNode = items(1)
+
+    // Insert in the middle, and remove the last node
+    val newNodes = (nodes take 5000) ++ insertedNode ++ (nodes drop 5000 dropRight 1)
+
+    val oldIndexes = findNodeIndexes(newNodes, nodes)
+    val newIndexes = findNodeIndexes(nodes, newNodes)
+
+    assert(oldIndexes(5000) === -1)
+    assert(oldIndexes(5001) === 5000)
+    assert(newIndexes(4999) === 4999)
+    assert(newIndexes(5000) === 5001)
+    assert(newIndexes(9999) === -1)
+  }
+}
+
+object XFormsRepeatControlTest {
+
+  // Previous implementation, for comparison
+  def findNodeIndexesLinearSearch(nodeset1: Seq[Item], nodeset2: Seq[Item]): Array[Int] =
+    (nodeset1 map (item ⇒ nodeset2 indexWhere (SaxonUtils.compareItems(_, item)))).toArray
+
+  def items(count: Int): Seq[NodeInfo] =
+    elemToDocumentInfo(<items>{1 to count map (i ⇒ <item>{i}</item>)}</items>) / * / *
+}
+
+// Compare matching repeat iterations with the previous linear search, after inserting an iteration in the middle and
+// removing the last one. Run with:
+//
+//   XFormsRepeatControlBenchmark [iterations count] [repetitions]
+object XFormsRepeatControlBenchmark {
+
+  import XFormsRepeatControlTest._
+
+  def main(args: Array[String]): Unit = {
+
+    val count       = args.headOption map (_.toInt) getOrElse 5000
+    val repetitions = args.lift(1) map (_.toInt) getOrElse 10
+
+    val nodes    = items(count)
+    val newNodes = (nodes take count / 2) ++ items(1) ++ (nodes drop count / 2 dropRight 1)
+
+    // Match in both directions, as when updating the repeat
+    def time(name: String)(findNodeIndexes: (Seq[Item], Seq[Item]) ⇒ Array[Int]): Unit = {
+
+      def body() = {
+        findNodeIndexes(newNodes, nodes)
+        findNodeIndexes(nodes, newNodes)
+      }
+
+      // Warm up
+      for (_ ← 1 to repetitions) body()
+      val start = System.nanoTime
+      for (_ ← 1 to repetitions) body()
+      println(f"$name%-14s ${(System.nanoTime - start) / repetitions / 1000000.0}%8.2f ms")
+    }
+
+    time("linear search")(findNodeIndexesLinearSearch)
+    time("hash lookup")(XFormsRepeatControl.findNodeIndexes)
+  }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xforms.itemset
+
+import org.junit.Test
+import org.orbeon.oxf.xml.dom4j.Dom4jUtils
+import org.scalatest.junit.AssertionsForJUnit
+
+class SharedItemsetsTest extends AssertionsForJUnit {
+
+  private def sharedInstanceId(itemsContent: String) =
+    SharedItemsets.findSharedInstanceId(
+      Dom4jUtils.readDom4j(
+        s"""<xf:select1
+              xmlns:xf="http://www.w3.org/2002/xforms"
+              xmlns:xxf="http://orbeon.org/oxf/xml/xforms"
+              ref="value">$itemsContent</xf:select1>"""
+      ).getRootElement
+    )
+
+  @Test def sharedItemsets(): Unit = {
+    assert(
+      sharedInstanceId(
+        """<xf:itemset ref="instance('countries')/country[normalize-space(name)]">
+             <xf:label ref="name"/>
+             <xf:value ref="@code"/>
+           </xf:itemset>"""
+      ) === Some("countries")
+    )
+    assert(
+      sharedInstanceId(
+        """<xf:itemset ref="xxf:instance('countries')/country">
+             <xf:label value="concat(name, ' (', @code, ')')"/>
+             <xf:value ref="@code"/>
+           </xf:itemset>"""
+      ) === Some("countries")
+    )
+  }
+
+  @Test def notSharedItemsets(): Unit = {
+
+    // Depends on a variable
+    assert(
+      sharedInstanceId(
+        """<xf:itemset ref="instance('countries')/country[@continent = $continent]">
+             <xf:label ref="name"/>
+             <xf:value ref="@code"/>
+           </xf:itemset>"""
+      ) === None
+    )
+
+    // Depends on the current language
+    assert(
+      sharedInstanceId(
+        """<xf:itemset ref="instance('countries')/country">
+             <xf:label ref="name[@lang = xxf:lang()]"/>
+             <xf:value ref="@code"/>
+           </xf:itemset>"""
+      ) === None
+    )
+
+    // Depends on the bound node
+    assert(
+      sharedInstanceId(
+        """<xf:itemset ref="country">
+             <xf:label ref="name"/>
+             <xf:value ref="@code"/>
+           </xf:itemset>"""
+      ) === None
+    )
+
+    // Mixed with other items
+    assert(
+      sharedInstanceId(
+        """<xf:item>
+             <xf:label>None</xf:label>
+             <xf:value/>
+           </xf:item>
+           <xf:itemset ref="instance('countries')/country">
+             <xf:label ref="name"/>
+             <xf:value ref="@code"/>
+           </xf:itemset>"""
+      ) === None
+    )
+  }
+}
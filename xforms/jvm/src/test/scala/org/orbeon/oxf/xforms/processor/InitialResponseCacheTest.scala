@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xforms.processor
+
+import org.junit.Test
+import org.orbeon.oxf.xforms.processor.InitialResponseCache.{ReplaceUUIDXMLReceiver, cacheKeyString}
+import org.orbeon.oxf.xml.{ForwardingXMLReceiver, SAXStore}
+import org.scalatest.junit.AssertionsForJUnit
+import org.xml.sax.Attributes
+import org.xml.sax.helpers.AttributesImpl
+
+class InitialResponseCacheTest extends AssertionsForJUnit {
+
+  val OldUUID = "0123456789abcdef0123456789abcdef"
+  val NewUUID = "fedcba9876543210fedcba9876543210"
+
+  // Gather the text and attribute values received
+  private class GatheringReceiver extends ForwardingXMLReceiver {
+
+    val text       = new StringBuilder
+    val attributes = collection.mutable.ListBuffer[String]()
+
+    override def characters(chars: Array[Char], start: Int, length: Int): Unit =
+      text.appendAll(chars, start, length)
+
+    override def startElement(uri: String, localname: String, qName: String, atts: Attributes): Unit =
+      for (i ← 0 until atts.getLength)
+        attributes += atts.getValue(i)
+  }
+
+  @Test def replayReplacesUUID(): Unit = {
+
+    // Store a page where the UUID is split between character events
+    val response = new SAXStore
+    response.startDocument()
+
+    val attributes = new AttributesImpl
+    attributes.addAttribute("", "value", "value", "CDATA", OldUUID)
+    response.startElement("", "input", "input", attributes)
+    response.endElement("", "input", "input")
+
+    response.startElement("", "script", "script", new AttributesImpl)
+    for (chunk ← List("var uuid = '", OldUUID.substring(0, 10), OldUUID.substring(10), "';"))
+      response.characters(chunk.toCharArray, 0, chunk.length)
+    response.endElement("", "script", "script")
+
+    response.endDocument()
+
+    // Replay it twice, as for two new documents
+    for (_ ← 1 to 2) {
+      val receiver = new GatheringReceiver
+      response.replay(new ReplaceUUIDXMLReceiver(receiver, OldUUID, NewUUID))
+
+      assert(receiver.attributes.toList === List(NewUUID))
+      assert(receiver.text.toString     === s"var uuid = '$NewUUID';")
+    }
+  }
+
+  @Test def parametersAreIsolated(): Unit = {
+
+    def key(parameters: (String, List[String])*) =
+      cacheKeyString("digest", "/fr/acme/order/new", parameters.toList)
+
+    // Separators in names or values don't produce the key of other parameters
+    assert(key("x" → List("1|y=2")) !== key("x" → List("1"), "y" → List("2")))
+    assert(key("x" → List("1&y=2")) !== key("x" → List("1"), "y" → List("2")))
+    assert(key("a" → List("1,2"))   !== key("a" → List("1", "2")))
+    assert(key("a=1" → List("2"))   !== key("a" → List("1=2")))
+
+    // The order of parameters doesn't matter, but the order of values does
+    assert(key("a" → List("1"), "b" → List("2")) === key("b" → List("2"), "a" → List("1")))
+    assert(key("a" → List("1", "2"))             !== key("a" → List("2", "1")))
+
+    // The path is part of the key
+    assert(cacheKeyString("digest", "/a|b", Nil) !== cacheKeyString("digest|/a", "b", Nil))
+  }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xforms.state
+
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream, ObjectInputStream, ObjectOutputStream}
+
+import org.junit.Test
+import org.orbeon.oxf.util.IOUtils._
+import org.orbeon.oxf.util.URLRewriterUtils.PathMatcher
+import org.orbeon.oxf.xforms.state.XFormsOperations._
+import org.orbeon.oxf.xforms.state.XFormsProtocols._
+import org.orbeon.oxf.xml.SAXStore
+import org.scalatest.junit.AssertionsForJUnit
+
+class DynamicStateDeltaTest extends AssertionsForJUnit {
+
+  def instance(id: String, content: String) =
+    InstanceState(id, "model", Right(XMLInstanceContent(content)), readonly = false, modified = false, valid = true)
+
+  def control(id: String, visited: Boolean) =
+    ControlState(id, visited, Map.empty)
+
+  def state(sequence: Long, instances: List[InstanceState], controls: List[ControlState]) =
+    DynamicState(
+      uuid               = "uuid",
+      sequence           = sequence,
+      deploymentType     = None,
+      requestContextPath = None,
+      requestPath        = None,
+      requestHeaders     = Nil,
+      requestParameters  = Nil,
+      containerType      = None,
+      containerNamespace = None,
+      pathMatchers       = toByteSeq(List.empty[PathMatcher]),
+      focusedControl     = None,
+      pendingUploads     = toByteSeq(Set.empty[String]),
+      lastAjaxResponse   = toByteSeq(Option.empty[SAXStore]),
+      instances          = toByteSeq(instances),
+      controls           = toByteSeq(controls)
+    )
+
+  val base =
+    state(
+      1,
+      List(instance("i1", "<a/>"), instance("i2", "<b/>"), instance("i3", "<c/>")),
+      List(control("c1", visited = false), control("c2", visited = false))
+    )
+
+  val BaseKey = "uuid-I"
+
+  @Test def unchangedState(): Unit = {
+    val current = base.copy(sequence = 2)
+    val delta   = DynamicStateDelta.diff(BaseKey, base, current)
+
+    assert(delta.changedInstances === toByteSeq(List.empty[InstanceState]))
+    assert(delta.changedControls  === toByteSeq(List.empty[ControlState]))
+    assert(delta.resolve(base)    === current)
+  }
+
+  @Test def changedAddedAndRemovedEntries(): Unit = {
+    val current =
+      state(
+        5,
+        List(instance("i1", "<a/>"), instance("i3", "<c>changed</c>"), instance("i4", "<d/>")),
+        List(control("c2", visited = true), control("c1", visited = false))
+      )
+
+    val delta = DynamicStateDelta.diff(BaseKey, base, current)
+
+    assert(fromByteSeq[List[InstanceState]](delta.changedInstances) map (_.effectiveId) === List("i3", "i4"))
+    assert(fromByteSeq[List[ControlState]](delta.changedControls)   map (_.effectiveId) === List("c2"))
+    assert(delta.resolve(base) === current)
+  }
+
+  @Test def deltaRefersToBase(): Unit = {
+    val current = base.copy(sequence = 2, instances = toByteSeq(List(instance("i1", "<a>changed</a>"))))
+    val delta   = DynamicStateDelta.diff(BaseKey, base, current)
+
+    // The delta is stored without its base, which is stored under its own key
+    val os = new ByteArrayOutputStream
+    useAndClose(new ObjectOutputStream(os))(_.writeObject(delta))
+    val restored = useAndClose(new ObjectInputStream(new ByteArrayInputStream(os.toByteArray)))(_.readObject.asInstanceOf[DynamicStateDelta])
+
+    assert(restored.baseKey === BaseKey)
+    assert(fromByteSeq[List[InstanceState]](restored.state.instances).isEmpty)
+    assert(fromByteSeq[List[ControlState]](restored.state.controls).isEmpty)
+    assert(restored.resolve(base) === current)
+    assert(restored.size < current.instances.size + current.controls.size)
+  }
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xforms.state
+
+import org.junit.Test
+import org.orbeon.dom.Document
+import org.orbeon.dom.saxon.DocumentWrapper
+import org.orbeon.oxf.test.{ResourceManagerSupport, ResourceManagerTestBase, XMLSupport}
+import org.orbeon.oxf.util.XPath
+import org.orbeon.oxf.xforms.model.XFormsInstance
+import org.orbeon.oxf.xforms.state.XFormsOperations._
+import org.orbeon.oxf.xforms.state.XFormsProtocols._
+import org.orbeon.oxf.xml.Dom4j.elemToDocument
+import org.orbeon.oxf.xml.TransformerUtils
+import org.orbeon.oxf.xml.dom4j.Dom4jUtils
+
+class InstanceEncodingTest extends ResourceManagerTestBase with XMLSupport {
+
+  val instanceDoc: Document =
+    <form xmlns:fr="http://orbeon.org/oxf/xml/form-runner" xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance">
+      <!-- Section 1 -->
+      <section-1 fr:id="s1">
+        <name xsi:type="xs:string">Ada</name>
+        <empty/>
+        <?pi data?>
+        <unicode>Ĉu vi parolas? 日本語</unicode>
+      </section-1>
+      <grid xmlns="http://example.org/default" a="1" b="1">
+        <row a="1">one</row>
+        <row a="1">one</row>
+      </grid>
+    </form>
+
+  def wrap(document: Document) = new DocumentWrapper(document, null, XPath.GlobalConfiguration)
+
+  @Test def roundTripDom4j(): Unit = {
+    val bytes = InstanceEncoding.encode(wrap(instanceDoc))
+    assertXMLDocumentsIgnoreNamespacesInScope(instanceDoc, InstanceEncoding.decodeToDom4j(bytes))
+  }
+
+  @Test def roundTripTinyTree(): Unit = {
+    val tinyTree = TransformerUtils.dom4jToTinyTree(XPath.GlobalConfiguration, instanceDoc, false)
+    val bytes    = InstanceEncoding.encode(tinyTree)
+
+    assertXMLDocumentsIgnoreNamespacesInScope(tinyTree, InstanceEncoding.decodeToTinyTree(XPath.GlobalConfiguration, bytes))
+    assertXMLDocumentsIgnoreNamespacesInScope(instanceDoc, InstanceEncoding.decodeToDom4j(bytes))
+  }
+
+  @Test def sharedNamesAndValues(): Unit = {
+    val repeated: Document =
+      <rows>{ 1 to 100 map (_ ⇒ <row enabled="true">yes</row>) }</rows>
+
+    val bytes = InstanceEncoding.encode(wrap(repeated))
+
+    // Each repeated row must cost only a few bytes
+    assert(bytes.length < 100 * 8)
+    assertXMLDocumentsIgnoreNamespacesInScope(repeated, InstanceEncoding.decodeToDom4j(bytes))
+  }
+
+  @Test def instanceStateFormats(): Unit = {
+
+    def roundTrip(content: InstanceContent) = {
+      val state = InstanceState("instance", "model", Right(content), readonly = false, modified = true, valid = true)
+      val restored = fromByteSeq[InstanceState](toByteSeq(state))
+      assert(restored === state)
+      restored.cachingOrContent.right.get
+    }
+
+    // Binary encoding
+    locally {
+      val content = roundTrip(BinaryInstanceContent(InstanceEncoding.encode(wrap(instanceDoc))))
+      for (readonly ← List(false, true))
+        assertXMLDocumentsIgnoreNamespacesInScope(
+          instanceDoc,
+          TransformerUtils.tinyTreeToDom4j(XFormsInstance.createDocumentInfo(content, readonly, exposeXPathTypes = false))
+        )
+    }
+
+    // XML text, as found in state written by older versions
+    locally {
+      val content = roundTrip(XMLInstanceContent(TransformerUtils.dom4jToString(instanceDoc, false)))
+      for (readonly ← List(false, true))
+        assertXMLDocumentsIgnoreNamespacesInScope(
+          instanceDoc,
+          TransformerUtils.tinyTreeToDom4j(XFormsInstance.createDocumentInfo(content, readonly, exposeXPathTypes = false))
+        )
+    }
+  }
+}
+
+// Compare the binary encoding with the XML text representation previously used in the dynamic state. Run with:
+//
+//   InstanceEncodingBenchmark [rows] [iterations]
+object InstanceEncodingBenchmark {
+
+  def main(args: Array[String]): Unit = {
+
+    ResourceManagerSupport.initializeJava()
+
+    val rows       = args.headOption map (_.toInt) getOrElse 20000
+    val iterations = args.lift(1) map (_.toInt) getOrElse 20
+
+    val document: Document =
+      <form>{
+        1 to rows map { i ⇒
+          <row id={s"r$i"} valid="true">
+            <name>Name {i}</name>
+            <amount>{i * 10}</amount>
+            <comment/>
+          </row>
+        }
+      }</form>
+
+    val wrapped = new DocumentWrapper(document, null, XPath.GlobalConfiguration)
+
+    def time[T](name: String)(body: ⇒ T): T = {
+      var result: Any = null
+      // Warm up
+      for (_ ← 1 to iterations) result = body
+      val start = System.nanoTime
+      for (_ ← 1 to iterations) result = body
+      println(f"$name%-25s ${(System.nanoTime - start) / iterations / 1000000.0}%8.2f ms")
+      result.asInstanceOf[T]
+    }
+
+    val xmlString = time("XML encode")(TransformerUtils.dom4jToString(document, false))
+    val bytes     = time("binary encode")(InstanceEncoding.encode(wrapped))
+
+    time("XML decode to DOM")(Dom4jUtils.readDom4j(xmlString))
+    time("binary decode to DOM")(InstanceEncoding.decodeToDom4j(bytes))
+    time("XML decode to TinyTree")(TransformerUtils.stringToTinyTree(XPath.GlobalConfiguration, xmlString, false, true))
+    time("binary decode to TinyTree")(InstanceEncoding.decodeToTinyTree(XPath.GlobalConfiguration, bytes))
+
+    println(s"XML size:    ${toByteSeq(xmlString).size} bytes")
+    println(s"binary size: ${bytes.length} bytes")
+  }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xforms.state
+
+import net.sf.ehcache.{Element ⇒ EhElement}
+import org.junit.Test
+import org.orbeon.oxf.xforms.state.EhcacheStateStore.{OffHeapCleanupListener, OffHeapReference}
+import org.scalatest.junit.AssertionsForJUnit
+
+class OffHeapStoreTest extends AssertionsForJUnit {
+
+  val PageSize = 16
+
+  def bytes(length: Int, value: Int) = Array.fill[Byte](length)(value.toByte)
+
+  @Test def putAndGet(): Unit =
+    for (mappedFile ← List(false, true)) {
+      val store = new OffHeapStore(10 * PageSize, PageSize, mappedFile)
+
+      assert(store.put("a", bytes(5, 1)))
+      assert(store.put("b", bytes(3 * PageSize + 1, 2)))
+      assert(store.put("c", Array.empty[Byte]))
+
+      assert(store.get("a").get.toList === bytes(5, 1).toList)
+      assert(store.get("b").get.toList === bytes(3 * PageSize + 1, 2).toList)
+      assert(store.get("c").get.isEmpty)
+      assert(store.get("d").isEmpty)
+
+      assert(store.getCurrentSize === 3)
+      assert(store.getUsedBytes   === 5 * PageSize)
+
+      // Replace
+      assert(store.put("b", bytes(2, 3)))
+      assert(store.get("b").get.toList === bytes(2, 3).toList)
+      assert(store.getUsedBytes === 2 * PageSize)
+    }
+
+  @Test def leastRecentlyUsedEviction(): Unit = {
+    val store = new OffHeapStore(4 * PageSize, PageSize, mappedFile = false)
+
+    store.put("a", bytes(PageSize * 2, 1))
+    store.put("b", bytes(PageSize,     2))
+    store.get("a")
+    store.put("c", bytes(PageSize * 3, 3))
+
+    // `b` is the least recently used entry, but freeing it is not enough
+    assert(store.get("b").isEmpty)
+    assert(store.get("a").isEmpty)
+    assert(store.get("c").get.toList === bytes(PageSize * 3, 3).toList)
+    assert(store.getEvictionCount === 2)
+  }
+
+  @Test def valueTooLarge(): Unit = {
+    val store = new OffHeapStore(4 * PageSize, PageSize, mappedFile = false)
+
+    store.put("a", bytes(PageSize, 1))
+    assert(! store.put("b", bytes(4 * PageSize + 1, 2)))
+
+    // Existing entries are kept
+    assert(store.get("a").isDefined)
+    assert(store.getEvictionCount === 0)
+  }
+
+  @Test def remove(): Unit = {
+    val store = new OffHeapStore(4 * PageSize, PageSize, mappedFile = false)
+
+    store.put("a", bytes(PageSize * 4, 1))
+    store.remove("a")
+    store.remove("b")
+
+    assert(store.get("a").isEmpty)
+    assert(store.getUsedBytes === 0)
+    assert(store.put("b", bytes(PageSize * 4, 2)))
+    assert(store.getEvictionCount === 0)
+  }
+
+  @Test def removeWhenPlaceholderExpiresOrIsEvicted(): Unit = {
+    val store    = new OffHeapStore(4 * PageSize, PageSize, mappedFile = false)
+    val listener = new OffHeapCleanupListener(store)
+
+    store.put("a", bytes(5, 1))
+    store.put("b", bytes(5, 2))
+    store.put("c", bytes(5, 3))
+
+    listener.notifyElementExpired(null, new EhElement("a", OffHeapReference))
+    listener.notifyElementEvicted(null, new EhElement("b", OffHeapReference))
+
+    // Values stored in Ehcache itself don't refer to the off-heap tier
+    listener.notifyElementEvicted(null, new EhElement("c", "value"))
+
+    assert(store.get("a").isEmpty)
+    assert(store.get("b").isEmpty)
+    assert(store.get("c").isDefined)
+    assert(store.getCurrentSize === 1)
+  }
+}
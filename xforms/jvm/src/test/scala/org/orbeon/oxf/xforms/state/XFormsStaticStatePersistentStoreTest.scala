@@ -0,0 +1,153 @@
+/**
+ * Copyright (C) 2017 Orbeon, Inc.
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation; either version
+ * 2.1 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+ */
+package org.orbeon.oxf.xforms.state
+
+import java.nio.charset.StandardCharsets.UTF_8
+import java.nio.file.{Files, Path}
+import java.util.concurrent.Executor
+
+import org.junit.{After, Assume, Test}
+import org.orbeon.dom.Document
+import org.orbeon.oxf.common.Version
+import org.orbeon.oxf.resources.ResourceManagerWrapper
+import org.orbeon.oxf.test.{ResourceManagerSupport, ResourceManagerTestBase}
+import org.orbeon.oxf.xforms.state.XFormsStaticStatePersistentStore.DirectoryStore
+import org.orbeon.oxf.xforms.{XFormsStaticState, XFormsStaticStateImpl}
+import org.orbeon.oxf.xml.Dom4j.elemToDocument
+import org.scalatest.junit.AssertionsForJUnit
+import spray.json._
+
+import scala.collection.JavaConverters._
+
+class XFormsStaticStatePersistentStoreTest extends ResourceManagerTestBase with AssertionsForJUnit {
+
+  ResourceManagerSupport
+
+  val XBLPath = "/xbl/xforms/upload/upload.xbl"
+
+  val formDocument: Document =
+    <xh:html xmlns:xf="http://www.w3.org/2002/xforms"
+         xmlns:xh="http://www.w3.org/1999/xhtml">
+      <xh:head>
+        <xf:model>
+          <xf:instance id="instance">
+            <value>0</value>
+          </xf:instance>
+        </xf:model>
+      </xh:head>
+      <xh:body>
+        <xf:input id="input" ref="instance()"/>
+      </xh:body>
+    </xh:html>
+
+  val directory: Path = Files.createTempDirectory("static-states")
+
+  @After def deleteDirectory(): Unit = {
+    val stream = Files.newDirectoryStream(directory)
+    try
+      stream.asScala foreach (Files.delete(_))
+    finally
+      stream.close()
+    Files.delete(directory)
+  }
+
+  // Write entries right away
+  val store =
+    new DirectoryStore(directory, new Executor {
+      def execute(runnable: Runnable): Unit = runnable.run()
+    })
+
+  def storeStaticState(): XFormsStaticState = {
+    val staticState = XFormsStaticStateImpl.createFromDocument(formDocument)
+    store.store(staticState)
+    assert(Files.exists(store.entryFile(staticState.digest)))
+    staticState
+  }
+
+  def updateEntry(digest: String)(update: Map[String, JsValue] ⇒ Map[String, JsValue]): Unit = {
+    val file   = store.entryFile(digest)
+    val fields = new String(Files.readAllBytes(file), UTF_8).parseJson.asJsObject.fields
+    Files.write(file, JsObject(update(fields)).compactPrint.getBytes(UTF_8))
+  }
+
+  def xblLastModified = {
+    val lastModified = ResourceManagerWrapper.instance.lastModified(XBLPath, true)
+    assert(lastModified !== -1L)
+    lastModified
+  }
+
+  @Test def roundTrip(): Unit = {
+
+    Assume.assumeTrue(Version.isPE)
+
+    val staticState = storeStaticState()
+    val found       = store.find(staticState.digest)
+
+    assert(found.isDefined)
+    assert(found.get.digest       === staticState.digest)
+    assert(found.get.encodedState === staticState.encodedState)
+
+    // Entries whose XBL files have not changed are kept
+    updateEntry(staticState.digest)(_ + ("includes" → JsObject(XBLPath → JsNumber(xblLastModified))))
+    assert(store.find(staticState.digest).isDefined)
+  }
+
+  @Test def removeOnVersionMismatch(): Unit = {
+
+    val staticState = storeStaticState()
+    updateEntry(staticState.digest)(_ + ("version" → JsString("0.0")))
+
+    assert(store.find(staticState.digest).isEmpty)
+    assert(! Files.exists(store.entryFile(staticState.digest)))
+  }
+
+  @Test def removeOnXBLLastModifiedMismatch(): Unit = {
+
+    val staticState = storeStaticState()
+    updateEntry(staticState.digest)(_ + ("includes" → JsObject(XBLPath → JsNumber(xblLastModified - 1000))))
+
+    assert(store.find(staticState.digest).isEmpty)
+    assert(! Files.exists(store.entryFile(staticState.digest)))
+  }
+
+  @Test def removeOnParseFailure(): Unit = {
+
+    val file = store.entryFile("unparsable")
+    Files.write(file, "{ not json".getBytes(UTF_8))
+
+    assert(store.find("unparsable").isEmpty)
+    assert(! Files.exists(file))
+  }
+
+  @Test def keepOnRestoreFailure(): Unit = {
+
+    val staticState = storeStaticState()
+    updateEntry(staticState.digest)(_ + ("encoded-state" → JsString("not an encoded state")))
+
+    assert(store.find(staticState.digest).isEmpty)
+    assert(Files.exists(store.entryFile(staticState.digest)))
+  }
+
+  @Test def loadRecent(): Unit = {
+
+    Assume.assumeTrue(Version.isPE)
+
+    val staticState = storeStaticState()
+    val added       = collection.mutable.ListBuffer[XFormsStaticState]()
+
+    assert(store.loadRecent(10, _ ⇒ true, added += _).isEmpty)
+    assert(store.loadRecent(10, _ ⇒ false, added += _) === List(staticState.digest))
+    assert(added.map(_.digest) === List(staticState.digest))
+  }
+}
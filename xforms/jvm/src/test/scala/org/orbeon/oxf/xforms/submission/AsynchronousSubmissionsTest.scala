@@ -0,0 +1,59 @@
+/**
+  * Copyright (C) 2017 Orbeon, Inc.
+  *
+  * This program is free software; you can redistribute it and/or modify it under the terms of the
+  * GNU Lesser General Public License as published by the Free Software Foundation; either version
+  * 2.1 of the License, or (at your option) any later version.
+  *
+  * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+  * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+  * See the GNU Lesser General Public License for more details.
+  *
+  * The full text of the license is available at http://www.gnu.org/copyleft/lesser.html
+  */
+package org.orbeon.oxf.xforms.submission
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicInteger
+
+import org.junit.Test
+import org.orbeon.oxf.test.ResourceManagerTestBase
+import org.orbeon.oxf.xforms.XFormsProperties
+import org.scalatest.junit.AssertionsForJUnit
+
+class AsynchronousSubmissionsTest extends ResourceManagerTestBase with AssertionsForJUnit {
+
+  @Test def perDocumentLimit(): Unit = {
+
+    val maxPerDocument = XFormsProperties.getAsynchronousSubmissionMaxPerDocument
+    val submissionCount = maxPerDocument * 3
+
+    val submissions = new AsynchronousSubmissionManager.AsynchronousSubmissions
+    val release     = new CountDownLatch(1)
+    val running     = new AtomicInteger
+    val maxRunning  = new AtomicInteger
+
+    val completedBefore = AsynchronousSubmissionStats.completed
+
+    for (i ← 1 to submissionCount)
+      submissions.submit { () ⇒
+        val nowRunning = running.incrementAndGet()
+        maxRunning.synchronized { maxRunning.set(maxRunning.get max nowRunning) }
+        release.await()
+        running.decrementAndGet()
+        new SubmissionResult(s"submission-$i", null: Throwable, null)
+      }
+
+    assert(submissions.pendingCount === submissionCount)
+
+    release.countDown()
+
+    val ids = for (_ ← 1 to submissionCount) yield submissions.take().get.getSubmissionEffectiveId
+
+    assert(ids.toSet === (1 to submissionCount map (i ⇒ s"submission-$i")).toSet)
+    assert(submissions.pendingCount === 0)
+    assert(submissions.poll().isEmpty)
+    assert(maxRunning.get <= maxPerDocument)
+    assert(AsynchronousSubmissionStats.completed - completedBefore === submissionCount)
+  }
+}